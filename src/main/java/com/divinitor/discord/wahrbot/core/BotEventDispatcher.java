@@ -2,14 +2,14 @@ package com.divinitor.discord.wahrbot.core;
 
 import com.google.inject.Inject;
 import net.dv8tion.jda.api.events.GenericEvent;
-import net.dv8tion.jda.api.hooks.ListenerAdapter;
+import net.dv8tion.jda.api.hooks.EventListener;
 import org.jetbrains.annotations.NotNull;
 
 /**
  * Core event dispatcher for the bot. This listens for all events from JDA and then dispatches them accordingly
  * to the proper event queues.
  */
-public class BotEventDispatcher extends ListenerAdapter {
+public class BotEventDispatcher implements EventListener {
 
     /**
      * Bot instance
@@ -26,13 +26,21 @@ public class BotEventDispatcher extends ListenerAdapter {
     }
 
     /**
-     * We register for the onGenericEvent listener because JDA will send us ALL Discord events, and we'll
-     * dispatch events accordingly using the event bus.
+     * JDA will send us ALL Discord events, and we'll dispatch events accordingly using the event bus. Events that
+     * nothing is subscribed to, such as presence and typing updates in most setups, are dropped here so they never
+     * reach a lane. The bus keeps its subscriber tables up to date as core services and modules register and
+     * unregister, so this follows module loads and unloads.
      * @param event The Discord event
      */
     @Override
-    public void onGenericEvent(@NotNull GenericEvent event) {
-        super.onGenericEvent(event);
+    public void onEvent(@NotNull GenericEvent event) {
+        if (!bot.getEventBus().hasSubscribers(event.getClass())) {
+            bot.getEventBusMetricSet().markDropped(event);
+            return;
+        }
+
+        //  Meter here rather than on the bus so it doesn't cost an extra dispatch per event
+        bot.getEventBusMetricSet().mark(event);
 
         //  Dispatch
         bot.getEventBus().post(event);
@@ -4,13 +4,16 @@ import com.codahale.metrics.MetricRegistry;
 import com.divinitor.discord.wahrbot.core.command.CommandDispatcher;
 import com.divinitor.discord.wahrbot.core.config.BotConfig;
 import com.divinitor.discord.wahrbot.core.config.dyn.DynConfigStore;
+import com.divinitor.discord.wahrbot.core.event.ShardedEventBus;
 import com.divinitor.discord.wahrbot.core.i18n.Localizer;
 import com.divinitor.discord.wahrbot.core.module.ModuleManager;
 import com.divinitor.discord.wahrbot.core.service.ServiceBus;
 import com.divinitor.discord.wahrbot.core.store.ServerStorage;
 import com.divinitor.discord.wahrbot.core.store.UserStorage;
 import com.divinitor.discord.wahrbot.core.toggle.ToggleRegistry;
-import com.google.common.eventbus.AsyncEventBus;
+import com.divinitor.discord.wahrbot.core.util.metrics.EventBusMetricSet;
+import com.divinitor.discord.wahrbot.core.util.redis.RedisInvalidationBus;
+import com.divinitor.discord.wahrbot.core.util.redis.RedisPipelineDispatcher;
 import com.google.inject.Injector;
 import net.dv8tion.jda.api.JDA;
 import redis.clients.jedis.JedisPool;
@@ -87,10 +90,29 @@ public interface WahrBot {
     JedisPool getJedisPool();
 
     /**
-     * Get the bot's event bus. All events are broadcasted on this Event Bus
+     * Get the bot's Redis invalidation bus, used to tell other bot instances that cached data has changed
+     * @return The invalidation bus
+     */
+    RedisInvalidationBus getInvalidationBus();
+
+    /**
+     * Get the bot's Redis pipeline dispatcher, used to run Redis commands without blocking
+     * @return The pipeline dispatcher
+     */
+    RedisPipelineDispatcher getPipelineDispatcher();
+
+    /**
+     * Get the bot's event bus. All events are broadcasted on this Event Bus, with events for the same guild delivered
+     * in order
      * @return The event bus
      */
-    AsyncEventBus getEventBus();
+    ShardedEventBus getEventBus();
+
+    /**
+     * Get the bot's event bus metrics. Events posted to the event bus should be marked here
+     * @return The event bus metrics
+     */
+    EventBusMetricSet getEventBusMetricSet();
 
     /**
      * Get the bot's common executor service
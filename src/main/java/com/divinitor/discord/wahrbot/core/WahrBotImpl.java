@@ -10,6 +10,7 @@ import com.divinitor.discord.wahrbot.core.config.SQLCredentials;
 import com.divinitor.discord.wahrbot.core.config.dyn.DynConfigStore;
 import com.divinitor.discord.wahrbot.core.config.dyn.impl.CachingDynConfigStore;
 import com.divinitor.discord.wahrbot.core.config.dyn.impl.RedisDynConfigStore;
+import com.divinitor.discord.wahrbot.core.event.ShardedEventBus;
 import com.divinitor.discord.wahrbot.core.i18n.Localizer;
 import com.divinitor.discord.wahrbot.core.i18n.LocalizerImpl;
 import com.divinitor.discord.wahrbot.core.module.ModuleManager;
@@ -25,10 +26,11 @@ import com.divinitor.discord.wahrbot.core.toggle.impl.MemoryTransientToggleRegis
 import com.divinitor.discord.wahrbot.core.toggle.impl.WeakToggleRegistryProxy;
 import com.divinitor.discord.wahrbot.core.util.discord.SnowflakeUtils;
 import com.divinitor.discord.wahrbot.core.util.gson.StandardGson;
+import com.divinitor.discord.wahrbot.core.util.inject.JedisProvider;
 import com.divinitor.discord.wahrbot.core.util.inject.WahrBotModule;
 import com.divinitor.discord.wahrbot.core.util.metrics.EventBusMetricSet;
-import com.google.common.eventbus.AsyncEventBus;
-import com.google.common.eventbus.SubscriberExceptionContext;
+import com.divinitor.discord.wahrbot.core.util.redis.RedisInvalidationBus;
+import com.divinitor.discord.wahrbot.core.util.redis.RedisPipelineDispatcher;
 import com.google.gson.Gson;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
@@ -49,6 +51,7 @@ import javax.security.auth.login.LoginException;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -119,6 +122,18 @@ public class WahrBotImpl implements WahrBot {
     @Getter
     private JedisPool jedisPool;
 
+    /**
+     * Redis cache invalidation bus
+     */
+    @Getter
+    private RedisInvalidationBus invalidationBus;
+
+    /**
+     * Pipelined Redis connection for asynchronous commands
+     */
+    @Getter
+    private RedisPipelineDispatcher pipelineDispatcher;
+
     /**
      * The bot's JDA event listener
      */
@@ -129,7 +144,7 @@ public class WahrBotImpl implements WahrBot {
      * The event bus
      */
     @Getter
-    private AsyncEventBus eventBus;
+    private ShardedEventBus eventBus;
 
     /**
      * The executor service
@@ -146,6 +161,7 @@ public class WahrBotImpl implements WahrBot {
     /**
      * The metric set for the event bus
      */
+    @Getter
     private EventBusMetricSet eventBusMetricSet;
 
     /**
@@ -232,13 +248,12 @@ public class WahrBotImpl implements WahrBot {
         //  Localizer
         this.localizer = new LocalizerImpl();
 
-        //  Event bus, using our executor service, and handling errors through our handler
-        this.eventBus = new AsyncEventBus(this.executorService, this::handleEventBusException);
-        //  Event bus metrics
-        this.eventBusMetricSet = new EventBusMetricSet(eventBus);
-
         //  Metric registry
         this.metrics = new MetricRegistry();
+        //  Event bus, with one lane per processor, and handling errors through our handler
+        this.eventBus = new ShardedEventBus(this::handleEventBusException, this.metrics);
+        //  Event bus metrics
+        this.eventBusMetricSet = new EventBusMetricSet(this.eventBus, this.executorService, this.metrics);
         //  Register our event bus metrics
         this.metrics.registerAll(this.eventBusMetricSet);
 
@@ -258,14 +273,16 @@ public class WahrBotImpl implements WahrBot {
     /**
      * Handles unhandled exceptions during event handling. The exeception is logged and the failure recorded in metrics
      * @param exception The exception that was thrown
-     * @param context The context in which the exception was thrown
+     * @param event The event being handled
+     * @param subscriber The subscriber that threw
+     * @param method The subscriber method that threw
      */
-    private void handleEventBusException(Throwable exception, SubscriberExceptionContext context) {
+    private void handleEventBusException(Throwable exception, Object event, Object subscriber, Method method) {
         this.eventBusMetricSet.incrEventExceptionCount();
         String err = String.format("Exception while bussing an event %3$s to subscriber %1$s with listener %2$s",
-            context.getSubscriber().getClass().toString(),  //  Throwing class
-            context.getSubscriberMethod().toGenericString(),    //  Throwing method
-            context.getEvent().getClass().toString());  //  Event class
+            subscriber.getClass().toString(),  //  Throwing class
+            method.toGenericString(),    //  Throwing method
+            event.getClass().toString());  //  Event class
         this.LOGGER.error(err, exception);
     }
 
@@ -296,6 +313,9 @@ public class WahrBotImpl implements WahrBot {
         }
 
         LOGGER.info("Instance: {}", this.config.getInstanceName());
+        if (this.config.getSlowEventThresholdMs() > 0) {
+            this.eventBus.setSlowThreshold(this.config.getSlowEventThresholdMs(), TimeUnit.MILLISECONDS);
+        }
 
         //  Init SQL connection
         SQLCredentials sqlCredentials = this.config.getSqlCredentials();
@@ -334,6 +354,12 @@ public class WahrBotImpl implements WahrBot {
             throw new RuntimeException("Unable to connect to Redis server", e);
         }
 
+        this.invalidationBus = new RedisInvalidationBus(new JedisProvider(this.jedisPool::getResource));
+        this.invalidationBus.start();
+        this.pipelineDispatcher = new RedisPipelineDispatcher(new JedisProvider(this.jedisPool::getResource),
+            this.executorService);
+        this.pipelineDispatcher.start();
+
         //  Set up DI
         this.injector = Guice.createInjector(new WahrBotModule(this));
 
@@ -348,7 +374,9 @@ public class WahrBotImpl implements WahrBot {
         //  dynconfig
         RedisDynConfigStore rdcs = new RedisDynConfigStore();
         this.injector.injectMembers(rdcs);
-        this.dynConfigStore = new CachingDynConfigStore(rdcs);
+        CachingDynConfigStore cdcs = new CachingDynConfigStore(rdcs, this.executorService);
+        this.invalidationBus.subscribe(RedisDynConfigStore.INVALIDATION_CHANNEL, cdcs);
+        this.dynConfigStore = cdcs;
         this.serviceBus.registerService(DynConfigStore.class, this.dynConfigStore);
         //  command dispatch
         this.commandDispatcher = new CommandDispatcherImpl(this);
@@ -442,6 +470,24 @@ public class WahrBotImpl implements WahrBot {
             shutdownExceptions.put("discordapi", e);
         }
 
+        //  Stop event delivery
+        try {
+            if (this.eventBus != null) {
+                this.eventBus.shutdown();
+            }
+        } catch (Exception e) {
+            shutdownExceptions.put("eventbus", e);
+        }
+
+        //  Let running commands finish while SQL and Redis are still up
+        try {
+            if (this.commandDispatcher != null) {
+                this.commandDispatcher.shutdown();
+            }
+        } catch (Exception e) {
+            shutdownExceptions.put("command", e);
+        }
+
         //  Shut down SQL connection
         try {
             if (this.dataSource != null) {
@@ -453,6 +499,14 @@ public class WahrBotImpl implements WahrBot {
 
         //  Shut down redis connection
         try {
+            if (this.invalidationBus != null) {
+                this.invalidationBus.shutdown();
+            }
+
+            if (this.pipelineDispatcher != null) {
+                this.pipelineDispatcher.shutdown();
+            }
+
             this.jedisPool.close();
         } catch (Exception e) {
             shutdownExceptions.put("redis", e);
@@ -1,5 +1,6 @@
 package com.divinitor.discord.wahrbot.core.command;
 
+import com.google.common.eventbus.AllowConcurrentEvents;
 import com.google.common.eventbus.Subscribe;
 import net.dv8tion.jda.api.entities.ChannelType;
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
@@ -7,6 +8,7 @@ import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
 public interface CommandDispatcher {
 
     @Subscribe
+    @AllowConcurrentEvents
     default void handleMessage(MessageReceivedEvent event) {
         if (event.isFromType(ChannelType.PRIVATE)) {
             this.handlePrivateMessage(event);
@@ -20,4 +22,9 @@ public interface CommandDispatcher {
     void handleServerMessage(MessageReceivedEvent event);
 
     CommandRegistry getRootRegistry();
+
+    /**
+     * Stops accepting commands and waits briefly for commands that are already running to finish.
+     */
+    void shutdown();
 }
@@ -1,11 +1,19 @@
 package com.divinitor.discord.wahrbot.core.command;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
 import com.divinitor.discord.wahrbot.core.WahrBot;
+import com.divinitor.discord.wahrbot.core.config.BotConfig;
 import com.divinitor.discord.wahrbot.core.config.dyn.DynConfigHandle;
 import com.divinitor.discord.wahrbot.core.i18n.ResourceBundleBundle;
 import com.divinitor.discord.wahrbot.core.store.ServerStore;
 import com.divinitor.discord.wahrbot.core.store.UserStore;
+import com.divinitor.discord.wahrbot.core.util.cache.LongExpiringCache;
+import com.divinitor.discord.wahrbot.core.util.cache.LongWeakValueCache;
+import com.divinitor.discord.wahrbot.core.util.concurrent.VirtualThreads;
 import com.google.common.eventbus.Subscribe;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import lombok.Getter;
 import net.dv8tion.jda.api.MessageBuilder;
 import net.dv8tion.jda.api.entities.Guild;
@@ -15,6 +23,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.invoke.MethodHandles;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class CommandDispatcherImpl implements CommandDispatcher {
 
@@ -22,6 +37,43 @@ public class CommandDispatcherImpl implements CommandDispatcher {
 
     public static final String DEFAULT_COMMAND_PREFIX_KEY = "core.command.prefix.default";
 
+    /**
+     * ServerStore key for a server's custom command prefix
+     */
+    public static final String SERVER_PREFIX_KEY = "prefix";
+
+    /**
+     * UserStore key for whether a user is blacklisted from using commands
+     */
+    public static final String USER_BLACKLIST_KEY = "blacklist";
+
+    private static final long STORE_CACHE_TTL_MINUTES = 5;
+
+    /**
+     * Default number of commands that may run at once in a single server
+     */
+    public static final int DEFAULT_SERVER_CONCURRENCY = 16;
+
+    /**
+     * Default number of commands a single user may run at once
+     */
+    public static final int DEFAULT_USER_CONCURRENCY = 2;
+
+    /**
+     * Maximum number of commands waiting for a command thread when not running on virtual threads
+     */
+    public static final int COMMAND_QUEUE_CAPACITY = 1_000;
+
+    /**
+     * How long a command on a virtual thread waits for a server or user permit before it's dropped
+     */
+    private static final long PERMIT_WAIT_SECONDS = 5;
+
+    /**
+     * How long shutting down waits for running commands before interrupting them
+     */
+    private static final long SHUTDOWN_WAIT_SECONDS = 10;
+
     private static final String ROOT_LOCALE_KEY = "com.divinitor.discord.wahrbot.cmd.";
 
     public static String getRootLocaleKey() {
@@ -35,12 +87,96 @@ public class CommandDispatcherImpl implements CommandDispatcher {
 
     private final DynConfigHandle defaultCommandPrefixHandle;
 
+    /**
+     * Custom command prefix by server ID, or null if the server uses the default prefix
+     */
+    private final LongExpiringCache<String> serverPrefixCache;
+
+    /**
+     * Blacklist state by user ID
+     */
+    private final LongExpiringCache<Boolean> userBlacklistCache;
+
+    /**
+     * Runs commands off the event lanes, either on a bounded thread pool or on a virtual thread each
+     */
+    private final ExecutorService commandExecutor;
+
+    /**
+     * Whether commands are capped per server and user. Only on virtual threads, since the thread pool's size already
+     * limits how many commands run at once.
+     */
+    private final boolean limitConcurrency;
+
+    /**
+     * Concurrent command permits by server ID. Only held on to while a command holds or waits for a permit, which is
+     * exactly as long as the count matters.
+     */
+    private final LongWeakValueCache<Semaphore> serverPermits;
+
+    /**
+     * Concurrent command permits by user ID
+     */
+    private final LongWeakValueCache<Semaphore> userPermits;
+
+    private final int serverConcurrency;
+
+    private final int userConcurrency;
+
+    /**
+     * Number of commands currently running
+     */
+    private final AtomicInteger activeCommands;
+
+    /**
+     * Commands dropped because their server or user was already running as many commands as allowed
+     */
+    private final Meter throttledMeter;
+
+    /**
+     * Commands dropped because the command thread pool's queue was full
+     */
+    private final Meter rejectedMeter;
+
     public CommandDispatcherImpl(WahrBot bot) {
         this.bot = bot;
         this.rootRegistry = new RootCommandRegistry(getRootLocaleKey() + "root");
         this.bot.getInjector().injectMembers(this.rootRegistry);
         this.defaultCommandPrefixHandle = bot.getDynConfigStore().getStringHandle(DEFAULT_COMMAND_PREFIX_KEY);
 
+        //  Prefix and blacklist are needed for every message, so keep them out of Redis on the hot path
+        this.serverPrefixCache = new LongExpiringCache<>(STORE_CACHE_TTL_MINUTES, TimeUnit.MINUTES, 10_000);
+        this.userBlacklistCache = new LongExpiringCache<>(STORE_CACHE_TTL_MINUTES, TimeUnit.MINUTES, 100_000);
+        this.bot.getServerStorage().addWriteListener((id, key) -> {
+            if (key == null || SERVER_PREFIX_KEY.equals(key)) {
+                this.serverPrefixCache.invalidate(id);
+            }
+        });
+        this.bot.getUserStorage().addWriteListener((id, key) -> {
+            if (key == null || USER_BLACKLIST_KEY.equals(key)) {
+                this.userBlacklistCache.invalidate(id);
+            }
+        });
+
+        //  Commands block on Redis, REST and SQL, so they run off the event lanes where they'd hold up every other
+        //  server sharing the lane. Virtual threads, if enabled, have their concurrency capped per server and user
+        //  instead of by the number of threads.
+        BotConfig config = bot.getConfig();
+        this.commandExecutor = this.createCommandExecutor(config);
+        this.limitConcurrency = !(this.commandExecutor instanceof ThreadPoolExecutor);
+        this.serverPermits = new LongWeakValueCache<>();
+        this.userPermits = new LongWeakValueCache<>();
+        this.serverConcurrency = config != null && config.getCommandServerConcurrency() > 0 ?
+            config.getCommandServerConcurrency() : DEFAULT_SERVER_CONCURRENCY;
+        this.userConcurrency = config != null && config.getCommandUserConcurrency() > 0 ?
+            config.getCommandUserConcurrency() : DEFAULT_USER_CONCURRENCY;
+        this.activeCommands = new AtomicInteger();
+        MetricRegistry metrics = bot.getMetrics();
+        this.throttledMeter = metrics.meter(MetricRegistry.name(WahrBot.class, "commands", "throttled"));
+        this.rejectedMeter = metrics.meter(MetricRegistry.name(WahrBot.class, "commands", "rejected"));
+        metrics.register(MetricRegistry.name(WahrBot.class, "commands", "active"),
+            (Gauge<Integer>) this.activeCommands::get);
+
         //  Load command localization strings
         //  TODO use an external DVLOC bundle
         this.bot.getLocalizer().registerBundle("com.divinitor.discord.wahrbot.core.command",
@@ -63,7 +199,8 @@ public class CommandDispatcherImpl implements CommandDispatcher {
 
     @Override
     public void handleServerMessage(MessageReceivedEvent event) {
-        if (shouldIgnore(event.getAuthor())) {
+        //  Check the prefix before the blacklist so that regular chatter never needs a blacklist lookup
+        if (event.getAuthor().isBot()) {
             return;
         }
 
@@ -76,6 +213,10 @@ public class CommandDispatcherImpl implements CommandDispatcher {
             return;
         }
 
+        if (shouldIgnore(event.getAuthor())) {
+            return;
+        }
+
         StandardGuildCommandContext context = new StandardGuildCommandContext(this.bot,
             event,
             cmdline,
@@ -84,6 +225,114 @@ public class CommandDispatcherImpl implements CommandDispatcher {
         LOGGER.debug("Incoming command {} in {}#{} from {}",
             cmdline.getLine(), context.getServer(), context.getInvocationChannel(), context.getMember());
 
+        if (this.commandExecutor.isShutdown()) {
+            return;
+        }
+
+        long serverId = event.getGuild().getIdLong();
+        long userId = event.getAuthor().getIdLong();
+        try {
+            if (this.limitConcurrency) {
+                this.commandExecutor.execute(() -> this.executeLimited(serverId, userId, context));
+            } else {
+                this.commandExecutor.execute(() -> this.runCommand(context));
+            }
+        } catch (RejectedExecutionException e) {
+            this.rejectedMeter.mark();
+            LOGGER.warn("Command executor rejected command: {}", cmdline.getOriginal());
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        this.commandExecutor.shutdown();
+        try {
+            if (!this.commandExecutor.awaitTermination(SHUTDOWN_WAIT_SECONDS, TimeUnit.SECONDS)) {
+                LOGGER.warn("Commands still running after {} seconds, interrupting them", SHUTDOWN_WAIT_SECONDS);
+                this.commandExecutor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            this.commandExecutor.shutdownNow();
+        }
+    }
+
+    private ExecutorService createCommandExecutor(BotConfig config) {
+        if (config != null && config.isVirtualThreadCommands()) {
+            if (VirtualThreads.isAvailable()) {
+                LOGGER.info("Running commands on virtual threads");
+                return VirtualThreads.newPerTaskExecutor();
+            }
+
+            LOGGER.warn("Virtual thread commands are enabled but not supported on Java {}, " +
+                "running commands on a thread pool instead", System.getProperty("java.version"));
+        }
+
+        int threads = config != null && config.getCommandThreads() > 0 ?
+            config.getCommandThreads() : Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(COMMAND_QUEUE_CAPACITY),
+            new ThreadFactoryBuilder()
+                .setNameFormat("command-%d")
+                .setDaemon(true)
+                .build());
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * Runs a command once its server and user are below their concurrency caps, or drops it if they stay at their
+     * caps for too long. Waiting for a permit is cheap on a virtual thread.
+     */
+    private void executeLimited(long serverId, long userId, StandardGuildCommandContext context) {
+        Semaphore serverPermit = this.serverPermits.get(serverId, id -> new Semaphore(this.serverConcurrency));
+        Semaphore userPermit = this.userPermits.get(userId, id -> new Semaphore(this.userConcurrency));
+        try {
+            //  Take the user permit first so that one user's backlog doesn't hold server permits while it waits
+            if (!userPermit.tryAcquire(PERMIT_WAIT_SECONDS, TimeUnit.SECONDS)) {
+                this.throttle(context, "user");
+                return;
+            }
+
+            try {
+                if (!serverPermit.tryAcquire(PERMIT_WAIT_SECONDS, TimeUnit.SECONDS)) {
+                    this.throttle(context, "server");
+                    return;
+                }
+
+                try {
+                    this.runCommand(context);
+                } finally {
+                    serverPermit.release();
+                }
+            } finally {
+                userPermit.release();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runCommand(StandardGuildCommandContext context) {
+        this.activeCommands.incrementAndGet();
+        try {
+            this.execute(context);
+        } catch (Throwable t) {
+            //  Nothing else would see this on an executor thread
+            LOGGER.warn("Unhandled exception running command: {}", context.getCommandLine().getOriginal(), t);
+        } finally {
+            this.activeCommands.decrementAndGet();
+        }
+    }
+
+    private void throttle(CommandContext context, String limit) {
+        this.throttledMeter.mark();
+        LOGGER.info("Dropped command {} from {} in {}, {} concurrency limit reached",
+            context.getCommandLine().getOriginal(), context.getInvoker(), context.getServer(), limit);
+    }
+
+    private void execute(StandardGuildCommandContext context) {
+        CommandLine cmdline = context.getCommandLine();
         CommandResult result = CommandResult.error();
         Throwable err = null;
         try {
@@ -149,13 +398,17 @@ public class CommandDispatcherImpl implements CommandDispatcher {
             return true;
         }
 
-        UserStore us = this.bot.getUserStorage().forUser(author);
-        return us.getBoolean("blacklist", false);
+        return this.userBlacklistCache.get(author.getIdLong(), id -> {
+            UserStore us = this.bot.getUserStorage().forUser(author);
+            return us.getBoolean(USER_BLACKLIST_KEY, false);
+        });
     }
 
     public String getPrefixForServer(Guild guild) {
-        ServerStore ss = this.bot.getServerStorage().forServer(guild);
-        String prefix = ss.getString("prefix", null);
+        String prefix = this.serverPrefixCache.get(guild.getIdLong(), id -> {
+            ServerStore ss = this.bot.getServerStorage().forServer(guild);
+            return ss.getString(SERVER_PREFIX_KEY, null);
+        });
         if (prefix != null) {
             return prefix;
         }
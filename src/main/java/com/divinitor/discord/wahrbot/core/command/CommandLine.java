@@ -1,24 +1,86 @@
 package com.divinitor.discord.wahrbot.core.command;
 
-import lombok.Getter;
-import lombok.Setter;
-
 import java.util.NoSuchElementException;
 import java.util.Objects;
 
-@Getter
-@Setter
+/**
+ * A cursor over a command line. The remaining line is tracked as a span of the source string, so consuming tokens
+ * only allocates the tokens themselves.
+ */
 public class CommandLine {
 
-    private String line;
     private final String original;
 
+    /**
+     * The string the cursor is over. Usually the original line, unless replaced with {@link #setLine(String)}.
+     */
+    private String source;
+
+    /**
+     * Start of the remaining line, inclusive
+     */
+    private int start;
+
+    /**
+     * End of the remaining line, exclusive
+     */
+    private int end;
+
+    /**
+     * The start position the cached peek was computed at, or -1 if there is no cached peek
+     */
+    private int peekedFrom;
+
+    /**
+     * The end position the cached peek was computed at
+     */
+    private int peekedFromEnd;
+
+    /**
+     * The cached peeked token, or null if there are no more tokens
+     */
+    private String peeked;
+
+    /**
+     * The remaining line bounds after consuming the cached peeked token
+     */
+    private int peekedStart;
+    private int peekedEnd;
+
     /**
      * Constructs a new CommandLine instance with the given input.
      * @param line The input to parse
      */
     public CommandLine(String line) {
-        this.line = this.original = Objects.requireNonNull(line);
+        this.original = Objects.requireNonNull(line);
+        this.setLine(line);
+    }
+
+    /**
+     * Gets the remaining, unconsumed portion of the command line.
+     * @return The remaining line
+     */
+    public String getLine() {
+        return this.source.substring(this.start, this.end);
+    }
+
+    /**
+     * Replaces the remaining portion of the command line.
+     * @param line The new remaining line
+     */
+    public void setLine(String line) {
+        this.source = Objects.requireNonNull(line);
+        this.start = 0;
+        this.end = line.length();
+        this.peekedFrom = -1;
+    }
+
+    /**
+     * Gets the original, complete command line.
+     * @return The original line
+     */
+    public String getOriginal() {
+        return this.original;
     }
 
     /**
@@ -26,9 +88,7 @@ public class CommandLine {
      * @param prefix The optional prefix to remove, if present
      */
     public void takeOptionalPrefix(String prefix) {
-        if (this.line.toLowerCase().startsWith(prefix.toLowerCase())) {
-            this.line = this.line.substring(prefix.length());
-        }
+        this.hasPrefixAndTake(prefix);
     }
 
     /**
@@ -37,8 +97,9 @@ public class CommandLine {
      * @return True if the prefix was present and removed, false otherwise
      */
     public boolean hasPrefixAndTake(String prefix) {
-        if (this.line.toLowerCase().startsWith(prefix.toLowerCase())) {
-            this.line = this.line.substring(prefix.length());
+        int length = prefix.length();
+        if (length <= this.end - this.start && this.source.regionMatches(true, this.start, prefix, 0, length)) {
+            this.start += length;
             return true;
         }
 
@@ -46,94 +107,156 @@ public class CommandLine {
     }
 
     private void skipWhitespace() {
-        if (this.line.isEmpty()) {
+        if (this.start >= this.end) {
             return;
         }
 
-        //  Skip whitespace
-        int startIdx = 0;
-        while (startIdx < this.line.length() && Character.isWhitespace(this.line.charAt(startIdx))) {
-            ++startIdx;
+        this.start = skipWhitespace(this.source, this.start, this.end);
+        this.end = trimEnd(this.source, this.start, this.end);
+    }
+
+    /**
+     * Skips leading whitespace and then anything String.trim() would remove.
+     * @return The new start position
+     */
+    private static int skipWhitespace(String s, int start, int end) {
+        while (start < end && Character.isWhitespace(s.charAt(start))) {
+            ++start;
+        }
+
+        return trimStart(s, start, end);
+    }
+
+    private static int trimStart(String s, int start, int end) {
+        while (start < end && s.charAt(start) <= ' ') {
+            ++start;
         }
 
-        this.line = this.line.substring(startIdx).trim();
+        return start;
+    }
+
+    private static int trimEnd(String s, int start, int end) {
+        while (start < end && s.charAt(end - 1) <= ' ') {
+            --end;
+        }
+
+        return end;
     }
 
     /**
      * Takes the next token from the command line. Respects quoted strings and escaped whitespace.
-     * @return
+     * @return The next token
+     * @throws NoSuchElementException If there are no more tokens
      */
     public String next() {
-        skipWhitespace();
-        if (this.line.isEmpty()) {
+        String ret = this.scanNext();
+        this.start = this.peekedStart;
+        this.end = this.peekedEnd;
+        this.peekedFrom = -1;
+        if (ret == null) {
             throw new NoSuchElementException("End of command line");
         }
 
-        if (this.line.startsWith("\"")) {
-            int endIndex = consumeQuotedString(this.line);
+        return ret;
+    }
+
+    /**
+     * Gets the next token without consuming it. The token is cached, so a following {@link #next()} does not
+     * tokenize it again.
+     * @return The next token, or an empty string if there are no more tokens
+     */
+    public String peek() {
+        String ret = this.scanNext();
+        return ret == null ? "" : ret;
+    }
+
+    /**
+     * Tokenizes the next token without moving the cursor, caching the result and the bounds of the line after it.
+     * @return The next token, or null if there are no more tokens
+     */
+    private String scanNext() {
+        if (this.peekedFrom == this.start && this.peekedFromEnd == this.end) {
+            return this.peeked;
+        }
+
+        String s = this.source;
+        int start = this.start;
+        int end = this.end;
+        if (start < end) {
+            start = skipWhitespace(s, start, end);
+            end = trimEnd(s, start, end);
+        }
+
+        String ret;
+        if (start >= end) {
+            ret = null;
+        } else if (s.charAt(start) == '"') {
+            int endIndex = consumeQuotedString(s, start, end);
             if (endIndex == -1) {
-                String ret = this.line.substring(1);
-                this.line = "";
-                return ret;
+                ret = s.substring(start + 1, end);
+                start = end;
             } else {
-                String ret = this.line.substring(1, endIndex);
-                this.line = this.line.substring(endIndex + 1).trim();
-                return ret;
+                ret = s.substring(start + 1, endIndex);
+                start = trimStart(s, endIndex + 1, end);
+                end = trimEnd(s, start, end);
             }
         } else {
-            StringBuilder builder = new StringBuilder();
-            int end = this.line.length();
+            //  Only build the token if it actually contains escapes
+            StringBuilder builder = null;
+            int tokenEnd = end;
             boolean escaped = false;
-            for (int i = 0; i < this.line.length(); i++) {
-                char c = this.line.charAt(i);
+            for (int i = start; i < end; i++) {
+                char c = s.charAt(i);
                 if (escaped) {
                     builder.append(c);
                     escaped = false;
                 } else if (c == '\\') {
+                    if (builder == null) {
+                        builder = new StringBuilder(end - start);
+                        builder.append(s, start, i);
+                    }
+
                     escaped = true;
                 } else if (Character.isWhitespace(c)) {
-                    end = i;
+                    tokenEnd = i;
                     break;
-                } else {
+                } else if (builder != null) {
                     builder.append(c);
                 }
             }
 
-            this.line = this.line.substring(end).trim();
-            return builder.toString();
+            ret = builder == null ? s.substring(start, tokenEnd) : builder.toString();
+            start = trimStart(s, tokenEnd, end);
+            end = trimEnd(s, start, end);
         }
-    }
 
-    public String peek() {
-        String s = this.line;
-        try {
-            return next();
-        } catch (NoSuchElementException nsee) {
-            return "";
-        } finally {
-            this.line = s;
-        }
+        this.peekedFrom = this.start;
+        this.peekedFromEnd = this.end;
+        this.peeked = ret;
+        this.peekedStart = start;
+        this.peekedEnd = end;
+        return ret;
     }
 
     public boolean hasNext() {
-        return !this.line.isEmpty();
+        return this.start < this.end;
     }
 
     public String remainder() {
         skipWhitespace();
-        String ret = this.line;
-        this.line = "";
+        String ret = this.getLine();
+        this.start = this.end;
         return ret;
     }
 
     public CommandLine copy() {
-        return new CommandLine(this.line);
+        return new CommandLine(this.getLine());
     }
 
-    private static int consumeQuotedString(String s) {
+    private static int consumeQuotedString(String s, int start, int end) {
         //  We know it starts with a quote
         boolean escape = false;
-        for (int i = 1; i < s.length(); i++) {
+        for (int i = start + 1; i < end; i++) {
             char c = s.charAt(i);
             if (escape) {
                 escape = false;
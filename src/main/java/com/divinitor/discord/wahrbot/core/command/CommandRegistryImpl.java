@@ -15,8 +15,11 @@ import org.slf4j.LoggerFactory;
 import java.lang.invoke.MethodHandles;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.stream.Collectors;
@@ -28,7 +31,20 @@ public class CommandRegistryImpl implements CommandRegistry {
 
     private final Logger LOGGER = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
+    private static final String HELP_KEY = "com.divinitor.discord.wahrbot.cmd.help";
+
+    /**
+     * User store key that lets a user bypass permission checks
+     */
+    public static final String USER_SUDO_KEY = "sudo";
+
     private final Map<String, CommandWrapper> commands;
+    /**
+     * Per-locale lookup index from case-folded localized command names to commands. Indices are built lazily the first
+     * time a locale is seen, patched in place when commands are registered or unregistered, and rebuilt when the
+     * localizer's bundles change.
+     */
+    private final Map<Locale, CommandIndex> commandIndices;
     private final ReadWriteLock commandLock;
     private final String nameKey;
     private CommandRegistry parent;
@@ -58,6 +74,7 @@ public class CommandRegistryImpl implements CommandRegistry {
         this.nameKey = nameKey;
         this.setParent(parent);
         this.commands = new HashMap<>();
+        this.commandIndices = new ConcurrentHashMap<>();
         this.commandLock = new ReentrantReadWriteLock();
         this.defaultCommand = new HelpCommand();
         this.defaultCommandWrapper = new CommandWrapper(Localizer.PREFIX_DO_NOT_RESOLVE, this.defaultCommand);
@@ -65,7 +82,7 @@ public class CommandRegistryImpl implements CommandRegistry {
         this.botPermissionConstraints = CommandConstraints.allow();
         this.otherConstraints = CommandConstraints.allow();
         this.helpCommand = new HelpCommand();
-        this.helpCommandWrapper = new CommandWrapper("com.divinitor.discord.wahrbot.cmd.help", this.helpCommand);
+        this.helpCommandWrapper = new CommandWrapper(HELP_KEY, this.helpCommand);
     }
 
     @Override
@@ -85,7 +102,7 @@ public class CommandRegistryImpl implements CommandRegistry {
             }
 
             Command cmd = command.getCommand();
-            if (!ctx.getUserStorage().getBoolean("sudo", false)) {
+            if (!ctx.getUserStorage().getBoolean(USER_SUDO_KEY, false)) {
                 if (!cmd.getBotPermissionConstraints().check(context)) {
                     return CommandResult.noBotPerm();
                 }
@@ -155,19 +172,59 @@ public class CommandRegistryImpl implements CommandRegistry {
     @Nullable
     private CommandWrapper getCommandWrapper(String cmd, Locale locale) {
         try (Lockable l = acquire(this.commandLock.readLock())) {
-            for (String key : this.commands.keySet()) {
-                String locKey = this.loc.localizeToLocale(key, locale);
-                if (cmd.equalsIgnoreCase(locKey)) {
-                    return this.commands.get(key);
-                }
+            return this.getCommandIndex(locale).names.get(foldCase(cmd));
+        }
+    }
+
+    /**
+     * Gets the command index for the given locale, building it if it doesn't exist yet or if the localizer's bundles
+     * have changed since it was built. Must be called while holding the command lock.
+     * @param locale The locale to get the index for
+     * @return The command index for the locale
+     */
+    private CommandIndex getCommandIndex(Locale locale) {
+        long revision = this.loc.getBundleRevision();
+        CommandIndex index = this.commandIndices.get(locale);
+        if (index != null && index.revision == revision) {
+            return index;
+        }
+
+        return this.commandIndices.compute(locale, (k, v) -> {
+            if (v != null && v.revision == revision) {
+                return v;
             }
+
+            return new CommandIndex(k, revision);
+        });
+    }
+
+    /**
+     * Folds the case of a command name so that a plain hash lookup matches the same names that
+     * {@link String#equalsIgnoreCase(String)} would.
+     * @param s The string to fold
+     * @return The case-folded string, or the string itself if it is already folded
+     */
+    static String foldCase(String s) {
+        int len = s.length();
+        int i = 0;
+        while (i < len && foldCase(s.charAt(i)) == s.charAt(i)) {
+            ++i;
         }
 
-        if (cmd.equalsIgnoreCase(this.loc.localizeToLocale("com.divinitor.discord.wahrbot.cmd.help", locale))) {
-            return this.helpCommandWrapper;
+        if (i == len) {
+            return s;
         }
 
-        return null;
+        char[] chars = s.toCharArray();
+        for (; i < len; i++) {
+            chars[i] = foldCase(chars[i]);
+        }
+
+        return new String(chars);
+    }
+
+    private static char foldCase(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
     }
 
     @Override
@@ -182,7 +239,7 @@ public class CommandRegistryImpl implements CommandRegistry {
         return command
             .getUserPermissionConstraints()
             .and(this::checkExternalPermissions)
-            .or(ctx -> ctx.getUserStorage().getBoolean("sudo", false))
+            .or(ctx -> ctx.getUserStorage().getBoolean(USER_SUDO_KEY, false))
             .and(command.getOtherConstraints())
             .check(context);
     }
@@ -207,7 +264,15 @@ public class CommandRegistryImpl implements CommandRegistry {
     public void registerCommand(Command command, String commandKey) {
         CommandWrapper wrapper = new CommandWrapper(commandKey, command);
         try (Lockable l = acquire(this.commandLock.writeLock())) {
-            this.commands.put(commandKey, wrapper);
+            CommandWrapper old = this.commands.put(commandKey, wrapper);
+            for (CommandIndex index : this.commandIndices.values()) {
+                if (old != null) {
+                    index.remove(old);
+                }
+
+                index.add(wrapper);
+            }
+
             LOGGER.info("Registered command {} under {}", loc.localize(commandKey), loc.localize(this.nameKey));
         }
     }
@@ -215,8 +280,12 @@ public class CommandRegistryImpl implements CommandRegistry {
     @Override
     public void unregisterCommand(String commandKey) {
         try (Lockable l = acquire(this.commandLock.writeLock())) {
-            boolean removed = this.commands.remove(commandKey) != null;
-            if (removed) {
+            CommandWrapper removed = this.commands.remove(commandKey);
+            if (removed != null) {
+                for (CommandIndex index : this.commandIndices.values()) {
+                    index.remove(removed);
+                }
+
                 LOGGER.info("Unregistered command {} under {}",
                     loc.localize(commandKey), loc.localize(this.nameKey));
             } else {
@@ -311,6 +380,10 @@ public class CommandRegistryImpl implements CommandRegistry {
             return context.getLocalizer().localizeToLocale(this.key, context.getLocale());
         }
 
+        public String localizeKey(Locale locale) {
+            return CommandRegistryImpl.this.loc.localizeToLocale(this.key, locale);
+        }
+
         public String helpKey() {
             return this.key + ".help";
         }
@@ -336,6 +409,62 @@ public class CommandRegistryImpl implements CommandRegistry {
         }
     }
 
+    /**
+     * Lookup index for a single locale. Reads happen under the command read lock, and in-place updates under the
+     * command write lock.
+     */
+    private class CommandIndex {
+
+        private final Locale locale;
+        private final long revision;
+        private final String helpName;
+        private final Map<String, CommandWrapper> names;
+
+        private CommandIndex(Locale locale, long revision) {
+            this.locale = locale;
+            this.revision = revision;
+            this.names = new HashMap<>();
+            this.helpName = foldCase(helpCommandWrapper.localizeKey(locale));
+            //  Registered commands take precedence over the built in help command
+            this.names.put(this.helpName, helpCommandWrapper);
+            for (CommandWrapper wrapper : commands.values()) {
+                this.add(wrapper);
+            }
+        }
+
+        private void add(CommandWrapper wrapper) {
+            this.names.put(foldCase(wrapper.localizeKey(this.locale)), wrapper);
+        }
+
+        private void remove(CommandWrapper wrapper) {
+            Set<String> freed = new HashSet<>();
+            this.names.entrySet().removeIf(e -> {
+                if (e.getValue() == wrapper) {
+                    freed.add(e.getKey());
+                    return true;
+                }
+
+                return false;
+            });
+
+            if (freed.isEmpty()) {
+                return;
+            }
+
+            //  Other commands may resolve to the same name and were shadowed by the removed one
+            for (CommandWrapper remaining : commands.values()) {
+                if (remaining != wrapper) {
+                    String name = foldCase(remaining.localizeKey(this.locale));
+                    if (freed.contains(name)) {
+                        this.names.put(name, remaining);
+                    }
+                }
+            }
+
+            this.names.putIfAbsent(this.helpName, helpCommandWrapper);
+        }
+    }
+
     class HelpCommand implements Command {
 
         @Override
@@ -5,6 +5,8 @@ import com.divinitor.discord.wahrbot.core.store.ServerStore;
 import com.divinitor.discord.wahrbot.core.store.UserStore;
 import com.divinitor.discord.wahrbot.core.util.discord.SnowflakeUtils;
 import com.google.common.base.Strings;
+import com.google.common.base.Suppliers;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import net.dv8tion.jda.api.JDA;
@@ -23,6 +25,16 @@ public class StandardGuildCommandContext implements CommandContext {
 
     public static final String USER_LOCALE_KEY = "opt.locale";
 
+    /**
+     * User store keys read while dispatching a command, fetched together when the store is first used. The blacklist
+     * and server prefix aren't here as the dispatcher reads them through its own caches before there's a context, and
+     * nothing else in the server store is read on every command, so that store isn't prefetched.
+     */
+    private static final String[] USER_PREFETCH_KEYS = {
+        USER_LOCALE_KEY,
+        CommandRegistryImpl.USER_SUDO_KEY
+    };
+
     private final WahrBot bot;
     private final MessageReceivedEvent event;
     private final CommandLine commandLine;
@@ -32,22 +44,38 @@ public class StandardGuildCommandContext implements CommandContext {
     @Setter
     private String nameKey;
 
+    @Getter(AccessLevel.NONE)
+    private final Memo memo;
+
     public StandardGuildCommandContext(WahrBot bot,
                                        MessageReceivedEvent event,
                                        CommandLine commandLine,
                                        CommandRegistry registry) {
-        this.bot = bot;
-        this.event = event;
-        this.commandLine = commandLine;
-        this.registry = registry;
-        this.uuid = UUID.randomUUID();
+        this(bot, event, commandLine, registry, new Memo(bot, event));
     }
 
     public StandardGuildCommandContext(CommandContext context, CommandRegistry newRegistry) {
+        //  Child contexts belong to the same invocation, so they share everything the parent has resolved
         this(context.getBot(),
             (MessageReceivedEvent) context.getEvent(),
             context.getCommandLine(),
-            newRegistry);
+            newRegistry,
+            context instanceof StandardGuildCommandContext ?
+                ((StandardGuildCommandContext) context).memo :
+                new Memo(context.getBot(), (MessageReceivedEvent) context.getEvent()));
+    }
+
+    private StandardGuildCommandContext(WahrBot bot,
+                                        MessageReceivedEvent event,
+                                        CommandLine commandLine,
+                                        CommandRegistry registry,
+                                        Memo memo) {
+        this.bot = bot;
+        this.event = event;
+        this.commandLine = commandLine;
+        this.registry = registry;
+        this.uuid = UUID.randomUUID();
+        this.memo = memo;
     }
 
     private static Supplier<String> wrap(Supplier<String> s) {
@@ -86,7 +114,7 @@ public class StandardGuildCommandContext implements CommandContext {
 
     @Override
     public Member getMember() {
-        return this.event.getMember();
+        return this.memo.member.get();
     }
 
     @Override
@@ -96,12 +124,12 @@ public class StandardGuildCommandContext implements CommandContext {
 
     @Override
     public ServerStore getServerStorage() {
-        return this.bot.getServerStorage().forServer(this.getServer());
+        return this.memo.serverStore.get();
     }
 
     @Override
     public UserStore getUserStorage() {
-        return this.bot.getUserStorage().forUser(this.getInvoker());
+        return this.memo.userStore.get();
     }
 
     @Override
@@ -111,12 +139,7 @@ public class StandardGuildCommandContext implements CommandContext {
 
     @Override
     public Locale getLocale() {
-        String userLocale = this.getUserStorage().getString(USER_LOCALE_KEY);
-        if (Strings.isNullOrEmpty(userLocale)) {
-            return this.bot.getLocalizer().getDefaultLocale();
-        }
-
-        return Locale.forLanguageTag(userLocale);
+        return this.memo.locale.get();
     }
 
     @Override
@@ -148,4 +171,31 @@ public class StandardGuildCommandContext implements CommandContext {
     public String getCommandNameKey() {
         return this.nameKey;
     }
+
+    /**
+     * Values resolved at most once per invocation, shared by a context and all of its children. The locale is
+     * resolved once too, so changing it mid-command takes effect from the next command on.
+     */
+    private static final class Memo {
+
+        private final Supplier<UserStore> userStore;
+        private final Supplier<ServerStore> serverStore;
+        private final Supplier<Member> member;
+        private final Supplier<Locale> locale;
+
+        Memo(WahrBot bot, MessageReceivedEvent event) {
+            this.userStore = Suppliers.memoize(() ->
+                bot.getUserStorage().forUser(event.getAuthor()).prefetch(USER_PREFETCH_KEYS));
+            this.serverStore = Suppliers.memoize(() -> bot.getServerStorage().forServer(event.getGuild()));
+            this.member = Suppliers.memoize(event::getMember);
+            this.locale = Suppliers.memoize(() -> {
+                String userLocale = this.userStore.get().getString(USER_LOCALE_KEY);
+                if (Strings.isNullOrEmpty(userLocale)) {
+                    return bot.getLocalizer().getDefaultLocale();
+                }
+
+                return Locale.forLanguageTag(userLocale);
+            });
+        }
+    }
 }
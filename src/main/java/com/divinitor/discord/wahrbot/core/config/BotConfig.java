@@ -11,4 +11,27 @@ public class BotConfig {
     private RedisCredentials redis;
     private SQLCredentials sqlCredentials;
     private String instanceName;
+    /**
+     * How long an event subscriber may run before it's reported as slow. Uses the event bus default if not set.
+     */
+    private long slowEventThresholdMs;
+    /**
+     * Whether commands run on their own virtual threads rather than on the command thread pool. Needs JDK 21 or newer,
+     * and falls back to the pool otherwise.
+     */
+    private boolean virtualThreadCommands;
+    /**
+     * How many threads the command thread pool has. Uses the dispatcher default if not set.
+     */
+    private int commandThreads;
+    /**
+     * How many commands may run at once in a single server when running on virtual threads. Uses the dispatcher
+     * default if not set.
+     */
+    private int commandServerConcurrency;
+    /**
+     * How many commands a single user may run at once when running on virtual threads. Uses the dispatcher default if
+     * not set.
+     */
+    private int commandUserConcurrency;
 }
@@ -1,6 +1,9 @@
 package com.divinitor.discord.wahrbot.core.config.dyn;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 
@@ -26,6 +29,44 @@ public interface DynConfigStore {
 
     String getString(String key);
 
+    /**
+     * Gets several values at once. Stores that can fetch them in a single round trip should override this.
+     * @param keys The keys
+     * @return A map from each requested key to its value, or to null if there is no such key
+     */
+    default Map<String, String> getStrings(String... keys) {
+        Map<String, String> ret = new LinkedHashMap<>(keys.length * 4 / 3 + 1);
+        for (String key : keys) {
+            ret.put(key, this.getString(key));
+        }
+
+        return ret;
+    }
+
+    /**
+     * Gets a value without blocking the calling thread. Stores that can't do so complete the future synchronously.
+     * @param key The key
+     * @return A future that completes with the value, or null if there is no such key
+     */
+    default CompletableFuture<String> getStringAsync(String key) {
+        return CompletableFuture.completedFuture(this.getString(key));
+    }
+
+    /**
+     * Sets a value without blocking the calling thread. Stores that can't do so complete the future synchronously.
+     * @param key The key
+     * @param value The value
+     * @return A future that completes once the value has been written
+     */
+    default CompletableFuture<Void> putAsync(String key, String value) {
+        this.put(key, value);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    default CompletableFuture<Void> putAsync(String key, Object value) {
+        return this.putAsync(key, this.serializer().apply(value));
+    }
+
     default String getString(String key, String def) {
         String val = this.getString(key);
         if (val == null) {
@@ -161,6 +202,27 @@ public interface DynConfigStore {
         }
     }
 
+    /**
+     * Gets and deserializes a value without blocking the calling thread.
+     * @param key The key
+     * @param clazz The type to deserialize to
+     * @param <T> The type to deserialize to
+     * @return A future that completes with the value, or null if there is no such key
+     */
+    default <T> CompletableFuture<T> getObjectAsync(String key, Class<T> clazz) {
+        return this.getStringAsync(key).thenApply(val -> {
+            if (val == null) {
+                return null;
+            }
+
+            return this.deserializer(clazz).apply(val, clazz);
+        });
+    }
+
+    default <T, V> CompletableFuture<T> getObjectAsync(String key, Class<T> clazz, Class<V> vClass) {
+        return this.getObjectAsync(key, clazz);
+    }
+
     default DynConfigHandle getStringHandle(String key) {
         return () -> this.getString(key);
     }
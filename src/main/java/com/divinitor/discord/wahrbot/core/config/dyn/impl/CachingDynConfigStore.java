@@ -1,47 +1,208 @@
 package com.divinitor.discord.wahrbot.core.config.dyn.impl;
 
 import com.divinitor.discord.wahrbot.core.config.dyn.*;
+import com.divinitor.discord.wahrbot.core.util.redis.InvalidationListener;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.collect.MapMaker;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 
+import java.util.Collections;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 
-public class CachingDynConfigStore implements DynConfigStore {
+/**
+ * Caches values from another store. Values are kept for a long time and refreshed in the background, so reads only
+ * block on the first load of a key. Changes are expected to arrive through {@link #invalidate(String)}, usually from a
+ * {@link com.divinitor.discord.wahrbot.core.util.redis.RedisInvalidationBus} subscription; the refresh interval only
+ * bounds how long a missed invalidation can go unnoticed.
+ * <p>
+ * Handles returned by this store hold their value already parsed, and are updated by the store when their key is
+ * invalidated, so reading a handle never touches the cache or Redis.
+ * </p>
+ */
+public class CachingDynConfigStore implements DynConfigStore, InvalidationListener {
+
+    private static final long REFRESH_AFTER_WRITE_MINUTES = 5;
+    private static final long EXPIRE_AFTER_WRITE_HOURS = 6;
+
+    /**
+     * State of a primitive handle's value
+     */
+    private static final byte OK = 0;
+    private static final byte MISSING = 1;
+    private static final byte INVALID = 2;
 
     private final DynConfigStore supplier;
-    private final LoadingCache<String, String> cache;
+    /**
+     * Cached values. Missing keys are cached as empty.
+     */
+    private final LoadingCache<String, Optional<String>> cache;
+    private final Executor reloadExecutor;
+    /**
+     * Live handles by key. Handles are weakly held, so they go away once their owner drops them.
+     */
+    private final ConcurrentMap<String, Set<CachedHandle>> handles;
+    /**
+     * Bumped before every invalidation, so an async load can tell whether what it read may already be stale
+     */
+    private final AtomicLong generation;
 
     public CachingDynConfigStore(DynConfigStore supplier) {
+        this(supplier, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param supplier The store to cache
+     * @param reloadExecutor The executor background refreshes run on
+     */
+    public CachingDynConfigStore(DynConfigStore supplier, Executor reloadExecutor) {
         this.supplier = supplier;
+        this.reloadExecutor = reloadExecutor;
+        this.handles = new ConcurrentHashMap<>();
+        this.generation = new AtomicLong();
         this.cache = CacheBuilder.newBuilder()
-            .expireAfterWrite(5, TimeUnit.MINUTES)
-            .build(new CacheLoader<String, String>() {
+            .refreshAfterWrite(REFRESH_AFTER_WRITE_MINUTES, TimeUnit.MINUTES)
+            .expireAfterWrite(EXPIRE_AFTER_WRITE_HOURS, TimeUnit.HOURS)
+            .build(CacheLoader.asyncReloading(new CacheLoader<String, Optional<String>>() {
                 @Override
-                public String load(String key) throws Exception {
-                    return CachingDynConfigStore.this.supplier.getString(key);
+                public Optional<String> load(String key) throws Exception {
+                    return Optional.ofNullable(CachingDynConfigStore.this.supplier.getString(key));
                 }
-            });
+            }, reloadExecutor));
     }
 
     @Override
     public void put(String key, String value) {
         this.supplier.put(key, value);
+        this.written(key);
+    }
+
+    @Override
+    public CompletableFuture<Void> putAsync(String key, String value) {
+        return this.supplier.putAsync(key, value).thenRun(() -> this.written(key));
+    }
+
+    private void written(String key) {
+        this.generation.incrementAndGet();
         this.cache.invalidate(key);
+        //  Local writes are visible through handles immediately
+        Set<CachedHandle> keyHandles = this.handles.get(key);
+        if (keyHandles != null) {
+            keyHandles.forEach(this::refresh);
+        }
+    }
+
+    @Override
+    public CompletableFuture<String> getStringAsync(String key) {
+        Optional<String> cached = this.cache.getIfPresent(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached.orElse(null));
+        }
+
+        long generation = this.generation.get();
+        return this.supplier.getStringAsync(key).thenApply(val -> {
+            //  Only cache what we read if nothing was invalidated while it was loading. Invalidations bump the
+            //  generation before clearing the cache, so re-checking after inserting catches one that raced with us.
+            if (this.generation.get() == generation) {
+                Optional<String> loaded = Optional.ofNullable(val);
+                if (this.cache.asMap().putIfAbsent(key, loaded) == null && this.generation.get() != generation) {
+                    this.cache.asMap().remove(key, loaded);
+                }
+            }
+
+            return val;
+        });
     }
 
     @Override
     public String getString(String key) {
+        long generation = this.generation.get();
         try {
-            return this.cache.get(key);
-        } catch (ExecutionException e) {
+            Optional<String> loaded = this.cache.get(key);
+            //  Guava doesn't cancel a load that an invalidation raced with, so drop what it cached ourselves
+            if (this.generation.get() != generation) {
+                this.cache.asMap().remove(key, loaded);
+            }
+
+            return loaded.orElse(null);
+        } catch (ExecutionException | UncheckedExecutionException e) {
             return this.supplier.getString(key);
-        } catch (CacheLoader.InvalidCacheLoadException icle) {
-            //  This is only returned if the key loaded is null
-            return null;
+        }
+    }
+
+    @Override
+    public void invalidate(String key) {
+        this.generation.incrementAndGet();
+        this.cache.invalidate(key);
+        Set<CachedHandle> keyHandles = this.handles.get(key);
+        if (keyHandles != null && !keyHandles.isEmpty()) {
+            this.reloadExecutor.execute(() -> keyHandles.forEach(this::refresh));
+        }
+    }
+
+    @Override
+    public void invalidateAll() {
+        this.generation.incrementAndGet();
+        this.cache.invalidateAll();
+        this.reloadExecutor.execute(() -> this.handles.values().forEach(s -> s.forEach(this::refresh)));
+    }
+
+    @Override
+    public DynConfigHandle getStringHandle(String key) {
+        return this.register(new StringHandle(key));
+    }
+
+    @Override
+    public LongDynConfigHandle getLongHandle(String key) {
+        return this.register(new LongHandle(key));
+    }
+
+    @Override
+    public DoubleDynConfigHandle getDoubleHandle(String key) {
+        return this.register(new DoubleHandle(key));
+    }
+
+    @Override
+    public BooleanDynConfigHandle getBooleanHandle(String key) {
+        return this.register(new BooleanHandle(key));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The handle returns the same deserialized instance until the key changes, so it must not be modified.
+     * </p>
+     */
+    @Override
+    public <T> ObjectDynConfigHandle<T> getObjectHandle(String key, Class<T> clazz) {
+        return this.register(new ObjectHandle<>(key, clazz, this.deserializer(clazz)));
+    }
+
+    private <H extends CachedHandle> H register(H handle) {
+        this.handles.computeIfAbsent(handle.key,
+            k -> Collections.newSetFromMap(new MapMaker().weakKeys().makeMap()))
+            .add(handle);
+        this.refresh(handle);
+        return handle;
+    }
+
+    private void refresh(CachedHandle handle) {
+        //  Serialize refreshes so that a slow, older read can't overwrite a newer one
+        synchronized (handle) {
+            handle.update(this.getString(handle.key));
         }
     }
 
@@ -54,4 +215,188 @@ public class CachingDynConfigStore implements DynConfigStore {
     public <T> Function<T, String> serializer() {
         return this.supplier.serializer();
     }
+
+    private abstract static class CachedHandle {
+
+        final String key;
+
+        CachedHandle(String key) {
+            this.key = key;
+        }
+
+        /**
+         * Updates the handle with the key's current raw value.
+         * @param raw The raw value, or null if the key is not set
+         */
+        abstract void update(String raw);
+    }
+
+    private static class StringHandle extends CachedHandle implements DynConfigHandle {
+
+        private volatile String value;
+
+        StringHandle(String key) {
+            super(key);
+        }
+
+        @Override
+        void update(String raw) {
+            this.value = raw;
+        }
+
+        @Override
+        public String get() {
+            return this.value;
+        }
+    }
+
+    private static class LongHandle extends CachedHandle implements LongDynConfigHandle {
+
+        /**
+         * Written before {@link #state}, and only read after it
+         */
+        private long value;
+        private volatile byte state;
+
+        LongHandle(String key) {
+            super(key);
+        }
+
+        @Override
+        void update(String raw) {
+            if (raw == null) {
+                this.state = MISSING;
+                return;
+            }
+
+            try {
+                this.value = Long.parseLong(raw);
+                this.state = OK;
+            } catch (NumberFormatException nfe) {
+                this.state = INVALID;
+            }
+        }
+
+        @Override
+        public long getLong() {
+            byte state = this.state;
+            if (state == MISSING) {
+                throw new NoSuchElementException(this.key);
+            } else if (state == INVALID) {
+                throw new IllegalArgumentException(this.key + " is not an integer");
+            }
+
+            return this.value;
+        }
+    }
+
+    private static class DoubleHandle extends CachedHandle implements DoubleDynConfigHandle {
+
+        /**
+         * Written before {@link #state}, and only read after it
+         */
+        private double value;
+        private volatile byte state;
+
+        DoubleHandle(String key) {
+            super(key);
+        }
+
+        @Override
+        void update(String raw) {
+            if (raw == null) {
+                this.state = MISSING;
+                return;
+            }
+
+            try {
+                this.value = Double.parseDouble(raw);
+                this.state = OK;
+            } catch (NumberFormatException nfe) {
+                this.state = INVALID;
+            }
+        }
+
+        @Override
+        public double getDouble() {
+            byte state = this.state;
+            if (state == MISSING) {
+                throw new NoSuchElementException(this.key);
+            } else if (state == INVALID) {
+                throw new IllegalArgumentException(this.key + " is not a real");
+            }
+
+            return this.value;
+        }
+    }
+
+    private static class BooleanHandle extends CachedHandle implements BooleanDynConfigHandle {
+
+        /**
+         * Written before {@link #state}, and only read after it
+         */
+        private boolean value;
+        private volatile byte state;
+
+        BooleanHandle(String key) {
+            super(key);
+        }
+
+        @Override
+        void update(String raw) {
+            if (raw == null) {
+                this.state = MISSING;
+                return;
+            }
+
+            this.value = Boolean.parseBoolean(raw);
+            this.state = OK;
+        }
+
+        @Override
+        public boolean getBoolean() {
+            if (this.state == MISSING) {
+                throw new NoSuchElementException(this.key);
+            }
+
+            return this.value;
+        }
+    }
+
+    private static class ObjectHandle<T> extends CachedHandle implements ObjectDynConfigHandle<T> {
+
+        private final Class<T> clazz;
+        private final BiFunction<String, Class<T>, T> deserializer;
+        /**
+         * Written before {@link #error}, and only read after it
+         */
+        private T value;
+        private volatile RuntimeException error;
+
+        ObjectHandle(String key, Class<T> clazz, BiFunction<String, Class<T>, T> deserializer) {
+            super(key);
+            this.clazz = clazz;
+            this.deserializer = deserializer;
+        }
+
+        @Override
+        void update(String raw) {
+            try {
+                this.value = raw == null ? null : this.deserializer.apply(raw, this.clazz);
+                this.error = null;
+            } catch (RuntimeException e) {
+                this.error = e;
+            }
+        }
+
+        @Override
+        public T get() {
+            RuntimeException error = this.error;
+            if (error != null) {
+                throw error;
+            }
+
+            return this.value;
+        }
+    }
 }
@@ -3,18 +3,33 @@ package com.divinitor.discord.wahrbot.core.config.dyn.impl;
 import com.divinitor.discord.wahrbot.core.config.dyn.DynConfigStore;
 import com.divinitor.discord.wahrbot.core.util.gson.StandardGson;
 import com.divinitor.discord.wahrbot.core.util.inject.JedisProvider;
+import com.divinitor.discord.wahrbot.core.util.redis.RedisInvalidationBus;
+import com.divinitor.discord.wahrbot.core.util.redis.RedisPipelineDispatcher;
 import com.google.gson.Gson;
 import com.google.inject.Inject;
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Response;
 
+import java.util.concurrent.CompletableFuture;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 
 public class RedisDynConfigStore implements DynConfigStore {
 
+    /**
+     * Invalidation channel that changed keys are published on
+     */
+    public static final String INVALIDATION_CHANNEL = "dynconfig";
+
     @Inject
     private JedisProvider provider;
 
+    @Inject
+    private RedisInvalidationBus invalidationBus;
+
+    @Inject
+    private RedisPipelineDispatcher dispatcher;
+
     private final Gson gson;
 
     public RedisDynConfigStore() {
@@ -26,6 +41,17 @@ public class RedisDynConfigStore implements DynConfigStore {
         try (Jedis j = this.provider.get()) {
             j.set(key, value);
         }
+
+        this.invalidationBus.publish(INVALIDATION_CHANNEL, key);
+    }
+
+    @Override
+    public CompletableFuture<Void> putAsync(String key, String value) {
+        return this.dispatcher.submit(p -> {
+            Response<String> ret = p.set(key, value);
+            this.invalidationBus.publish(p, INVALIDATION_CHANNEL, key);
+            return ret;
+        }).thenApply(r -> null);
     }
 
     @Override
@@ -35,6 +61,11 @@ public class RedisDynConfigStore implements DynConfigStore {
         }
     }
 
+    @Override
+    public CompletableFuture<String> getStringAsync(String key) {
+        return this.dispatcher.submit(p -> p.get(key));
+    }
+
     @Override
     public <T> BiFunction<String, Class<T>, T> deserializer(Class<T> clazz) {
         return this.gson::fromJson;
@@ -0,0 +1,19 @@
+package com.divinitor.discord.wahrbot.core.event;
+
+import java.lang.reflect.Method;
+
+/**
+ * Handles exceptions thrown by event subscribers.
+ */
+@FunctionalInterface
+public interface EventExceptionHandler {
+
+    /**
+     * Called on the lane thread after a subscriber throws. Other subscribers still receive the event.
+     * @param exception The exception that was thrown
+     * @param event The event being handled
+     * @param subscriber The object the subscriber method belongs to
+     * @param method The subscriber method
+     */
+    void handleException(Throwable exception, Object event, Object subscriber, Method method);
+}
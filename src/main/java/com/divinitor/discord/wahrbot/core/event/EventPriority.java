@@ -0,0 +1,18 @@
+package com.divinitor.discord.wahrbot.core.event;
+
+/**
+ * How an event is treated when its lane on the {@link ShardedEventBus} is backed up.
+ */
+public enum EventPriority {
+
+    /**
+     * Never dropped. Posting waits for room if the lane is full, pushing back on whoever is producing events.
+     */
+    ESSENTIAL,
+
+    /**
+     * Dropped if the lane is past its high watermark. Used for high volume events that are only useful while they're
+     * fresh, such as presence and typing updates.
+     */
+    SHEDDABLE
+}
@@ -0,0 +1,119 @@
+package com.divinitor.discord.wahrbot.core.event;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.divinitor.discord.wahrbot.core.WahrBot;
+import com.google.common.eventbus.AllowConcurrentEvents;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A single subscriber method bound to its owner. The method handle is resolved once at registration, so dispatching
+ * doesn't go through reflection.
+ */
+final class EventSubscriber {
+
+    private static final MethodType INVOKE_TYPE = MethodType.methodType(void.class, Object.class);
+
+    private final Object target;
+    private final Method method;
+    private final MethodHandle handle;
+
+    /**
+     * Who registered this subscriber, such as a module id
+     */
+    private final String owner;
+
+    /**
+     * Invocation timers by event class
+     */
+    private final Map<Class<?>, Timer> timers;
+
+    /**
+     * Whether the method may be called from several lanes at once. Like Guava's event bus, subscribers that aren't
+     * annotated with {@link AllowConcurrentEvents} are called one event at a time.
+     */
+    private final boolean concurrent;
+
+    EventSubscriber(Object target, Method method, String owner) throws IllegalAccessException {
+        this.target = target;
+        this.method = method;
+        this.owner = owner;
+        this.timers = new ConcurrentHashMap<>();
+        method.setAccessible(true);
+        this.handle = MethodHandles.lookup().unreflect(method)
+            .bindTo(target)
+            .asType(INVOKE_TYPE);
+        this.concurrent = method.isAnnotationPresent(AllowConcurrentEvents.class);
+    }
+
+    Object getTarget() {
+        return this.target;
+    }
+
+    Method getMethod() {
+        return this.method;
+    }
+
+    Class<?> getEventType() {
+        return this.method.getParameterTypes()[0];
+    }
+
+    String getOwner() {
+        return this.owner;
+    }
+
+    /**
+     * Gets the timer for this subscriber handling events of the given class, creating it in the registry if needed.
+     */
+    Timer timer(Class<?> eventClass, MetricRegistry metrics) {
+        Timer timer = this.timers.get(eventClass);
+        if (timer == null) {
+            timer = this.timers.computeIfAbsent(eventClass, cls -> metrics.timer(MetricRegistry.name(WahrBot.class,
+                "eventbus", "subscribers", this.owner, this.describe(), cls.getName())));
+        }
+
+        return timer;
+    }
+
+    /**
+     * Gets a readable name for the subscriber method, such as {@code com.example.Listener#onMessage}.
+     */
+    String describe() {
+        return this.method.getDeclaringClass().getName() + "#" + this.method.getName();
+    }
+
+    void invoke(Object event) throws Throwable {
+        if (this.concurrent) {
+            this.handle.invokeExact(event);
+        } else {
+            synchronized (this) {
+                this.handle.invokeExact(event);
+            }
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+
+        if (!(o instanceof EventSubscriber)) {
+            return false;
+        }
+
+        EventSubscriber that = (EventSubscriber) o;
+        return this.target == that.target && this.method.equals(that.method);
+    }
+
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(this.target) * 31 + this.method.hashCode();
+    }
+}
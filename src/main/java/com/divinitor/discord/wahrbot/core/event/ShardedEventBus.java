@@ -0,0 +1,630 @@
+package com.divinitor.discord.wahrbot.core.event;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.divinitor.discord.wahrbot.core.WahrBot;
+import com.google.common.eventbus.Subscribe;
+import com.google.common.reflect.TypeToken;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.dv8tion.jda.api.events.channel.GenericChannelEvent;
+import net.dv8tion.jda.api.events.emote.GenericEmoteEvent;
+import net.dv8tion.jda.api.events.guild.GenericGuildEvent;
+import net.dv8tion.jda.api.events.guild.member.update.GenericGuildMemberUpdateEvent;
+import net.dv8tion.jda.api.events.interaction.GenericInteractionCreateEvent;
+import net.dv8tion.jda.api.events.message.GenericMessageEvent;
+import net.dv8tion.jda.api.events.role.GenericRoleEvent;
+import net.dv8tion.jda.api.events.user.GenericUserEvent;
+import net.dv8tion.jda.api.events.user.UserTypingEvent;
+import net.dv8tion.jda.api.events.user.update.GenericUserPresenceEvent;
+import net.dv8tion.jda.api.events.user.update.GenericUserUpdateEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * An event bus that dispatches events on a fixed set of single threaded lanes. Each event is assigned a lane by its
+ * guild, or by its user or channel if it isn't from a guild, so events for the same guild are handled in the order
+ * they were posted while a slow guild can't hold up the others. Events with no guild or user, such as connection
+ * events, all share the first lane.
+ * <p>
+ * Subscribers are found the same way as on Guava's event bus: public or private methods annotated with
+ * {@link Subscribe} taking a single parameter, on the object's class or any of its supertypes. Methods are resolved to
+ * method handles when the object is registered, and the subscribers for each event class are looked up once and
+ * cached until the next registration change.
+ * </p>
+ * <p>
+ * Every subscriber invocation is timed into a timer named after the subscriber's owner, method and event class. A
+ * watchdog samples the stack of any subscriber that runs past the slow threshold, so a stalled module shows up in the
+ * logs and metrics.
+ * </p>
+ * <p>
+ * Lanes are bounded. Events are {@link EventPriority#ESSENTIAL} unless their class is marked otherwise: essential
+ * events make the poster wait for room while their lane is full and are never dropped, while {@link EventPriority#SHEDDABLE}
+ * events such as presence, typing and member updates are dropped once their lane is past its high watermark. An
+ * essential event posted from its own full lane, such as by a subscriber, is dispatched right away on that lane
+ * instead, since waiting would deadlock.
+ * </p>
+ */
+public class ShardedEventBus {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    /**
+     * Lane shard key for events that have no guild or user
+     */
+    public static final long UNSHARDED = 0;
+
+    /**
+     * Owner of subscribers that aren't registered on behalf of a module
+     */
+    public static final String CORE_OWNER = "core";
+
+    public static final long DEFAULT_SLOW_THRESHOLD_MS = 1000;
+
+    private static final long WATCHDOG_PERIOD_MS = 250;
+
+    /**
+     * Default maximum number of events queued on each lane
+     */
+    public static final int DEFAULT_LANE_CAPACITY = 10_000;
+
+    /**
+     * How often posting an essential event to a full lane logs that it's still waiting. The poster keeps waiting until
+     * there's room, so a stalled lane shows up in the logs instead of silently holding up the gateway thread.
+     */
+    public static final long ESSENTIAL_POST_WARN_MS = 5_000;
+
+    private final ThreadPoolExecutor[] lanes;
+    private final Lane[] laneStates;
+    private final EventExceptionHandler exceptionHandler;
+    private final MetricRegistry metrics;
+    private final ScheduledExecutorService watchdog;
+    private volatile long slowThresholdNanos;
+
+    /**
+     * Queue depth past which sheddable events are dropped
+     */
+    private final int highWatermark;
+
+    /**
+     * Priorities set explicitly for event classes and their subclasses
+     */
+    private final Map<Class<?>, EventPriority> priorityOverrides;
+
+    /**
+     * Resolved priority of each event class. Replaced whenever the overrides change.
+     */
+    private volatile Map<Class<?>, EventPriority> priorities;
+
+    private final Meter shedMeter;
+    private final Meter blockedMeter;
+    private final Meter stalledMeter;
+    private final Meter inlineMeter;
+    private final Map<Class<?>, Meter> shedTypeMeters;
+
+    /**
+     * Attributes objects registered without an explicit owner
+     */
+    private volatile Function<Object, String> ownerResolver;
+
+    /**
+     * Registered subscribers by the event type they accept
+     */
+    private final Map<Class<?>, Set<EventSubscriber>> subscribers;
+
+    /**
+     * Every subscriber an event class is delivered to, including subscribers for its supertypes. Replaced whenever
+     * subscribers change, so a lookup racing with a registration can only fill the table that's being discarded.
+     */
+    private volatile Map<Class<?>, EventSubscriber[]> dispatchTable;
+
+    /**
+     * Creates a bus with one lane per available processor.
+     * @param exceptionHandler Handles exceptions thrown by subscribers
+     * @param metrics The registry to register subscriber timers and backlog meters in
+     */
+    public ShardedEventBus(EventExceptionHandler exceptionHandler, MetricRegistry metrics) {
+        this(Runtime.getRuntime().availableProcessors(), exceptionHandler, metrics);
+    }
+
+    /**
+     * Creates a bus with its own metric registry.
+     * @param laneCount The number of lanes
+     * @param exceptionHandler Handles exceptions thrown by subscribers
+     */
+    public ShardedEventBus(int laneCount, EventExceptionHandler exceptionHandler) {
+        this(laneCount, exceptionHandler, new MetricRegistry());
+    }
+
+    /**
+     * Creates a bus.
+     * @param laneCount The number of lanes
+     * @param exceptionHandler Handles exceptions thrown by subscribers
+     * @param metrics The registry to register subscriber timers and backlog meters in
+     */
+    public ShardedEventBus(int laneCount, EventExceptionHandler exceptionHandler, MetricRegistry metrics) {
+        this(laneCount, DEFAULT_LANE_CAPACITY, exceptionHandler, metrics);
+    }
+
+    /**
+     * Creates a bus.
+     * @param laneCount The number of lanes
+     * @param laneCapacity The maximum number of events queued on each lane. Sheddable events are dropped once a lane
+     *                     is three quarters full.
+     * @param exceptionHandler Handles exceptions thrown by subscribers
+     * @param metrics The registry to register subscriber timers and backlog meters in
+     */
+    public ShardedEventBus(int laneCount, int laneCapacity, EventExceptionHandler exceptionHandler,
+                           MetricRegistry metrics) {
+        if (laneCount < 1) {
+            throw new IllegalArgumentException("Lane count must be at least 1");
+        }
+
+        if (laneCapacity < 1) {
+            throw new IllegalArgumentException("Lane capacity must be at least 1");
+        }
+
+        this.exceptionHandler = exceptionHandler;
+        this.metrics = metrics;
+        this.ownerResolver = o -> CORE_OWNER;
+        this.slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_SLOW_THRESHOLD_MS);
+        this.subscribers = new ConcurrentHashMap<>();
+        this.dispatchTable = new ConcurrentHashMap<>();
+        this.highWatermark = Math.max(1, laneCapacity * 3 / 4);
+        this.priorityOverrides = new ConcurrentHashMap<>();
+        this.priorities = new ConcurrentHashMap<>();
+        this.shedMeter = metrics.meter(MetricRegistry.name(WahrBot.class, "eventbus", "shed"));
+        this.blockedMeter = metrics.meter(MetricRegistry.name(WahrBot.class, "eventbus", "blocked"));
+        this.stalledMeter = metrics.meter(MetricRegistry.name(WahrBot.class, "eventbus", "stalled"));
+        this.inlineMeter = metrics.meter(MetricRegistry.name(WahrBot.class, "eventbus", "inline"));
+        this.shedTypeMeters = new ConcurrentHashMap<>();
+        this.laneStates = new Lane[laneCount];
+        this.lanes = new ThreadPoolExecutor[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            Lane state = new Lane();
+            ThreadFactory factory = new ThreadFactoryBuilder()
+                .setNameFormat("event-lane-" + i)
+                .setDaemon(true)
+                .build();
+            this.laneStates[i] = state;
+            this.lanes[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(laneCapacity),
+                r -> {
+                    //  Remember the worker so posts from it can be recognized
+                    Thread thread = factory.newThread(r);
+                    state.thread = thread;
+                    return thread;
+                });
+            //  Essential events may be queued directly when the lane is full, so the worker has to exist already
+            this.lanes[i].prestartAllCoreThreads();
+        }
+
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+            .setNameFormat("event-watchdog")
+            .setDaemon(true)
+            .build());
+        this.watchdog.scheduleAtFixedRate(this::checkSlowSubscribers,
+            WATCHDOG_PERIOD_MS, WATCHDOG_PERIOD_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sets how long a subscriber may run before the watchdog reports it.
+     * @param threshold The threshold
+     * @param unit The unit of threshold
+     */
+    public void setSlowThreshold(long threshold, TimeUnit unit) {
+        if (threshold < 1) {
+            throw new IllegalArgumentException("Threshold must be positive");
+        }
+
+        this.slowThresholdNanos = unit.toNanos(threshold);
+    }
+
+    /**
+     * Sets how objects registered without an explicit owner are attributed, such as by the module that loaded their
+     * class.
+     * @param ownerResolver Gets the owner of an object
+     */
+    public void setOwnerResolver(Function<Object, String> ownerResolver) {
+        this.ownerResolver = ownerResolver;
+    }
+
+    /**
+     * Sets the priority of an event class and its subclasses, overriding the default.
+     * @param eventClass The event class
+     * @param priority The priority
+     */
+    public void setPriority(Class<?> eventClass, EventPriority priority) {
+        this.priorityOverrides.put(eventClass, priority);
+        this.priorities = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Gets the priority of an event class.
+     * @param eventClass The event class
+     * @return The priority set for the class or its closest supertype, or the default priority
+     */
+    public EventPriority getPriority(Class<?> eventClass) {
+        Map<Class<?>, EventPriority> table = this.priorities;
+        EventPriority ret = table.get(eventClass);
+        if (ret == null) {
+            ret = defaultPriority(eventClass);
+            for (Class<?> type : TypeToken.of(eventClass).getTypes().rawTypes()) {
+                EventPriority override = this.priorityOverrides.get(type);
+                if (override != null) {
+                    ret = override;
+                    break;
+                }
+            }
+
+            table.put(eventClass, ret);
+        }
+
+        return ret;
+    }
+
+    /**
+     * Registers every subscriber method on an object, attributed to whoever the owner resolver says it belongs to.
+     * @param object The object to register
+     */
+    public void register(Object object) {
+        this.register(object, this.ownerResolver.apply(object));
+    }
+
+    /**
+     * Registers every subscriber method on an object.
+     * @param object The object to register
+     * @param owner Who the subscribers belong to, such as a module id. Used to name their metrics.
+     */
+    public void register(Object object, String owner) {
+        for (EventSubscriber subscriber : findSubscribers(object, owner)) {
+            this.subscribers.computeIfAbsent(subscriber.getEventType(), k -> new CopyOnWriteArraySet<>())
+                .add(subscriber);
+        }
+
+        this.dispatchTable = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Unregisters every subscriber method on an object.
+     * @param object The object to unregister
+     * @throws IllegalArgumentException If the object wasn't registered
+     */
+    public void unregister(Object object) {
+        boolean removed = false;
+        for (EventSubscriber subscriber : findSubscribers(object, CORE_OWNER)) {
+            Set<EventSubscriber> set = this.subscribers.get(subscriber.getEventType());
+            if (set != null) {
+                removed |= set.remove(subscriber);
+            }
+        }
+
+        if (!removed) {
+            throw new IllegalArgumentException("Object " + object + " is not registered");
+        }
+
+        this.dispatchTable = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Posts an event to its lane. Returns immediately unless the event is essential and the lane is full, in which
+     * case this waits for room, logging a warning every {@link #ESSENTIAL_POST_WARN_MS} while it does. Essential
+     * events are never dropped. Sheddable events are dropped if the lane is past its high watermark. Essential events posted from their own full lane are dispatched
+     * immediately on the calling thread.
+     * @param event The event
+     */
+    public void post(Object event) {
+        int lane = this.laneIndex(shardKey(event));
+        ThreadPoolExecutor executor = this.lanes[lane];
+        Runnable task = () -> this.dispatch(this.laneStates[lane], event);
+        boolean sheddable = this.getPriority(event.getClass()) == EventPriority.SHEDDABLE;
+        if (sheddable && executor.getQueue().size() >= this.highWatermark) {
+            this.shed(event);
+            return;
+        }
+
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            if (executor.isShutdown()) {
+                throw e;
+            }
+
+            if (sheddable) {
+                this.shed(event);
+                return;
+            }
+
+            Lane state = this.laneStates[lane];
+            if (Thread.currentThread() == state.thread) {
+                //  Waiting for our own lane to drain would never end
+                this.inlineMeter.mark();
+                this.dispatch(state, event);
+                return;
+            }
+
+            this.blockedMeter.mark();
+            long waitedMs = 0;
+            try {
+                while (!executor.getQueue().offer(task, ESSENTIAL_POST_WARN_MS, TimeUnit.MILLISECONDS)) {
+                    if (executor.isShutdown()) {
+                        throw new RejectedExecutionException("Lane " + lane + " shut down while waiting for room");
+                    }
+
+                    waitedMs += ESSENTIAL_POST_WARN_MS;
+                    this.stalledMeter.mark();
+                    LOGGER.warn("Still waiting to post {} after lane {} has been full for {} ms",
+                        event.getClass().getName(), lane, waitedMs);
+                }
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("Interrupted while waiting for room on the lane", ie);
+            }
+        }
+    }
+
+    private void shed(Object event) {
+        this.shedMeter.mark();
+        Meter meter = this.shedTypeMeters.get(event.getClass());
+        if (meter == null) {
+            meter = this.shedTypeMeters.computeIfAbsent(event.getClass(), cls ->
+                this.metrics.meter(MetricRegistry.name(WahrBot.class, "eventbus", "shed", cls.getName())));
+        }
+
+        meter.mark();
+    }
+
+    /**
+     * Checks whether any subscriber would receive an event of the given class. The answer is cached with the dispatch
+     * table, so this is cheap enough to check before posting every event.
+     * @param eventClass The event class
+     * @return Whether there's a subscriber for the event class or any of its supertypes
+     */
+    public boolean hasSubscribers(Class<?> eventClass) {
+        return this.subscribersFor(eventClass).length != 0;
+    }
+
+    /**
+     * Stops every lane. Events that have already been posted are still delivered.
+     */
+    public void shutdown() {
+        for (ThreadPoolExecutor lane : this.lanes) {
+            lane.shutdown();
+        }
+
+        this.watchdog.shutdown();
+    }
+
+    /**
+     * Gets the number of lanes.
+     * @return The number of lanes
+     */
+    public int getLaneCount() {
+        return this.lanes.length;
+    }
+
+    /**
+     * Gets the number of events waiting to be dispatched, across all lanes.
+     * @return The number of queued events
+     */
+    public int getQueuedCount() {
+        int ret = 0;
+        for (ThreadPoolExecutor lane : this.lanes) {
+            ret += lane.getQueue().size();
+        }
+
+        return ret;
+    }
+
+    /**
+     * Gets the number of events waiting on the most backed up lane.
+     * @return The largest lane queue depth
+     */
+    public int getMaxQueuedCount() {
+        int ret = 0;
+        for (ThreadPoolExecutor lane : this.lanes) {
+            ret = Math.max(ret, lane.getQueue().size());
+        }
+
+        return ret;
+    }
+
+    /**
+     * Gets the number of lanes currently dispatching an event.
+     * @return The number of busy lanes
+     */
+    public int getActiveCount() {
+        int ret = 0;
+        for (ThreadPoolExecutor lane : this.lanes) {
+            ret += lane.getActiveCount();
+        }
+
+        return ret;
+    }
+
+    private void dispatch(Lane lane, Object event) {
+        //  Events dispatched inline by a subscriber nest inside that subscriber's invocation
+        Invocation outer = lane.current;
+        for (EventSubscriber subscriber : this.subscribersFor(event.getClass())) {
+            long start = System.nanoTime();
+            lane.current = new Invocation(subscriber, event, start);
+            try {
+                subscriber.invoke(event);
+            } catch (Throwable t) {
+                this.exceptionHandler.handleException(t, event, subscriber.getTarget(), subscriber.getMethod());
+            } finally {
+                lane.current = outer;
+                subscriber.timer(event.getClass(), this.metrics)
+                    .update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    /**
+     * Run periodically by the watchdog. Reports each subscriber invocation that has run past the threshold once.
+     */
+    private void checkSlowSubscribers() {
+        long now = System.nanoTime();
+        for (Lane lane : this.laneStates) {
+            Invocation invocation = lane.current;
+            if (invocation == null || invocation.reported || now - invocation.startedAt < this.slowThresholdNanos) {
+                continue;
+            }
+
+            invocation.reported = true;
+            EventSubscriber subscriber = invocation.subscriber;
+            this.metrics.meter(MetricRegistry.name(WahrBot.class, "eventbus", "slow", subscriber.getOwner()))
+                .mark();
+
+            Throwable sample = new Throwable("Stack sample of " + invocation.thread.getName());
+            sample.setStackTrace(invocation.thread.getStackTrace());
+            LOGGER.warn("Subscriber {} from {} has been handling {} for {} ms",
+                subscriber.describe(),
+                subscriber.getOwner(),
+                invocation.event.getClass().getName(),
+                TimeUnit.NANOSECONDS.toMillis(now - invocation.startedAt),
+                sample);
+        }
+    }
+
+    private EventSubscriber[] subscribersFor(Class<?> eventClass) {
+        Map<Class<?>, EventSubscriber[]> table = this.dispatchTable;
+        EventSubscriber[] ret = table.get(eventClass);
+        if (ret == null) {
+            List<EventSubscriber> list = new ArrayList<>();
+            for (Class<?> type : TypeToken.of(eventClass).getTypes().rawTypes()) {
+                Set<EventSubscriber> set = this.subscribers.get(type);
+                if (set != null) {
+                    list.addAll(set);
+                }
+            }
+
+            ret = list.toArray(new EventSubscriber[list.size()]);
+            table.put(eventClass, ret);
+        }
+
+        return ret;
+    }
+
+    private int laneIndex(long key) {
+        int hash = (int) (key ^ (key >>> 32)) * 0x9E3779B9;
+        return (hash >>> 1) % this.lanes.length;
+    }
+
+    /**
+     * Gets the key used to pick an event's lane.
+     * @param event The event
+     * @return The ID of the event's guild, or of its user or channel if it isn't from a guild, or {@link #UNSHARDED}
+     */
+    public static long shardKey(Object event) {
+        if (event instanceof GenericGuildEvent) {
+            return ((GenericGuildEvent) event).getGuild().getIdLong();
+        } else if (event instanceof GenericMessageEvent) {
+            GenericMessageEvent e = (GenericMessageEvent) event;
+            //  Private channels are per user
+            return e.isFromGuild() ? e.getGuild().getIdLong() : e.getChannel().getIdLong();
+        } else if (event instanceof GenericRoleEvent) {
+            return ((GenericRoleEvent) event).getGuild().getIdLong();
+        } else if (event instanceof GenericEmoteEvent) {
+            return ((GenericEmoteEvent) event).getGuild().getIdLong();
+        } else if (event instanceof GenericChannelEvent) {
+            GenericChannelEvent e = (GenericChannelEvent) event;
+            return e.isFromGuild() ? e.getGuild().getIdLong() : e.getChannel().getIdLong();
+        } else if (event instanceof GenericInteractionCreateEvent) {
+            GenericInteractionCreateEvent e = (GenericInteractionCreateEvent) event;
+            return e.getGuild() != null ? e.getGuild().getIdLong() : e.getUser().getIdLong();
+        } else if (event instanceof GenericUserEvent) {
+            return ((GenericUserEvent) event).getUser().getIdLong();
+        }
+
+        return UNSHARDED;
+    }
+
+    /**
+     * Gets the priority of an event class that has no override. High volume events that go stale quickly are
+     * sheddable, everything else is essential.
+     * @param eventClass The event class
+     * @return The default priority
+     */
+    public static EventPriority defaultPriority(Class<?> eventClass) {
+        if (GenericUserPresenceEvent.class.isAssignableFrom(eventClass)
+            || UserTypingEvent.class.isAssignableFrom(eventClass)
+            || GenericUserUpdateEvent.class.isAssignableFrom(eventClass)
+            || GenericGuildMemberUpdateEvent.class.isAssignableFrom(eventClass)) {
+            return EventPriority.SHEDDABLE;
+        }
+
+        return EventPriority.ESSENTIAL;
+    }
+
+    private static Collection<EventSubscriber> findSubscribers(Object object, String owner) {
+        //  Methods are keyed by signature so overrides of an annotated method only count once
+        Map<List<Object>, EventSubscriber> ret = new LinkedHashMap<>();
+        for (Class<?> type : TypeToken.of(object.getClass()).getTypes().rawTypes()) {
+            for (Method method : type.getDeclaredMethods()) {
+                if (!method.isAnnotationPresent(Subscribe.class) || method.isSynthetic()) {
+                    continue;
+                }
+
+                if (method.getParameterCount() != 1) {
+                    throw new IllegalArgumentException("Subscriber method " + method +
+                        " must have exactly one parameter");
+                }
+
+                List<Object> signature = Arrays.asList(method.getName(), method.getParameterTypes()[0]);
+                if (!ret.containsKey(signature)) {
+                    try {
+                        ret.put(signature, new EventSubscriber(object, method, owner));
+                    } catch (IllegalAccessException e) {
+                        throw new IllegalArgumentException("Unable to access subscriber method " + method, e);
+                    }
+                }
+            }
+        }
+
+        return ret.values();
+    }
+
+    private static class Lane {
+        /**
+         * The lane's worker thread
+         */
+        private volatile Thread thread;
+
+        /**
+         * The subscriber invocation in progress on this lane, if any
+         */
+        private volatile Invocation current;
+    }
+
+    private static class Invocation {
+        private final EventSubscriber subscriber;
+        private final Object event;
+        private final long startedAt;
+        private final Thread thread;
+        /**
+         * Only touched by the watchdog
+         */
+        private boolean reported;
+
+        Invocation(EventSubscriber subscriber, Object event, long startedAt) {
+            this.subscriber = subscriber;
+            this.event = event;
+            this.startedAt = startedAt;
+            this.thread = Thread.currentThread();
+        }
+    }
+}
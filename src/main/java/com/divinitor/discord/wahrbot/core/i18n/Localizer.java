@@ -96,6 +96,14 @@ public interface Localizer {
      */
     void unregisterBundle(String bundleKey);
 
+    /**
+     * Gets the current bundle revision. The revision changes whenever a bundle is registered or unregistered, so
+     * anything derived from localized strings can compare revisions to detect that it is stale.
+     *
+     * @return The current bundle revision
+     */
+    long getBundleRevision();
+
     /**
      * Register the provided plurality rules to this Localizer
      * @param rules A map of plurality rules. key: name, value: LocalizerPluralRule
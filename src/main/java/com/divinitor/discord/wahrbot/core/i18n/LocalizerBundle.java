@@ -12,4 +12,14 @@ public interface LocalizerBundle {
     default Stream<String> keys(Locale locale) {
         return Stream.empty();
     }
+
+    /**
+     * Whether or not {@link #keys(Locale)} returns every key this bundle contains for a locale. Enumerable bundles are
+     * indexed by the localizer instead of being probed on every lookup.
+     *
+     * @return True if the bundle's keys can be enumerated, false otherwise
+     */
+    default boolean isEnumerable() {
+        return false;
+    }
 }
@@ -1,23 +1,42 @@
 package com.divinitor.discord.wahrbot.core.i18n;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
 import java.util.*;
-import java.util.function.Supplier;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class LocalizerImpl implements Localizer {
 
+    /**
+     * Maximum number of compiled templates, including cached misses, kept for each locale
+     */
+    private static final long MAX_TEMPLATES_PER_LOCALE = 10_000;
+
     private final int maxRepeatCount;
-    private Locale defaultLocale;
-    private Map<String, LocalizerBundle> bundles;
-    private Map<String, LocalizerPluralRule> rules;
+    private final Map<String, LocalizerPluralRule> rules;
+    private final AtomicLong bundleRevision;
+    /**
+     * Lock serializing bundle registration. Readers never take it and use {@link #snapshot} instead.
+     */
+    private final Object bundleLock;
+    /**
+     * The current set of bundles along with everything derived from them. Replaced wholesale whenever the registered
+     * bundles change.
+     */
+    private volatile Snapshot snapshot;
 
     public LocalizerImpl() {
         this(Locale.getDefault());
     }
 
     public LocalizerImpl(Locale defaultLocale) {
-        this.defaultLocale = defaultLocale;
-        this.bundles = new HashMap<>();
-        this.rules = new HashMap<>();
+        this.rules = new ConcurrentHashMap<>();
+        this.bundleRevision = new AtomicLong();
+        this.bundleLock = new Object();
+        this.snapshot = new Snapshot(Collections.emptyMap(), defaultLocale);
         this.maxRepeatCount = 10;
         this.registerPluralityRules(Localizer.defaultPluralityRules());
     }
@@ -28,485 +47,336 @@ public class LocalizerImpl implements Localizer {
             return key.substring(PREFIX_DO_NOT_RESOLVE.length());
         }
 
-        return doLocalize(0, key, locale, args);
+        StringBuilder builder = new StringBuilder();
+        this.render(builder, key, locale, args, 0);
+        return builder.toString();
     }
 
-    private String doLocalize(int depth, String key, Locale locale, Object... args) {
-        //  Only strip escapes at depth = 0!!!
-//  Formatting is done by repeatedly resolving curly brace tokens and then square bracket tokens repeatedly
-        //  until no more of either remain in the resultant string
-        //  There is a maximum repeat limit to prevent infinite loops or unbounded string
-        //  growth, governed by the system property co.phoenixlab.localizer.fmt.limits.repeat
-
-        //  Number of times we've passed over the entire string
-        int repeatCount = 0;
-        //  Our current working string
-        String working = this.lookup(key, locale);
-        if (working == null) {
-            return Localizer.NO_SUCH_KEY + key;
-        }
+    /**
+     * Renders the given key into the builder, compiling and caching its template if necessary.
+     * @param builder The builder to render into
+     * @param key The key to render
+     * @param locale The locale to render in
+     * @param args The localization arguments
+     * @param depth The current subkey reference depth. References nested deeper than the repeat limit are rendered as
+     *              bad references to prevent infinite loops.
+     */
+    void render(StringBuilder builder, String key, Locale locale, Object[] args, int depth) {
+        this.render(builder, key, locale, args, depth, true);
+    }
 
-        //  StringBuilder for building the resultant for each pass
-        StringBuilder builder = new StringBuilder();
-        //  Whether or not any substitution was made
-        boolean substitution = true;
-        while (repeatCount < maxRepeatCount && substitution) {
-            try {
-                builder.setLength(0);
-                //  Resolve curly brace tokens first
-                char[] chars = working.toCharArray();
-                substitution = processCurlyTokens(builder, chars, args);
-
-                //  Now resolve square bracket tags
-                //  Reset
-                int len = builder.length();
-                if (len == chars.length) {
-                    builder.getChars(0, len, chars, 0);
-                } else {
-                    chars = builder.toString().toCharArray();
-                }
-                builder.setLength(0);
-                substitution |= processSquareBracketTokens(depth, builder, chars, key, locale, args);
-                //  Prep for next iteration
-                working = builder.toString();
-                repeatCount++;
-            } catch (IllegalArgumentException e) {
-                return Localizer.BAD_FORMAT_STRING + e.getMessage();
-            }
+    /**
+     * Renders the given key into the builder, compiling and caching its template if necessary.
+     * @param builder The builder to render into
+     * @param key The key to render
+     * @param locale The locale to render in
+     * @param args The localization arguments
+     * @param depth The current subkey reference depth
+     * @param cacheMiss Whether to cache the key if it doesn't exist. Keys built from arguments at render time may come
+     *                  from user input, so misses for those aren't cached.
+     */
+    void render(StringBuilder builder, String key, Locale locale, Object[] args, int depth, boolean cacheMiss) {
+        if (depth > this.maxRepeatCount) {
+            builder.append(Localizer.BAD_REFERENCE).append(key);
+            return;
         }
-        //  Unescape escaped strings
-        if (depth == 0) {
-            builder.setLength(0);
-            char[] chars = working.toCharArray();
-            boolean escaped = false;
-            for (char c : chars) {
-                if (escaped) {
-                    builder.append(c);
-                    escaped = false;
-                } else {
-                    if (c == '\\') {
-                        escaped = true;
-                    } else {
-                        builder.append(c);
-                    }
-                }
-            }
+
+        LocalizerTemplate template = this.getTemplate(key, locale, cacheMiss);
+        if (template == LocalizerTemplate.MISSING) {
+            builder.append(Localizer.NO_SUCH_KEY).append(key);
+            return;
         }
-        return builder.toString();
+
+        template.render(this, builder, locale, args, depth);
     }
 
+    private LocalizerTemplate getTemplate(String key, Locale locale, boolean cacheMiss) {
+        //  Templates are cached on the snapshot they were compiled from, so a template compiled against bundles that
+        //  have since been replaced can never leak into the current cache
+        Snapshot snapshot = this.snapshot;
+        Cache<String, LocalizerTemplate> localeTemplates = snapshot.templates.get(locale);
+        if (localeTemplates == null) {
+            localeTemplates = snapshot.templates.computeIfAbsent(locale, l -> CacheBuilder.newBuilder()
+                .maximumSize(MAX_TEMPLATES_PER_LOCALE)
+                .build());
+        }
 
-    private boolean processCurlyTokens(StringBuilder builder, char[] chars, Object[] args) {
-        boolean hasSubstitutionBeenMade = false;
-        StringBuilder tokenBuilder = new StringBuilder();
-        boolean isNextCharEscaped = false;
-        boolean isInTag = false;
-        int braceDepth = 0;
-        for (char c : chars) {
-            if (isNextCharEscaped) {
-                if (isInTag) {
-                    tokenBuilder.append(c);
-                } else {
-                    builder.append(c);
+        LocalizerTemplate template = localeTemplates.getIfPresent(key);
+        if (template == null) {
+            String raw = snapshot.lookup(key, locale);
+            if (raw == null) {
+                if (!cacheMiss) {
+                    return LocalizerTemplate.MISSING;
                 }
-                isNextCharEscaped = false;
+
+                template = LocalizerTemplate.MISSING;
             } else {
-                switch (c) {
-                    case '\\':
-                        //  Escape next character
-                        isNextCharEscaped = true;
-                        //  Add since we unescape characters on final pass
-                        if (isInTag) {
-                            tokenBuilder.append(c);
-                        } else {
-                            builder.append(c);
-                        }
-                        break;
-                    case '{':
-                        //  Start curly brace tag
-                        isInTag = true;
-                        braceDepth++;
-                        //  Reset our token StringBuilder
-                        tokenBuilder.setLength(0);
-                        break;
-                    case '}':
-                        if (isInTag) {
-                            braceDepth--;
-                            if (braceDepth == 0) {
-                                builder.append(processCurlyBraceToken(tokenBuilder.toString(), args));
-                                isInTag = false;
-                                hasSubstitutionBeenMade = true;
-                                break;
-                            }
-                            //  FALL THROUGH if not outmoster layer of tag
-                        }
-                        //  FALL THROUGH if not in curly tag
-                    default:
-                        if (isInTag) {
-                            tokenBuilder.append(c);
-                        } else {
-                            builder.append(c);
-                        }
-                }
+                template = LocalizerTemplate.compile(key, raw);
             }
+
+            localeTemplates.put(key, template);
         }
-        if (isNextCharEscaped) {
-            //  Backslash at end of string, not fatal so we just insert it
-            builder.append('\\');
+
+        return template;
+    }
+
+    /**
+     * Gets a plural rule by its already uppercased name.
+     * @param name The uppercased rule name
+     * @return The rule, or null if no such rule exists
+     */
+    LocalizerPluralRule getPluralRule(String name) {
+        return this.rules.get(name);
+    }
+
+    @Override
+    public Locale getDefaultLocale() {
+        return this.snapshot.defaultLocale;
+    }
+
+    @Override
+    public boolean contains(String key) {
+        Snapshot snapshot = this.snapshot;
+        return snapshot.contains(key, snapshot.defaultLocale);
+    }
+
+    @Override
+    public void setDefaultLocale(Locale locale) {
+        synchronized (this.bundleLock) {
+            //  Fallback chains and everything compiled from them depend on the default locale
+            this.snapshot = new Snapshot(this.snapshot.bundles, locale);
+            //  Anything cached against the bundle revision resolved strings through the old chains too
+            this.bundleRevision.incrementAndGet();
         }
-        if (braceDepth > 0) {
-            //  There's an unclosed tag somewhere
-            throw new IllegalArgumentException();
+    }
+
+    @Override
+    public void registerBundle(String bundleKey, LocalizerBundle bundle) {
+        synchronized (this.bundleLock) {
+            Map<String, LocalizerBundle> bundles = new LinkedHashMap<>(this.snapshot.bundles);
+            bundles.put(bundleKey, bundle);
+            this.snapshot = new Snapshot(bundles, this.snapshot.defaultLocale);
+            this.bundleRevision.incrementAndGet();
         }
-        return hasSubstitutionBeenMade;
     }
 
-    private boolean processSquareBracketTokens(int depth, StringBuilder builder, char[] chars, String key, Locale locale, Object... args) {
-        boolean hasSubstitutionBeenMade = false;
-        StringBuilder tokenBuilder = new StringBuilder();
-        boolean isNextCharEscaped = false;
-        boolean isInTag = false;
-        for (char c : chars) {
-            if (isNextCharEscaped) {
-                if (isInTag) {
-                    tokenBuilder.append(c);
-                } else {
-                    builder.append(c);
-                }
-                isNextCharEscaped = false;
-            } else {
-                switch (c) {
-                    case '\\':
-                        //  Escape next character
-                        isNextCharEscaped = true;
-                        //  Add since we unescape characters on final pass
-                        if (isInTag) {
-                            tokenBuilder.append(c);
-                        } else {
-                            builder.append(c);
-                        }
-                        break;
-                    case '[':
-                        //  Start square bracket tag
-                        isInTag = true;
-                        //  Reset our token StringBuilder
-                        tokenBuilder.setLength(0);
-                        break;
-                    case ']':
-                        if (isInTag) {
-                            builder.append(resolveSubkey(depth, key, tokenBuilder.toString(), locale, args));
-                            isInTag = false;
-                            hasSubstitutionBeenMade = true;
-                            break;
-                        }
-                        //  FALL THROUGH if not in square tag
-                    default:
-                        if (isInTag) {
-                            tokenBuilder.append(c);
-                        } else {
-                            builder.append(c);
-                        }
-                }
+    @Override
+    public void unregisterBundle(String bundleKey) {
+        synchronized (this.bundleLock) {
+            Map<String, LocalizerBundle> bundles = new LinkedHashMap<>(this.snapshot.bundles);
+            if (bundles.remove(bundleKey) == null) {
+                return;
             }
+
+            this.snapshot = new Snapshot(bundles, this.snapshot.defaultLocale);
+            this.bundleRevision.incrementAndGet();
         }
-        if (isNextCharEscaped) {
-            //  Backslash at end of string, not fatal so we just insert it
-            builder.append('\\');
+    }
+
+    @Override
+    public long getBundleRevision() {
+        return this.bundleRevision.get();
+    }
+
+    @Override
+    public void registerPluralityRules(Map<String, LocalizerPluralRule> rules) {
+        rules.forEach((k, v) -> this.rules.put(k.toUpperCase(), v));
+    }
+
+    @Override
+    public Map<String, LocalizerPluralRule> getPluralRules() {
+        return this.rules;
+    }
+
+    /**
+     * Builds the fallback chain for a locale: the locale itself and its parents, then the default locale and its
+     * parents, then the root locale. For example, with a default of en: de_AT, de, en, ROOT.
+     * @param locale The requested locale
+     * @param defaultLocale The default locale
+     * @return The locales to try, in order
+     */
+    static Locale[] buildFallbackChain(Locale locale, Locale defaultLocale) {
+        Set<Locale> chain = new LinkedHashSet<>();
+        addWithParents(chain, locale);
+        addWithParents(chain, defaultLocale);
+        chain.add(Locale.ROOT);
+        return chain.toArray(new Locale[chain.size()]);
+    }
+
+    private static void addWithParents(Set<Locale> chain, Locale locale) {
+        chain.add(locale);
+        if (!locale.getVariant().isEmpty()) {
+            chain.add(new Locale(locale.getLanguage(), locale.getCountry()));
         }
-        if (isInTag) {
-            //  There's an unclosed tag somewhere
-            throw new IllegalArgumentException();
+
+        if (!locale.getCountry().isEmpty()) {
+            chain.add(new Locale(locale.getLanguage()));
         }
-        return hasSubstitutionBeenMade;
     }
 
-    @SuppressWarnings("unchecked")
-    private String processCurlyBraceToken(String tokenContents, Object[] args) {
-        /*
-        Format:
-        ARG_NUMBER|FORMAT_DESCRIPTOR
-        ARG_NUMBER: The argument index to use
-        FORMAT_DESCRIPTOR: The way the argument should be formatted when inserted into the string
-        FORMAT_DESCRIPTOR format:
-        %FORMAT_STRING: Standard String.format() format string
-        #date[|DATE_FORMAT_STRING]: Formats the argument as a date, using the locale default short format if
-            DATE_FORMAT_STRING is not provided
-        #time[|TIME_FORMAT_STRING]: Formats the argument as a time, using the locale default short format if
-            TIME_FORMAT_STRING is not provided
-        #datetime[|DATE_TIME_FORMAT_STRING]: Formats the argument as a date and time, using the default short
-            format if DATE_TIME_FORMAT_STRING is not provided
-        (PLURALITY_ID1,PLURALITY_ID2,...;TEXT)[,more...]: A list of plurality matchers, using the given argument as the number.
-        Plurality rules are evaluated left to right; whichever rule matches first will be used
+    /**
+     * Immutable view of the registered bundles and the default locale. Bundles that can enumerate their keys are
+     * merged into a per locale key to bundle index, built lazily on first use of each locale, so that lookups are a
+     * single hash probe. Bundles that can't enumerate their keys are probed in registration order, but only those
+     * registered before the indexed bundle, so earlier registrations win regardless of which kind of bundle they are.
+     * Each locale in a requested locale's fallback chain is tried in turn.
+     */
+    private static final class Snapshot {
+
+        private final Map<String, LocalizerBundle> bundles;
+        private final Locale defaultLocale;
+        private final ConcurrentMap<Locale, Locale[]> fallbackChains;
+        private final LocalizerBundle[] enumerable;
+        /**
+         * Registration order of each enumerable bundle
+         */
+        private final int[] enumerableOrdinals;
+        private final LocalizerBundle[] opaque;
+        /**
+         * Registration order of each opaque bundle
          */
-        String[] splits = tokenContents.split("\\|", 2);
+        private final int[] opaqueOrdinals;
+        private final ConcurrentMap<Locale, Map<String, IndexEntry>> index;
+        private final ConcurrentMap<Locale, Cache<String, LocalizerTemplate>> templates;
+
+        Snapshot(Map<String, LocalizerBundle> bundles, Locale defaultLocale) {
+            this.bundles = Collections.unmodifiableMap(bundles);
+            this.defaultLocale = defaultLocale;
+            this.fallbackChains = new ConcurrentHashMap<>();
+            List<LocalizerBundle> enumerable = new ArrayList<>();
+            List<LocalizerBundle> opaque = new ArrayList<>();
+            int[] enumerableOrdinals = new int[bundles.size()];
+            int[] opaqueOrdinals = new int[bundles.size()];
+            int ordinal = 0;
+            for (LocalizerBundle bundle : bundles.values()) {
+                if (bundle.isEnumerable()) {
+                    enumerableOrdinals[enumerable.size()] = ordinal;
+                    enumerable.add(bundle);
+                } else {
+                    opaqueOrdinals[opaque.size()] = ordinal;
+                    opaque.add(bundle);
+                }
 
-        final Object arg;
-        if (splits[0].startsWith("%")) {
-            String namedArgName = splits[0].substring(1, splits[0].length() - 1);
-            if (args.length == 0) {
-                return Localizer.BAD_NAMED_ARG + splits[0] + ":NOARGS";
+                ++ordinal;
             }
 
-            Object last = args[args.length - 1];
-            if (last instanceof Map) {
-                Map<String, Object> named = (Map<String, Object>) last;
-                Object val = named.get(namedArgName);
-                if (val == null) {
-                    return Localizer.BAD_NAMED_ARG + splits[0] + ":VALNULL";
-                }
+            this.enumerable = enumerable.toArray(new LocalizerBundle[enumerable.size()]);
+            this.enumerableOrdinals = Arrays.copyOf(enumerableOrdinals, enumerable.size());
+            this.opaque = opaque.toArray(new LocalizerBundle[opaque.size()]);
+            this.opaqueOrdinals = Arrays.copyOf(opaqueOrdinals, opaque.size());
+            this.index = new ConcurrentHashMap<>();
+            this.templates = new ConcurrentHashMap<>();
+        }
 
-                if (val instanceof Supplier) {
-                    arg = ((Supplier) val).get();
-                } else {
-                    arg = val;
+        String lookup(String key, Locale locale) {
+            for (Locale candidate : this.getFallbackChain(locale)) {
+                String s = this.lookupExact(key, candidate);
+                if (s != null) {
+                    return s;
                 }
-            } else {
-                return Localizer.BAD_NAMED_ARG + splits[0] + ":NOTMAP";
             }
-        } else {
 
-            int argId;
-            try {
-                argId = Integer.parseInt(splits[0]);
-                if (argId < 0 || argId >= args.length) {
-                    return Localizer.BAD_ARG_INDEX + splits[0];
+            return null;
+        }
+
+        boolean contains(String key, Locale locale) {
+            for (Locale candidate : this.getFallbackChain(locale)) {
+                if (this.containsExact(key, candidate)) {
+                    return true;
                 }
-            } catch (NumberFormatException e) {
-                return Localizer.BAD_ARG_INDEX + splits[0];
             }
-            arg = args[argId];
-        }
 
-        if (splits.length == 1) {
-            return String.valueOf(arg);
+            return false;
         }
 
-        String formatDescriptor = splits[1];
-        char first = formatDescriptor.charAt(0);
-        switch (first) {
-            case '%':
-                return handleStringFormat(formatDescriptor, arg);
-            case '#':
-                return handleDateTimeFormat(formatDescriptor, arg);
-            case '(':
-                return handlePluralityRules(formatDescriptor, arg);
-            default:
-                return Localizer.BAD_ARG + formatDescriptor;
-        }
-    }
+        private Locale[] getFallbackChain(Locale locale) {
+            Locale[] chain = this.fallbackChains.get(locale);
+            if (chain == null) {
+                chain = buildFallbackChain(locale, this.defaultLocale);
+                this.fallbackChains.putIfAbsent(locale, chain);
+            }
 
-    private String handleStringFormat(String fmt, Object arg) {
-        try {
-            return String.format(fmt, arg);
-        } catch (IllegalFormatException e) {
-            return Localizer.BAD_FORMAT_STRING + fmt;
+            return chain;
         }
-    }
-
-    private String handleDateTimeFormat(String fmt, Object arg) {
-        return null;
-    }
 
-    private String handlePluralityRules(String rules, Object arg) {
-        //  To make things efficient we'll walk forward through the rules string
-        //  We take in the plurality ID first, see if it matches. If it does match, we'll then
-        //  return the associated text body
-        //  If it does not match, we skip ahead to the next rule and repeat
-        //  If no rules match, then we return NO_MATCHING_PLURAL
-        //  Example rule: (ONE;a potato),(ZERO,MANY;potatoes)
-        //  FooBar rule (assuming defined matchers): (FOUR+FIVE;foobar),(FOUR;foo),(FIVE;bar)
-        //  Rules can be ANDed together with + to only match if BOTH rules match.
-        //  TODO
-
-        //  First off, make sure what we have IS a number
-        if (!(arg instanceof Number)) {
-            return BAD_ARG + arg.getClass();
-        }
-        Number number = (Number) arg;
-        char[] chars = rules.toCharArray();
-        StringBuilder builder = new StringBuilder();
-        int startIndex = 0;
-        do {
-            builder.setLength(0);
-            //  Read in block
-            int newIndex = readInPluralityRule(chars, startIndex, builder);
-            if (newIndex == startIndex) {
-                break;
-            }
-            startIndex = newIndex;
-            String rule = builder.toString();
-            if (rule.isEmpty()) {
-                continue;
-            }
-            //  Split at the semicolon, but only the first one we run into
-            //  We don't perform lookaround to exclude escaped semicolons since matcher names cannot include semicolons
-            String[] split = rule.split(";", 2);
-            if (split.length != 2) {
-                //  Bad rule - rules must have at least one matcher and text
-                continue;
-            }
-            //  Don't bother with commas either
-            String[] matchers = split[0].split(",");
-            boolean match = false;
-            for (String matcher : matchers) {
-                LocalizerPluralRule pluralRule = null;
-                //  Fast path
-                if (!matcher.contains("+")) {
-                    pluralRule = getRule(matcher);
-                } else {
-                    String[] sub = matcher.split("\\+");
-                    pluralRule = LocalizerPluralRule.TRUE();
-                    for (String s : sub) {
-                        LocalizerPluralRule r = getRule(s);
-                        if (r != null) {
-                            pluralRule = pluralRule.and(r);
-                        }
+        private String lookupExact(String key, Locale locale) {
+            IndexEntry indexed = this.getIndex(locale).get(key);
+            int i = 0;
+            if (indexed != null) {
+                //  Opaque bundles registered before the indexed one take precedence
+                for (; i < this.opaque.length && this.opaqueOrdinals[i] < indexed.ordinal; ++i) {
+                    String s = this.opaque[i].get(key, locale);
+                    if (s != null) {
+                        return s;
                     }
                 }
-                if (pluralRule != null) {
-                    match = pluralRule.test(number);
-                    if (match) {
-                        break;
-                    }
+
+                String s = indexed.bundle.get(key, locale);
+                if (s != null) {
+                    return s;
                 }
             }
-            if (match) {
-                return split[1];
-            }
-        } while (startIndex < chars.length);
-        return Localizer.NO_MATCHING_PLURAL + number.toString();
-    }
-
-    private LocalizerPluralRule getRule(String name) {
-        return rules.get(name.toUpperCase());
-    }
 
-    private int readInPluralityRule(char[] chars, int index, StringBuilder builder) {
-        //  Find opening paren (non escaped)
-        boolean escaped = false;
-        boolean foundOpen = false;
-        for (; index < chars.length; index++) {
-            char c = chars[index];
-            if (escaped) {
-                escaped = false;
-                continue;
-            }
-            if (c == '\\') {
-                escaped = true;
-                continue;
-            }
-            if (c == '(') {
-                foundOpen = true;
-                index++;    //  Skip the paren for inclusion
-                break;
+            for (; i < this.opaque.length; ++i) {
+                String s = this.opaque[i].get(key, locale);
+                if (s != null) {
+                    return s;
+                }
             }
+
+            return null;
         }
-        if (!foundOpen) {
-            return index;
-        }
-        int startPos = index;
-        if (startPos >= chars.length) {
-            return index;
-        }
-        //  Find closing paren
-        escaped = false;
-        for(; index < chars.length; index++) {
-            char c = chars[index];
-            if (escaped)  {
-                escaped = false;
-                builder.append(c);
-                continue;
-            }
-            if (c == '\\') {
-                escaped = true;
-                //  Still need to append
-                builder.append(c);
-                continue;
-            }
-            if (c == ')') {
-                break;
+
+        private boolean containsExact(String key, Locale locale) {
+            if (this.getIndex(locale).containsKey(key)) {
+                return true;
             }
-            builder.append(c);
-        }
-        return index;
-    }
 
-    private String resolveSubkey(int depth, String baseKey, String tokenContents, Locale locale, Object... args) {
-        if (tokenContents.length() == 0) {
-            return Localizer.NO_SUCH_KEY + tokenContents;
-        }
-        boolean isRelative = tokenContents.charAt(0) == '.';    //  tokenContents.startsWith(".")
-        String key;
-        if (isRelative) {
-            if (tokenContents.equals("..")) {
-                //  go up one level
-                int last = baseKey.lastIndexOf('.');
-                if (last == -1) {
-                    return Localizer.BAD_REFERENCE + baseKey + tokenContents;
+            for (LocalizerBundle bundle : this.opaque) {
+                if (bundle.contains(key, locale)) {
+                    return true;
                 }
-                key = baseKey.substring(0, last);
-            } else {
-                key = baseKey + tokenContents;
             }
-        } else {
-            key = tokenContents;
-        }
-        String ret = doLocalize(depth + 1, key, locale, args);
-        if (ret != null) {
-            return ret;
-        }
-        return Localizer.NO_SUCH_KEY + key;
-    }
 
-    private String lookup(String key, Locale locale) {
-        for (LocalizerBundle bundle : this.bundles.values()) {
-            String s = bundle.get(key, locale);
-            if (s != null) {
-                return s;
-            }
+            return false;
         }
-        return null;
-    }
 
+        private Map<String, IndexEntry> getIndex(Locale locale) {
+            if (this.enumerable.length == 0) {
+                return Collections.emptyMap();
+            }
 
-    @Override
-    public Locale getDefaultLocale() {
-        return this.defaultLocale;
-    }
-
-    @Override
-    public boolean contains(String key) {
-        for (LocalizerBundle bundle : bundles.values()) {
-            if (bundle.contains(key, this.defaultLocale)) {
-                return true;
+            Map<String, IndexEntry> ret = this.index.get(locale);
+            if (ret == null) {
+                ret = this.index.computeIfAbsent(locale, this::buildIndex);
             }
-        }
 
-        return false;
-    }
+            return ret;
+        }
 
-    @Override
-    public void setDefaultLocale(Locale locale) {
-        this.defaultLocale = locale;
-    }
+        private Map<String, IndexEntry> buildIndex(Locale locale) {
+            Map<String, IndexEntry> ret = new HashMap<>();
+            for (int i = 0; i < this.enumerable.length; ++i) {
+                //  Earlier registrations win
+                IndexEntry entry = new IndexEntry(this.enumerable[i], this.enumerableOrdinals[i]);
+                this.enumerable[i].keys(locale).forEach(k -> ret.putIfAbsent(k, entry));
+            }
 
-    @Override
-    public void registerBundle(String bundleKey, LocalizerBundle bundle) {
-        this.bundles.put(bundleKey, bundle);
+            return ret;
+        }
     }
 
-    @Override
-    public void unregisterBundle(String bundleKey) {
-        this.bundles.remove(bundleKey);
-    }
+    /**
+     * The first enumerable bundle with a given key, and its position among all registered bundles
+     */
+    private static final class IndexEntry {
 
-    @Override
-    public void registerPluralityRules(Map<String, LocalizerPluralRule> rules) {
-        rules.forEach((k, v) -> this.rules.put(k.toUpperCase(), v));
-    }
+        private final LocalizerBundle bundle;
+        private final int ordinal;
 
-    @Override
-    public Map<String, LocalizerPluralRule> getPluralRules() {
-        return this.rules;
+        IndexEntry(LocalizerBundle bundle, int ordinal) {
+            this.bundle = bundle;
+            this.ordinal = ordinal;
+        }
     }
 }
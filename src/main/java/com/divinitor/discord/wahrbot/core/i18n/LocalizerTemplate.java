@@ -0,0 +1,681 @@
+package com.divinitor.discord.wahrbot.core.i18n;
+
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.FormatStyle;
+import java.time.temporal.TemporalAccessor;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.IllegalFormatException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * A localization string compiled into an immutable tree of literal text, argument slots, named argument slots, subkey
+ * references and plurality selectors. Each raw string is parsed once; rendering is then a single walk over the nodes,
+ * appending directly into the caller's StringBuilder.
+ */
+final class LocalizerTemplate {
+
+    /**
+     * Marker template for keys that don't exist, so that misses can be cached as well
+     */
+    static final LocalizerTemplate MISSING = new LocalizerTemplate(new Node[0]);
+
+    private final Node[] nodes;
+
+    private LocalizerTemplate(Node[] nodes) {
+        this.nodes = nodes;
+    }
+
+    /**
+     * Compiles the given raw localization string.
+     * @param key The key the string was looked up under, used to resolve relative subkey references
+     * @param raw The raw localization string
+     * @return The compiled template. Malformed strings compile to a template that renders an error code.
+     */
+    static LocalizerTemplate compile(String key, String raw) {
+        try {
+            return new Parser(key).parse(raw);
+        } catch (IllegalArgumentException e) {
+            return literal(Localizer.BAD_FORMAT_STRING + e.getMessage());
+        }
+    }
+
+    private static LocalizerTemplate literal(String text) {
+        return new LocalizerTemplate(new Node[]{new Literal(text)});
+    }
+
+    /**
+     * Renders this template.
+     * @param loc The localizer to resolve subkey references and plurality rules with
+     * @param out The builder to render into
+     * @param locale The locale being rendered
+     * @param args The localization arguments
+     * @param depth The current subkey reference depth
+     */
+    void render(LocalizerImpl loc, StringBuilder out, Locale locale, Object[] args, int depth) {
+        for (Node node : this.nodes) {
+            node.render(loc, out, locale, args, depth);
+        }
+    }
+
+    /**
+     * Resolves a subkey reference token against the key that contains it.
+     * @param baseKey The key containing the reference
+     * @param token The reference token, without square brackets
+     * @return The absolute key, or null if the reference cannot be resolved
+     */
+    private static String resolveReference(String baseKey, String token) {
+        if (token.charAt(0) != '.') {
+            return token;
+        }
+
+        if (token.equals("..")) {
+            //  go up one level
+            int last = baseKey.lastIndexOf('.');
+            if (last == -1) {
+                return null;
+            }
+
+            return baseKey.substring(0, last);
+        }
+
+        return baseKey + token;
+    }
+
+    private interface Node {
+        void render(LocalizerImpl loc, StringBuilder out, Locale locale, Object[] args, int depth);
+    }
+
+    private interface Format {
+        void render(LocalizerImpl loc, StringBuilder out, Object arg, Locale locale, Object[] args, int depth);
+    }
+
+    private static final class Literal implements Node {
+
+        private final String text;
+
+        Literal(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public void render(LocalizerImpl loc, StringBuilder out, Locale locale, Object[] args, int depth) {
+            out.append(this.text);
+        }
+    }
+
+    /**
+     * Positional argument slot, {@code {0}} or {@code {0|FORMAT}}
+     */
+    private static final class ArgSlot implements Node {
+
+        private final String token;
+        private final int index;
+        private final Format format;
+
+        ArgSlot(String token, int index, Format format) {
+            this.token = token;
+            this.index = index;
+            this.format = format;
+        }
+
+        @Override
+        public void render(LocalizerImpl loc, StringBuilder out, Locale locale, Object[] args, int depth) {
+            if (this.index >= args.length) {
+                out.append(Localizer.BAD_ARG_INDEX).append(this.token);
+                return;
+            }
+
+            renderArg(loc, out, this.format, args[this.index], locale, args, depth);
+        }
+    }
+
+    /**
+     * Named argument slot, {@code {%NAME%}} or {@code {%NAME%|FORMAT}}. Values are looked up in the map passed as the
+     * last argument, and may be Suppliers.
+     */
+    private static final class NamedSlot implements Node {
+
+        private final String token;
+        private final String name;
+        private final Format format;
+
+        NamedSlot(String token, String name, Format format) {
+            this.token = token;
+            this.name = name;
+            this.format = format;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public void render(LocalizerImpl loc, StringBuilder out, Locale locale, Object[] args, int depth) {
+            if (args.length == 0) {
+                out.append(Localizer.BAD_NAMED_ARG).append(this.token).append(":NOARGS");
+                return;
+            }
+
+            Object last = args[args.length - 1];
+            if (!(last instanceof Map)) {
+                out.append(Localizer.BAD_NAMED_ARG).append(this.token).append(":NOTMAP");
+                return;
+            }
+
+            Object val = ((Map<String, Object>) last).get(this.name);
+            if (val == null) {
+                out.append(Localizer.BAD_NAMED_ARG).append(this.token).append(":VALNULL");
+                return;
+            }
+
+            if (val instanceof Supplier) {
+                val = ((Supplier) val).get();
+            }
+
+            renderArg(loc, out, this.format, val, locale, args, depth);
+        }
+    }
+
+    private static void renderArg(LocalizerImpl loc, StringBuilder out, Format format, Object arg,
+                                  Locale locale, Object[] args, int depth) {
+        if (format == null) {
+            out.append(arg);
+        } else {
+            format.render(loc, out, arg, locale, args, depth);
+        }
+    }
+
+    /**
+     * Reference to another key, {@code [some.key]}, {@code [.relative]} or {@code [..]}
+     */
+    private static final class SubkeyRef implements Node {
+
+        private final String key;
+
+        SubkeyRef(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public void render(LocalizerImpl loc, StringBuilder out, Locale locale, Object[] args, int depth) {
+            loc.render(out, this.key, locale, args, depth + 1);
+        }
+    }
+
+    /**
+     * Reference to another key whose name contains argument slots, such as {@code [.type.{0}]}
+     */
+    private static final class DynamicSubkeyRef implements Node {
+
+        private final String baseKey;
+        private final LocalizerTemplate keyTemplate;
+
+        DynamicSubkeyRef(String baseKey, LocalizerTemplate keyTemplate) {
+            this.baseKey = baseKey;
+            this.keyTemplate = keyTemplate;
+        }
+
+        @Override
+        public void render(LocalizerImpl loc, StringBuilder out, Locale locale, Object[] args, int depth) {
+            StringBuilder tokenBuilder = new StringBuilder();
+            this.keyTemplate.render(loc, tokenBuilder, locale, args, depth + 1);
+            String token = tokenBuilder.toString();
+            if (token.isEmpty()) {
+                out.append(Localizer.NO_SUCH_KEY);
+                return;
+            }
+
+            String key = resolveReference(this.baseKey, token);
+            if (key == null) {
+                out.append(Localizer.BAD_REFERENCE).append(this.baseKey).append(token);
+                return;
+            }
+
+            //  The key comes from the arguments, so don't let bogus ones fill the cache
+            loc.render(out, key, locale, args, depth + 1, false);
+        }
+    }
+
+    /**
+     * {@code %FORMAT_STRING}: Standard String.format() format string
+     */
+    private static final class StringFormat implements Format {
+
+        private final String fmt;
+
+        StringFormat(String fmt) {
+            this.fmt = fmt;
+        }
+
+        @Override
+        public void render(LocalizerImpl loc, StringBuilder out, Object arg, Locale locale, Object[] args, int depth) {
+            try {
+                out.append(String.format(this.fmt, arg));
+            } catch (IllegalFormatException e) {
+                out.append(Localizer.BAD_FORMAT_STRING).append(this.fmt);
+            }
+        }
+    }
+
+    /**
+     * {@code #date[|PATTERN]}, {@code #time[|PATTERN]}, {@code #datetime[|PATTERN]}: Formats the argument as a date,
+     * time or both, using the given {@link DateTimeFormatter} pattern or the locale's short format if there is none.
+     * The argument may be any {@link TemporalAccessor}, a {@link Date}, a {@link Calendar} or epoch milliseconds.
+     * Instants without a zone are shown in UTC.
+     */
+    private static final class DateTimeFormat implements Format {
+
+        private final String descriptor;
+        private final DateTimeFormatter formatter;
+
+        DateTimeFormat(String descriptor, DateTimeFormatter formatter) {
+            this.descriptor = descriptor;
+            this.formatter = formatter;
+        }
+
+        /**
+         * Compiles a date/time descriptor.
+         * @param descriptor The descriptor, starting with {@code #}
+         * @return The format, or null if the descriptor isn't a valid date/time descriptor
+         */
+        static DateTimeFormat compile(String descriptor) {
+            int bar = descriptor.indexOf('|');
+            String type = bar == -1 ? descriptor.substring(1) : descriptor.substring(1, bar);
+            String pattern = bar == -1 ? null : descriptor.substring(bar + 1);
+            DateTimeFormatter formatter;
+            switch (type) {
+                case "date":
+                    formatter = DateTimeFormatter.ofLocalizedDate(FormatStyle.SHORT);
+                    break;
+                case "time":
+                    formatter = DateTimeFormatter.ofLocalizedTime(FormatStyle.SHORT);
+                    break;
+                case "datetime":
+                    formatter = DateTimeFormatter.ofLocalizedDateTime(FormatStyle.SHORT);
+                    break;
+                default:
+                    return null;
+            }
+
+            if (pattern != null) {
+                try {
+                    formatter = DateTimeFormatter.ofPattern(pattern);
+                } catch (IllegalArgumentException e) {
+                    return null;
+                }
+            }
+
+            return new DateTimeFormat(descriptor, formatter);
+        }
+
+        @Override
+        public void render(LocalizerImpl loc, StringBuilder out, Object arg, Locale locale, Object[] args, int depth) {
+            TemporalAccessor temporal = toTemporal(arg);
+            if (temporal == null) {
+                out.append(Localizer.BAD_ARG).append(this.descriptor);
+                return;
+            }
+
+            try {
+                this.formatter.withLocale(locale).formatTo(temporal, out);
+            } catch (DateTimeException e) {
+                //  Such as asking for the time of a LocalDate
+                out.append(Localizer.BAD_FORMAT_STRING).append(this.descriptor);
+            }
+        }
+
+        private static TemporalAccessor toTemporal(Object arg) {
+            if (arg instanceof Instant) {
+                return ((Instant) arg).atZone(ZoneOffset.UTC);
+            } else if (arg instanceof TemporalAccessor) {
+                return (TemporalAccessor) arg;
+            } else if (arg instanceof Date) {
+                //  Not Date.toInstant(), which java.sql.Date doesn't support
+                return Instant.ofEpochMilli(((Date) arg).getTime()).atZone(ZoneOffset.UTC);
+            } else if (arg instanceof Calendar) {
+                Calendar calendar = (Calendar) arg;
+                return Instant.ofEpochMilli(calendar.getTimeInMillis()).atZone(calendar.getTimeZone().toZoneId());
+            } else if (arg instanceof Long) {
+                return Instant.ofEpochMilli((Long) arg).atZone(ZoneOffset.UTC);
+            }
+
+            return null;
+        }
+    }
+
+    private static final class BadFormat implements Format {
+
+        private final String descriptor;
+
+        BadFormat(String descriptor) {
+            this.descriptor = descriptor;
+        }
+
+        @Override
+        public void render(LocalizerImpl loc, StringBuilder out, Object arg, Locale locale, Object[] args, int depth) {
+            out.append(Localizer.BAD_ARG).append(this.descriptor);
+        }
+    }
+
+    /**
+     * {@code (PLURALITY_ID1,PLURALITY_ID2,...;TEXT)[,more...]}: A list of plurality matchers, using the argument as
+     * the number. Cases are evaluated left to right and the first match is rendered. Matchers can be ANDed together
+     * with +.
+     */
+    private static final class PluralFormat implements Format {
+
+        private final PluralCase[] cases;
+
+        PluralFormat(PluralCase[] cases) {
+            this.cases = cases;
+        }
+
+        @Override
+        public void render(LocalizerImpl loc, StringBuilder out, Object arg, Locale locale, Object[] args, int depth) {
+            //  First off, make sure what we have IS a number
+            if (!(arg instanceof Number)) {
+                out.append(Localizer.BAD_ARG).append(arg == null ? null : arg.getClass());
+                return;
+            }
+
+            Number number = (Number) arg;
+            for (PluralCase pluralCase : this.cases) {
+                if (pluralCase.matches(loc, number)) {
+                    pluralCase.body.render(loc, out, locale, args, depth);
+                    return;
+                }
+            }
+
+            out.append(Localizer.NO_MATCHING_PLURAL).append(number);
+        }
+    }
+
+    private static final class PluralCase {
+
+        /**
+         * Matchers, ORed together. Each matcher is a list of rule names that are ANDed together.
+         */
+        private final String[][] matchers;
+        private final LocalizerTemplate body;
+
+        PluralCase(String[][] matchers, LocalizerTemplate body) {
+            this.matchers = matchers;
+            this.body = body;
+        }
+
+        boolean matches(LocalizerImpl loc, Number number) {
+            for (String[] matcher : this.matchers) {
+                if (matcher.length == 1) {
+                    //  Fast path, unknown rules never match
+                    LocalizerPluralRule rule = loc.getPluralRule(matcher[0]);
+                    if (rule != null && rule.test(number)) {
+                        return true;
+                    }
+                } else {
+                    //  Compound matcher, unknown rules are ignored
+                    boolean match = true;
+                    for (String name : matcher) {
+                        LocalizerPluralRule rule = loc.getPluralRule(name);
+                        if (rule != null && !rule.test(number)) {
+                            match = false;
+                            break;
+                        }
+                    }
+
+                    if (match) {
+                        return true;
+                    }
+                }
+            }
+
+            return false;
+        }
+    }
+
+    private static final class Parser {
+
+        private final String baseKey;
+
+        Parser(String baseKey) {
+            this.baseKey = baseKey;
+        }
+
+        LocalizerTemplate parse(String raw) {
+            List<Node> nodes = new ArrayList<>();
+            StringBuilder text = new StringBuilder();
+            int length = raw.length();
+            int i = 0;
+            while (i < length) {
+                char c = raw.charAt(i);
+                switch (c) {
+                    case '\\':
+                        //  Escape next character. A backslash at the end of the string is kept as is.
+                        if (i + 1 < length) {
+                            text.append(raw.charAt(i + 1));
+                            i += 2;
+                        } else {
+                            text.append(c);
+                            ++i;
+                        }
+                        break;
+                    case '{': {
+                        int close = findCurlyClose(raw, i);
+                        flush(text, nodes);
+                        nodes.add(this.curlyToken(raw.substring(i + 1, close)));
+                        i = close + 1;
+                        break;
+                    }
+                    case '[': {
+                        int close = findSquareClose(raw, i);
+                        flush(text, nodes);
+                        nodes.add(this.squareToken(raw.substring(i + 1, close)));
+                        i = close + 1;
+                        break;
+                    }
+                    default:
+                        text.append(c);
+                        ++i;
+                }
+            }
+
+            flush(text, nodes);
+            return new LocalizerTemplate(nodes.toArray(new Node[nodes.size()]));
+        }
+
+        private static void flush(StringBuilder text, List<Node> nodes) {
+            if (text.length() > 0) {
+                nodes.add(new Literal(text.toString()));
+                text.setLength(0);
+            }
+        }
+
+        private static int findCurlyClose(String raw, int open) {
+            int braceDepth = 0;
+            boolean escaped = false;
+            for (int i = open; i < raw.length(); i++) {
+                char c = raw.charAt(i);
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == '{') {
+                    ++braceDepth;
+                } else if (c == '}') {
+                    --braceDepth;
+                    if (braceDepth == 0) {
+                        return i;
+                    }
+                }
+            }
+
+            throw new IllegalArgumentException("Unclosed curly brace tag at " + open);
+        }
+
+        private static int findSquareClose(String raw, int open) {
+            boolean escaped = false;
+            for (int i = open + 1; i < raw.length(); i++) {
+                char c = raw.charAt(i);
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == '{') {
+                    //  Curly brace tags inside a reference are resolved before the reference itself
+                    i = findCurlyClose(raw, i);
+                } else if (c == ']') {
+                    return i;
+                }
+            }
+
+            throw new IllegalArgumentException("Unclosed square bracket tag at " + open);
+        }
+
+        private Node curlyToken(String token) {
+            /*
+            Format:
+            ARG_NUMBER|FORMAT_DESCRIPTOR
+            ARG_NUMBER: The argument index to use, or %NAME% for a named argument
+            FORMAT_DESCRIPTOR: The way the argument should be formatted when inserted into the string
+             */
+            int bar = token.indexOf('|');
+            String argPart = bar == -1 ? token : token.substring(0, bar);
+            Format format = bar == -1 ? null : this.format(token.substring(bar + 1));
+
+            if (argPart.startsWith("%")) {
+                String name = argPart.length() < 2 ? "" : argPart.substring(1, argPart.length() - 1);
+                return new NamedSlot(argPart, name, format);
+            }
+
+            int argId;
+            try {
+                argId = Integer.parseInt(argPart);
+            } catch (NumberFormatException e) {
+                return new Literal(Localizer.BAD_ARG_INDEX + argPart);
+            }
+
+            if (argId < 0) {
+                return new Literal(Localizer.BAD_ARG_INDEX + argPart);
+            }
+
+            return new ArgSlot(argPart, argId, format);
+        }
+
+        private Format format(String descriptor) {
+            if (descriptor.isEmpty()) {
+                return new BadFormat(descriptor);
+            }
+
+            switch (descriptor.charAt(0)) {
+                case '%':
+                    return new StringFormat(descriptor);
+                case '#':
+                    DateTimeFormat dateTime = DateTimeFormat.compile(descriptor);
+                    return dateTime == null ? new BadFormat(descriptor) : dateTime;
+                case '(':
+                    return this.pluralFormat(descriptor);
+                default:
+                    return new BadFormat(descriptor);
+            }
+        }
+
+        private Format pluralFormat(String rules) {
+            //  Example rule: (ONE;a potato),(ZERO,MANY;potatoes)
+            //  FooBar rule (assuming defined matchers): (FOUR+FIVE;foobar),(FOUR;foo),(FIVE;bar)
+            List<PluralCase> cases = new ArrayList<>();
+            StringBuilder builder = new StringBuilder();
+            int index = 0;
+            while (index < rules.length()) {
+                builder.setLength(0);
+                index = readInPluralityRule(rules, index, builder);
+                String rule = builder.toString();
+                //  Split at the semicolon, but only the first one we run into
+                //  Matcher names cannot include semicolons, commas or pluses so we don't bother with escapes
+                int semi = rule.indexOf(';');
+                if (semi == -1) {
+                    //  Bad rule - rules must have at least one matcher and text
+                    continue;
+                }
+
+                String[] matcherNames = rule.substring(0, semi).split(",");
+                String[][] matchers = new String[matcherNames.length][];
+                for (int i = 0; i < matcherNames.length; i++) {
+                    String[] names = matcherNames[i].split("\\+");
+                    for (int j = 0; j < names.length; j++) {
+                        names[j] = names[j].toUpperCase();
+                    }
+
+                    matchers[i] = names;
+                }
+
+                cases.add(new PluralCase(matchers, this.parse(rule.substring(semi + 1))));
+            }
+
+            return new PluralFormat(cases.toArray(new PluralCase[cases.size()]));
+        }
+
+        /**
+         * Reads the contents of the next parenthesized rule, escapes included, into the builder.
+         * @return The index to resume reading from
+         */
+        private static int readInPluralityRule(String rules, int index, StringBuilder builder) {
+            //  Find opening paren (non escaped)
+            boolean escaped = false;
+            boolean foundOpen = false;
+            for (; index < rules.length(); index++) {
+                char c = rules.charAt(index);
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == '(') {
+                    foundOpen = true;
+                    ++index;
+                    break;
+                }
+            }
+
+            if (!foundOpen) {
+                return index;
+            }
+
+            //  Find closing paren
+            escaped = false;
+            for (; index < rules.length(); index++) {
+                char c = rules.charAt(index);
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == ')') {
+                    return index + 1;
+                }
+
+                builder.append(c);
+            }
+
+            return index;
+        }
+
+        private Node squareToken(String token) {
+            if (token.isEmpty()) {
+                return new Literal(Localizer.NO_SUCH_KEY);
+            }
+
+            if (token.indexOf('{') != -1) {
+                return new DynamicSubkeyRef(this.baseKey, this.parse(token));
+            }
+
+            String key = resolveReference(this.baseKey, token);
+            if (key == null) {
+                return new Literal(Localizer.BAD_REFERENCE + this.baseKey + token);
+            }
+
+            return new SubkeyRef(key);
+        }
+    }
+}
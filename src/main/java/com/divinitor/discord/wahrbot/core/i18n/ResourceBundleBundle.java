@@ -6,15 +6,37 @@ import org.slf4j.LoggerFactory;
 import java.lang.invoke.MethodHandles;
 import java.lang.ref.WeakReference;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.stream.Stream;
-import java.util.stream.StreamSupport;
 
 public class ResourceBundleBundle implements LocalizerBundle {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
+    /**
+     * Locale fallback is handled by the localizer, so resolution is limited to exactly the requested locale. Bundles
+     * resolved this way have no parent, so their keys are only the ones defined for that locale.
+     */
+    private static final ResourceBundle.Control CONTROL = new ResourceBundle.Control() {
+        @Override
+        public List<Locale> getCandidateLocales(String baseName, Locale locale) {
+            return Collections.singletonList(locale);
+        }
+
+        @Override
+        public Locale getFallbackLocale(String baseName, Locale locale) {
+            return null;
+        }
+    };
+
     private String bundleLocation;
     private WeakReference<ClassLoader> classloader;
+    /**
+     * Resolved bundles by locale. Locales with no bundle map to an empty Optional so that resolution is only attempted
+     * (and the failure logged) once.
+     */
+    private final ConcurrentMap<Locale, Optional<ResourceBundle>> resolved;
 
     public ResourceBundleBundle(String bundle) {
         this(bundle, null);
@@ -23,18 +45,16 @@ public class ResourceBundleBundle implements LocalizerBundle {
     public ResourceBundleBundle(String bundle, ClassLoader classloader) {
         this.bundleLocation = bundle;
         this.classloader = new WeakReference<>(classloader);
+        this.resolved = new ConcurrentHashMap<>();
     }
 
     @Override
     public String get(String key, Locale locale) {
-
-        ResourceBundle bundle;
-        try {
-            bundle = getBundle(locale);
-        } catch (MissingResourceException mre) {
-            LOGGER.warn("Unable to load bundle at {}", this.bundleLocation);
+        ResourceBundle bundle = getBundle(locale);
+        if (bundle == null) {
             return null;
         }
+
         try {
             return bundle.getString(key);
         } catch (MissingResourceException mre) {
@@ -44,35 +64,53 @@ public class ResourceBundleBundle implements LocalizerBundle {
         }
     }
 
+    /**
+     * Gets the bundle for the given locale, resolving it on first use.
+     * @param locale The locale
+     * @return The bundle, or null if there is no bundle for the locale
+     */
     private ResourceBundle getBundle(Locale locale) {
+        Optional<ResourceBundle> ret = this.resolved.get(locale);
+        if (ret == null) {
+            ret = this.resolved.computeIfAbsent(locale, this::loadBundle);
+        }
+
+        return ret.orElse(null);
+    }
+
+    private Optional<ResourceBundle> loadBundle(Locale locale) {
         ClassLoader loader = this.classloader.get();
         if (loader == null) {
             loader = this.getClass().getClassLoader();
         }
 
-        return ResourceBundle.getBundle(this.bundleLocation, locale, loader);
+        try {
+            return Optional.of(ResourceBundle.getBundle(this.bundleLocation, locale, loader, CONTROL));
+        } catch (MissingResourceException mre) {
+            //  Most locales only have some of their chain defined
+            LOGGER.debug("No bundle at {} for locale {}", this.bundleLocation, locale);
+            return Optional.empty();
+        }
     }
 
     @Override
     public boolean contains(String key, Locale locale) {
-        try {
-            return getBundle(locale).containsKey(key);
-        } catch (MissingResourceException mre) {
-            LOGGER.warn("Unable to load bundle at {}", this.bundleLocation);
-            return false;
-        }
+        ResourceBundle bundle = getBundle(locale);
+        return bundle != null && bundle.containsKey(key);
     }
 
     @Override
     public Stream<String> keys(Locale locale) {
-        ResourceBundle bundle;
-        try {
-            bundle = getBundle(locale);
-        } catch (MissingResourceException mre) {
-            LOGGER.warn("Unable to load bundle at {}", this.bundleLocation);
+        ResourceBundle bundle = getBundle(locale);
+        if (bundle == null) {
             return Stream.empty();
         }
 
         return bundle.keySet().stream();
     }
+
+    @Override
+    public boolean isEnumerable() {
+        return true;
+    }
 }
@@ -1,40 +1,69 @@
 package com.divinitor.discord.wahrbot.core.i18n.dvloc;
 
-import com.divinitor.discord.wahrbot.core.i18n.Localizer;
 import com.divinitor.discord.wahrbot.core.i18n.LocalizerBundle;
 import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.Table;
+import com.google.common.collect.Tables;
 
+import java.util.Collections;
 import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Stream;
 
 public class DvLocBundle implements LocalizerBundle {
 
-    private String prefix;
+    /**
+     * The BUNDLE name. Every key in this bundle starts with it.
+     */
+    private final String prefix;
 
+    /**
+     * Values by locale and full key
+     */
     private final Table<Locale, String, String> data;
 
     public DvLocBundle() {
-        this.data = HashBasedTable.create();
+        this("", HashBasedTable.create());
+    }
+
+    public DvLocBundle(String prefix, Table<Locale, String, String> data) {
+        this.prefix = prefix;
+        this.data = data;
     }
 
     @Override
     public String get(String key, Locale locale) {
-        if (key.startsWith(prefix)) {
-            key = key.substring(prefix.length());
-            String ret = this.data.get(locale, key);
-            return ret;
-        } else {
+        if (!key.startsWith(this.prefix)) {
             return null;
         }
+
+        return this.data.get(locale, key);
     }
 
     @Override
     public boolean contains(String key, Locale locale) {
-        if (key.startsWith(prefix)) {
-            key = key.substring(prefix.length());
-            return this.data.contains(locale, key);
-        } else {
-            return false;
-        }
+        return key.startsWith(this.prefix) && this.data.contains(locale, key);
+    }
+
+    @Override
+    public Stream<String> keys(Locale locale) {
+        return this.data.row(locale).keySet().stream();
+    }
+
+    @Override
+    public boolean isEnumerable() {
+        return true;
+    }
+
+    public String getPrefix() {
+        return this.prefix;
+    }
+
+    public Set<Locale> getLocales() {
+        return Collections.unmodifiableSet(this.data.rowKeySet());
+    }
+
+    public Table<Locale, String, String> getData() {
+        return Tables.unmodifiableTable(this.data);
     }
 }
@@ -0,0 +1,120 @@
+package com.divinitor.discord.wahrbot.core.i18n.dvloc;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Compiles DVLOC bundles into the binary DVLB format read by {@link MappedDvLocBundle}.
+ * <pre>
+ * "DVLB"                      magic
+ * u16                         version
+ * u32                         string count N
+ * u32 * (N + 1)               string start offsets into the string data, plus the end offset
+ * u8 * offsets[N]             UTF-8 string data
+ * u32                         prefix string index
+ * u32                         locale count
+ * per locale:
+ *     u32                     language tag string index
+ *     u32                     entry count M
+ *     (u32, u32) * M          key and value string indices, sorted by key
+ * </pre>
+ * All integers are big endian. Strings are interned, so keys and values shared between locales are only stored once.
+ */
+public final class DvLocCompiler {
+
+    static final int MAGIC = 0x44564C42;
+    static final int VERSION = 1;
+
+    private DvLocCompiler() {
+    }
+
+    /**
+     * Writes the given bundle in DVLB format.
+     * @param bundle The bundle to write
+     * @param out The stream to write to. It is flushed but not closed.
+     * @throws IOException If writing fails
+     */
+    public static void write(DvLocBundle bundle, OutputStream out) throws IOException {
+        Map<String, Integer> strings = new LinkedHashMap<>();
+        int prefix = intern(strings, bundle.getPrefix());
+
+        List<Locale> locales = new ArrayList<>(bundle.getLocales());
+        locales.sort(Comparator.comparing(Locale::toLanguageTag));
+        int[] localeTags = new int[locales.size()];
+        int[][] localeEntries = new int[locales.size()][];
+        for (int i = 0; i < locales.size(); i++) {
+            Locale locale = locales.get(i);
+            localeTags[i] = intern(strings, locale.toLanguageTag());
+            List<Map.Entry<String, String>> entries = new ArrayList<>(bundle.getData().row(locale).entrySet());
+            entries.sort(Map.Entry.comparingByKey());
+            int[] indices = new int[entries.size() * 2];
+            for (int j = 0; j < entries.size(); j++) {
+                Map.Entry<String, String> entry = entries.get(j);
+                indices[j * 2] = intern(strings, entry.getKey());
+                indices[j * 2 + 1] = intern(strings, entry.getValue());
+            }
+
+            localeEntries[i] = indices;
+        }
+
+        DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(out));
+        dos.writeInt(MAGIC);
+        dos.writeShort(VERSION);
+        dos.writeInt(strings.size());
+        List<byte[]> encoded = new ArrayList<>(strings.size());
+        int offset = 0;
+        for (String s : strings.keySet()) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            encoded.add(bytes);
+            dos.writeInt(offset);
+            offset += bytes.length;
+        }
+
+        dos.writeInt(offset);
+        for (byte[] bytes : encoded) {
+            dos.write(bytes);
+        }
+
+        dos.writeInt(prefix);
+        dos.writeInt(locales.size());
+        for (int i = 0; i < locales.size(); i++) {
+            dos.writeInt(localeTags[i]);
+            dos.writeInt(localeEntries[i].length / 2);
+            for (int index : localeEntries[i]) {
+                dos.writeInt(index);
+            }
+        }
+
+        dos.flush();
+    }
+
+    private static int intern(Map<String, Integer> strings, String s) {
+        Integer ret = strings.get(s);
+        if (ret == null) {
+            ret = strings.size();
+            strings.put(s, ret);
+        }
+
+        return ret;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: DvLocCompiler <input.dvloc> <output.dvlb>");
+            System.exit(1);
+            return;
+        }
+
+        DvLocBundle bundle;
+        try (Reader reader = Files.newBufferedReader(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+            bundle = new DvLocLoader().read(reader);
+        }
+
+        try (OutputStream out = Files.newOutputStream(Paths.get(args[1]))) {
+            write(bundle, out);
+        }
+    }
+}
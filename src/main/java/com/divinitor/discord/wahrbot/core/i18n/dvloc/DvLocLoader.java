@@ -1,115 +1,388 @@
 package com.divinitor.discord.wahrbot.core.i18n.dvloc;
 
-import java.util.NoSuchElementException;
-import java.util.function.Supplier;
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.Table;
 
-public class DvLocLoader {
+import java.io.*;
+import java.util.*;
 
-    private String line;
+/**
+ * Single pass parser for DVLOC localization files.
+ * <pre>
+ * //  Comment
+ * BUNDLE com.example.bundle
+ *
+ * LOCALE en
+ * {
+ *     .: "Value for com.example.bundle"
+ *     title: "Value for com.example.bundle.title"
+ *     category:
+ *     {
+ *         misc: "Value for com.example.bundle.category.misc"
+ *     }
+ * }
+ *
+ * LOCALE en_us = en {}
+ * </pre>
+ * A locale may inherit from another with {@code = parent}, in which case it contains all of the parent's entries
+ * unless it overrides them. Inheritance is resolved once the whole file has been read, so parents may be declared
+ * after their children.
+ */
+public class DvLocLoader {
 
-    public DvLocBundle read(String data) {
-        this.line = data;
-        return this.root();
+    public DvLocBundle read(String data) throws DvLocParseException {
+        try {
+            return this.read(new StringReader(data));
+        } catch (DvLocParseException e) {
+            throw e;
+        } catch (IOException e) {
+            //  Can't happen with a StringReader
+            throw new UncheckedIOException(e);
+        }
     }
 
-    private DvLocBundle root() {
-        return null;
+    public DvLocBundle read(Reader reader) throws IOException {
+        if (!(reader instanceof BufferedReader) && !(reader instanceof StringReader)) {
+            reader = new BufferedReader(reader);
+        }
+
+        return new Parser(reader).parse();
     }
 
-    private void skipWhitespace() {
-        if (this.line.isEmpty()) {
-            return;
-        }
+    private static final class Parser {
 
-        //  Skip whitespace
-        int startIdx = 0;
-        while (startIdx < this.line.length() && Character.isWhitespace(this.line.charAt(startIdx))) {
-            ++startIdx;
+        private static final int NOT_READ = -2;
+
+        private final Reader in;
+        /**
+         * Lookahead character, or {@link #NOT_READ}
+         */
+        private int next;
+        /**
+         * Position of the lookahead character
+         */
+        private int line;
+        private int column;
+        /**
+         * Reusable buffer for identifiers and string values
+         */
+        private final StringBuilder token;
+        /**
+         * Full key of the block currently being read
+         */
+        private final StringBuilder path;
+        private String prefix;
+        private final Map<Locale, Map<String, String>> entries;
+        private final Map<Locale, Locale> parents;
+        private final Map<Locale, int[]> parentPositions;
+
+        Parser(Reader in) {
+            this.in = in;
+            this.next = NOT_READ;
+            this.line = 1;
+            this.column = 1;
+            this.token = new StringBuilder();
+            this.path = new StringBuilder();
+            this.entries = new LinkedHashMap<>();
+            this.parents = new HashMap<>();
+            this.parentPositions = new HashMap<>();
         }
 
-        this.line = this.line.substring(startIdx).trim();
-    }
+        DvLocBundle parse() throws IOException {
+            while (true) {
+                this.skipWhitespace();
+                if (this.peek() == -1) {
+                    break;
+                }
 
-    public boolean take(String s) {
-        skipWhitespace();
-        if (this.line.startsWith(s)) {
-            this.line = this.line.substring(s.length());
-            return true;
+                int line = this.line;
+                int column = this.column;
+                this.readIdentifier();
+                if (contentEquals(this.token, "BUNDLE")) {
+                    if (this.prefix != null || !this.entries.isEmpty()) {
+                        throw new DvLocParseException("BUNDLE must be declared once, before any LOCALE", line, column);
+                    }
+
+                    this.prefix = this.readIdentifier();
+                } else if (contentEquals(this.token, "LOCALE")) {
+                    this.locale();
+                } else {
+                    throw new DvLocParseException("Expected BUNDLE or LOCALE but found " + this.token, line, column);
+                }
+            }
+
+            Table<Locale, String, String> table = HashBasedTable.create();
+            Map<Locale, Map<String, String>> resolved = new HashMap<>();
+            for (Locale locale : this.entries.keySet()) {
+                this.resolve(locale, resolved, new LinkedHashSet<>()).forEach((k, v) -> table.put(locale, k, v));
+            }
+
+            return new DvLocBundle(this.prefix == null ? "" : this.prefix, table);
         }
 
-        return false;
-    }
+        private void locale() throws IOException {
+            int line = this.line;
+            int column = this.column;
+            Locale locale = this.readLocale();
+            if (this.entries.containsKey(locale)) {
+                throw new DvLocParseException("Duplicate LOCALE " + locale, line, column);
+            }
+
+            this.skipWhitespace();
+            if (this.peek() == '=') {
+                this.read();
+                this.skipWhitespace();
+                this.parentPositions.put(locale, new int[]{this.line, this.column});
+                this.parents.put(locale, this.readLocale());
+            }
 
-    public <T extends Throwable> void takeOrThrow(String s, Supplier<T> exception) throws T {
-        if (!take(s)) {
-            throw exception.get();
+            Map<String, String> values = new HashMap<>();
+            this.entries.put(locale, values);
+            this.path.setLength(0);
+            if (this.prefix != null) {
+                this.path.append(this.prefix);
+            }
+
+            this.block(values);
         }
-    }
 
-    public boolean hasNext() {
-        return !this.line.isEmpty();
-    }
+        private void block(Map<String, String> values) throws IOException {
+            this.expect('{');
+            while (true) {
+                this.skipWhitespace();
+                int line = this.line;
+                int column = this.column;
+                int c = this.peek();
+                if (c == '}') {
+                    this.read();
+                    return;
+                }
+
+                if (c == -1) {
+                    throw new DvLocParseException("Unclosed block", line, column);
+                }
+
+                this.readIdentifier();
+                int pathLength = this.path.length();
+                //  . refers to the enclosing key itself
+                if (!contentEquals(this.token, ".")) {
+                    if (pathLength > 0) {
+                        this.path.append('.');
+                    }
+
+                    this.path.append(this.token);
+                }
+
+                this.expect(':');
+                this.skipWhitespace();
+                c = this.peek();
+                if (c == '{') {
+                    this.block(values);
+                } else if (c == '"') {
+                    String key = this.path.toString();
+                    if (values.put(key, this.readString()) != null) {
+                        throw new DvLocParseException("Duplicate key " + key, line, column);
+                    }
+                } else {
+                    throw new DvLocParseException("Expected string or block but found " + describe(c),
+                        this.line, this.column);
+                }
 
-    public String next() {
-        skipWhitespace();
-        if (this.line.isEmpty()) {
-            throw new NoSuchElementException("End of command line");
+                this.path.setLength(pathLength);
+            }
         }
 
-        if (this.line.startsWith("\"")) {
-            int endIndex = consumeQuotedString(this.line);
-            if (endIndex == -1) {
-                String ret = this.line.substring(1);
-                this.line = "";
+        private Map<String, String> resolve(Locale locale, Map<Locale, Map<String, String>> resolved,
+                                            Set<Locale> visiting) throws DvLocParseException {
+            Map<String, String> ret = resolved.get(locale);
+            if (ret != null) {
                 return ret;
+            }
+
+            int[] pos = this.parentPositions.get(locale);
+            if (!visiting.add(locale)) {
+                throw new DvLocParseException("Circular LOCALE inheritance " + visiting, pos[0], pos[1]);
+            }
+
+            Locale parent = this.parents.get(locale);
+            Map<String, String> own = this.entries.get(locale);
+            if (parent == null) {
+                ret = own;
             } else {
-                String ret = this.line.substring(1, endIndex);
-                this.line = this.line.substring(endIndex + 1).trim();
-                return ret;
+                if (!this.entries.containsKey(parent)) {
+                    throw new DvLocParseException("Unknown parent LOCALE " + parent, pos[0], pos[1]);
+                }
+
+                ret = new HashMap<>(this.resolve(parent, resolved, visiting));
+                ret.putAll(own);
             }
-        } else {
-            StringBuilder builder = new StringBuilder();
-            int end = this.line.length();
-            boolean escaped = false;
-            for (int i = 0; i < this.line.length(); i++) {
-                char c = this.line.charAt(i);
-                if (escaped) {
-                    builder.append(c);
-                    escaped = false;
-                } else if (c == '\\') {
-                    escaped = true;
-                } else if (Character.isWhitespace(c)) {
-                    end = i;
-                    break;
+
+            resolved.put(locale, ret);
+            return ret;
+        }
+
+        private Locale readLocale() throws IOException {
+            int line = this.line;
+            int column = this.column;
+            String tag = this.readIdentifier();
+            Locale locale = Locale.forLanguageTag(tag.replace('_', '-'));
+            if (locale.getLanguage().isEmpty()) {
+                throw new DvLocParseException("Invalid locale " + tag, line, column);
+            }
+
+            return locale;
+        }
+
+        /**
+         * Reads an identifier into {@link #token}.
+         * @return The identifier
+         */
+        private String readIdentifier() throws IOException {
+            this.skipWhitespace();
+            int line = this.line;
+            int column = this.column;
+            this.token.setLength(0);
+            int c;
+            while ((c = this.peek()) != -1 && isIdentifierChar(c)) {
+                this.token.append((char) this.read());
+            }
+
+            if (this.token.length() == 0) {
+                throw new DvLocParseException("Expected identifier but found " + describe(c), line, column);
+            }
+
+            return this.token.toString();
+        }
+
+        private String readString() throws IOException {
+            int line = this.line;
+            int column = this.column;
+            this.expect('"');
+            this.token.setLength(0);
+            while (true) {
+                int c = this.read();
+                if (c == -1 || c == '\n') {
+                    throw new DvLocParseException("Unclosed string", line, column);
+                }
+
+                if (c == '"') {
+                    return this.token.toString();
+                }
+
+                if (c == '\\') {
+                    int e = this.read();
+                    switch (e) {
+                        case -1:
+                            throw new DvLocParseException("Unclosed string", line, column);
+                        case 'n':
+                            this.token.append('\n');
+                            break;
+                        case 't':
+                            this.token.append('\t');
+                            break;
+                        case '"':
+                        case '\\':
+                            this.token.append((char) e);
+                            break;
+                        default:
+                            //  Leave other escapes for the localizer
+                            this.token.append('\\').append((char) e);
+                    }
                 } else {
-                    builder.append(c);
+                    this.token.append((char) c);
                 }
             }
+        }
+
+        private void expect(char expected) throws IOException {
+            this.skipWhitespace();
+            int c = this.peek();
+            if (c != expected) {
+                throw new DvLocParseException("Expected '" + expected + "' but found " + describe(c),
+                    this.line, this.column);
+            }
 
-            this.line = this.line.substring(end).trim();
-            return builder.toString();
+            this.read();
+        }
+
+        private void skipWhitespace() throws IOException {
+            while (true) {
+                int c = this.peek();
+                if (c == -1) {
+                    return;
+                }
+
+                if (Character.isWhitespace(c)) {
+                    this.read();
+                } else if (c == '/') {
+                    int line = this.line;
+                    int column = this.column;
+                    this.read();
+                    if (this.peek() != '/') {
+                        throw new DvLocParseException("Unexpected '/'", line, column);
+                    }
+
+                    //  Comment until end of line
+                    while ((c = this.peek()) != -1 && c != '\n') {
+                        this.read();
+                    }
+                } else {
+                    return;
+                }
+            }
+        }
+
+        private int peek() throws IOException {
+            if (this.next == NOT_READ) {
+                this.next = this.in.read();
+            }
+
+            return this.next;
         }
-    }
 
-    private static int consumeQuotedString(String s) {
-        //  We know it starts with a quote
-        boolean escape = false;
-        for (int i = 1; i < s.length(); i++) {
-            char c = s.charAt(i);
-            if (escape) {
-                escape = false;
-                continue;
+        private int read() throws IOException {
+            int c = this.peek();
+            this.next = NOT_READ;
+            if (c == '\n') {
+                ++this.line;
+                this.column = 1;
+            } else if (c != -1) {
+                ++this.column;
             }
-            if (c == '\\') {
-                escape = true;
-                continue;
+
+            return c;
+        }
+
+        private static boolean isIdentifierChar(int c) {
+            switch (c) {
+                case '{':
+                case '}':
+                case ':':
+                case '=':
+                case '"':
+                case '/':
+                    return false;
+                default:
+                    return !Character.isWhitespace(c);
             }
-            if (c == '"') {
-                return i;
+        }
+
+        private static boolean contentEquals(StringBuilder builder, String s) {
+            if (builder.length() != s.length()) {
+                return false;
             }
+
+            for (int i = 0; i < s.length(); i++) {
+                if (builder.charAt(i) != s.charAt(i)) {
+                    return false;
+                }
+            }
+
+            return true;
         }
 
-        //  unclosed quote but who cares
-        return -1;
+        private static String describe(int c) {
+            return c == -1 ? "end of file" : "'" + (char) c + "'";
+        }
     }
 }
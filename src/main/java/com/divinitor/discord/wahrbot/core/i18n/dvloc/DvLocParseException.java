@@ -0,0 +1,28 @@
+package com.divinitor.discord.wahrbot.core.i18n.dvloc;
+
+import lombok.Getter;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a DVLOC file is malformed.
+ */
+@Getter
+public class DvLocParseException extends IOException {
+
+    /**
+     * The 1-based line the error occurred on
+     */
+    private final int line;
+
+    /**
+     * The 1-based column the error occurred on
+     */
+    private final int column;
+
+    public DvLocParseException(String message, int line, int column) {
+        super(message + " at " + line + ":" + column);
+        this.line = line;
+        this.column = column;
+    }
+}
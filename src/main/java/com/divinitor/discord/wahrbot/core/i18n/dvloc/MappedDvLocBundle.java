@@ -0,0 +1,188 @@
+package com.divinitor.discord.wahrbot.core.i18n.dvloc;
+
+import com.divinitor.discord.wahrbot.core.i18n.LocalizerBundle;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * A bundle backed by a compiled DVLB file (see {@link DvLocCompiler}). Strings stay encoded in the buffer and are
+ * decoded on first access; lookups are a binary search over the locale's sorted keys.
+ */
+public class MappedDvLocBundle implements LocalizerBundle {
+
+    private final ByteBuffer buffer;
+    /**
+     * Position of the string offset table
+     */
+    private final int offsetsPos;
+    /**
+     * Position of the string data
+     */
+    private final int dataPos;
+    private final AtomicReferenceArray<String> strings;
+    private final String prefix;
+    /**
+     * Position of each locale's entry table, and its entry count
+     */
+    private final Map<Locale, int[]> locales;
+
+    /**
+     * Reads a bundle from the given buffer. The buffer's contents must not change afterwards.
+     * @param buffer The buffer containing a DVLB bundle, starting at its current position
+     * @throws IOException If the buffer does not contain a supported DVLB bundle
+     */
+    public MappedDvLocBundle(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer.slice();
+        try {
+            if (this.buffer.getInt(0) != DvLocCompiler.MAGIC) {
+                throw new IOException("Not a DVLB bundle");
+            }
+
+            int version = this.buffer.getShort(4) & 0xFFFF;
+            if (version != DvLocCompiler.VERSION) {
+                throw new IOException("Unsupported DVLB version " + version);
+            }
+
+            int stringCount = this.buffer.getInt(6);
+            this.offsetsPos = 10;
+            this.dataPos = this.offsetsPos + (stringCount + 1) * 4;
+            this.strings = new AtomicReferenceArray<>(stringCount);
+            int pos = this.dataPos + this.buffer.getInt(this.offsetsPos + stringCount * 4);
+            this.prefix = this.string(this.buffer.getInt(pos));
+            int localeCount = this.buffer.getInt(pos + 4);
+            pos += 8;
+            Map<Locale, int[]> locales = new HashMap<>();
+            for (int i = 0; i < localeCount; i++) {
+                Locale locale = Locale.forLanguageTag(this.string(this.buffer.getInt(pos)));
+                int count = this.buffer.getInt(pos + 4);
+                locales.put(locale, new int[]{pos + 8, count});
+                pos += 8 + count * 8;
+            }
+
+            if (pos > this.buffer.limit()) {
+                throw new IOException("Truncated DVLB bundle");
+            }
+
+            this.locales = locales;
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Truncated DVLB bundle", e);
+        }
+    }
+
+    /**
+     * Memory maps and reads the given DVLB file.
+     * @param path The file to map
+     * @return The bundle
+     * @throws IOException If the file cannot be mapped or is not a supported DVLB bundle
+     */
+    public static MappedDvLocBundle open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            //  The mapping remains valid after the channel is closed
+            return new MappedDvLocBundle(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    @Override
+    public String get(String key, Locale locale) {
+        if (!key.startsWith(this.prefix)) {
+            return null;
+        }
+
+        int[] table = this.locales.get(locale);
+        if (table == null) {
+            return null;
+        }
+
+        int entry = this.find(table, key);
+        if (entry == -1) {
+            return null;
+        }
+
+        return this.string(this.buffer.getInt(entry + 4));
+    }
+
+    @Override
+    public boolean contains(String key, Locale locale) {
+        if (!key.startsWith(this.prefix)) {
+            return false;
+        }
+
+        int[] table = this.locales.get(locale);
+        return table != null && this.find(table, key) != -1;
+    }
+
+    @Override
+    public Stream<String> keys(Locale locale) {
+        int[] table = this.locales.get(locale);
+        if (table == null) {
+            return Stream.empty();
+        }
+
+        return IntStream.range(0, table[1])
+            .mapToObj(i -> this.string(this.buffer.getInt(table[0] + i * 8)));
+    }
+
+    @Override
+    public boolean isEnumerable() {
+        return true;
+    }
+
+    public String getPrefix() {
+        return this.prefix;
+    }
+
+    public Set<Locale> getLocales() {
+        return Collections.unmodifiableSet(this.locales.keySet());
+    }
+
+    /**
+     * Binary searches a locale's entries for a key.
+     * @return The position of the matching entry, or -1 if there is none
+     */
+    private int find(int[] table, String key) {
+        int low = 0;
+        int high = table[1] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int entry = table[0] + mid * 8;
+            int cmp = this.string(this.buffer.getInt(entry)).compareTo(key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return entry;
+            }
+        }
+
+        return -1;
+    }
+
+    private String string(int index) {
+        String ret = this.strings.get(index);
+        if (ret == null) {
+            int start = this.buffer.getInt(this.offsetsPos + index * 4);
+            int end = this.buffer.getInt(this.offsetsPos + index * 4 + 4);
+            byte[] bytes = new byte[end - start];
+            ByteBuffer view = this.buffer.duplicate();
+            //  Through Buffer, since ByteBuffer.position(int) doesn't exist on Java 8 when built with a newer JDK
+            ((Buffer) view).position(this.dataPos + start);
+            view.get(bytes);
+            ret = new String(bytes, StandardCharsets.UTF_8);
+            //  Racing decodes produce equal strings, so whichever lands is fine
+            this.strings.lazySet(index, ret);
+        }
+
+        return ret;
+    }
+}
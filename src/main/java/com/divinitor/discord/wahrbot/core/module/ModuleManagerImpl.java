@@ -1,6 +1,7 @@
 package com.divinitor.discord.wahrbot.core.module;
 
 import com.divinitor.discord.wahrbot.core.WahrBotImpl;
+import com.divinitor.discord.wahrbot.core.event.ShardedEventBus;
 import com.divinitor.discord.wahrbot.core.util.concurrent.Lockable;
 import com.divinitor.discord.wahrbot.core.util.gson.StandardGson;
 import com.github.zafarkhaja.semver.Version;
@@ -57,6 +58,26 @@ public class ModuleManagerImpl implements ModuleManager {
         this.loadedModules = new HashMap<>();
         this.lock = new ReentrantReadWriteLock();
         this.modDir = this.bot.getBotDir().resolve("module");
+        //  Attribute event subscribers that modules register themselves to the module
+        this.bot.getEventBus().setOwnerResolver(this::findOwner);
+    }
+
+    /**
+     * Finds the module whose class loader loaded an object's class.
+     * @param o The object
+     * @return The module's id, or the core owner if it isn't from a module
+     */
+    private String findOwner(Object o) {
+        ClassLoader loader = o.getClass().getClassLoader();
+        try (Lockable l = acquire(this.lock.readLock())) {
+            for (ModuleHandleImpl handle : this.loadedModules.values()) {
+                if (handle.getClassLoader() == loader) {
+                    return handle.getModuleInfo().getId();
+                }
+            }
+        }
+
+        return ShardedEventBus.CORE_OWNER;
     }
 
     @Override
@@ -201,7 +222,7 @@ public class ModuleManagerImpl implements ModuleManager {
 
             try {
                 module.init(handle);
-                this.tryRegister(module);
+                this.tryRegister(moduleId, module);
             } catch (ModuleLoadException mle) {
                 throw mle;
             } catch (Exception e) {
@@ -386,9 +407,9 @@ public class ModuleManagerImpl implements ModuleManager {
         }
     }
 
-    private void tryRegister(Object o) {
+    private void tryRegister(String moduleId, Object o) {
         try {
-            this.bot.getEventBus().register(o);
+            this.bot.getEventBus().register(o, moduleId);
         } catch (Exception ignored) {
         }
 
@@ -15,4 +15,13 @@ public interface MemberStore extends DynConfigStore {
      * Remove all data associated with this user.
      */
     void purge();
+
+    /**
+     * Fetches the given keys in a single round trip and returns a snapshot of this store that serves them without
+     * going back to Redis. Other keys and all writes go through to this store, and writes through the snapshot update
+     * it. Snapshots are meant to be short lived, such as for the duration of a single command.
+     * @param keys The keys to prefetch
+     * @return A snapshot of this store
+     */
+    MemberStore prefetch(String... keys);
 }
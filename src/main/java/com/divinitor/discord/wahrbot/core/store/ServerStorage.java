@@ -13,4 +13,30 @@ public interface ServerStorage {
      * @return A {@link ServerStore} for the server
      */
     ServerStore forServer(Guild server);
+
+    /**
+     * Adds a listener that is notified whenever a server store is written to or purged.
+     * @param listener The listener
+     */
+    void addWriteListener(StoreWriteListener listener);
+
+    /**
+     * Removes a previously added write listener.
+     * @param listener The listener
+     */
+    void removeWriteListener(StoreWriteListener listener);
+
+    /**
+     * Opts a key in to near caching. Maps and sets stored under the key are then read through a heap cache shared by
+     * every server and member store, which is invalidated across bot instances whenever they're written to through a store.
+     * @param key The store key
+     */
+    void enableNearCache(String key);
+
+    /**
+     * Checks whether a key has been opted in to near caching.
+     * @param key The store key
+     * @return True if maps and sets under the key are near cached
+     */
+    boolean isNearCacheEnabled(String key);
 }
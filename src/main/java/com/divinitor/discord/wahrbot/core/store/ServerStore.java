@@ -20,4 +20,13 @@ public interface ServerStore extends DynConfigStore {
     MemberStore forMember(Member member);
 
     void purge();
+
+    /**
+     * Fetches the given keys in a single round trip and returns a snapshot of this store that serves them without
+     * going back to Redis. Other keys and all writes go through to this store, and writes through the snapshot update
+     * it. Snapshots are meant to be short lived, such as for the duration of a single command.
+     * @param keys The keys to prefetch
+     * @return A snapshot of this store
+     */
+    ServerStore prefetch(String... keys);
 }
@@ -0,0 +1,15 @@
+package com.divinitor.discord.wahrbot.core.store;
+
+/**
+ * Listener notified when a user or server store is written to by this bot.
+ */
+@FunctionalInterface
+public interface StoreWriteListener {
+
+    /**
+     * Called after a store has been written to.
+     * @param id The ID of the user or server whose store was written
+     * @param key The key that was written, or null if the whole store was purged
+     */
+    void onWrite(long id, String key);
+}
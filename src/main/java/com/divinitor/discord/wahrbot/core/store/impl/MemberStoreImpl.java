@@ -3,9 +3,14 @@ package com.divinitor.discord.wahrbot.core.store.impl;
 import com.divinitor.discord.wahrbot.core.store.MemberStore;
 import com.divinitor.discord.wahrbot.core.util.gson.StandardGson;
 import com.divinitor.discord.wahrbot.core.util.inject.JedisProvider;
+import com.divinitor.discord.wahrbot.core.util.redis.NearCacheManager;
+import com.divinitor.discord.wahrbot.core.util.redis.NearCachedRedisMap;
+import com.divinitor.discord.wahrbot.core.util.redis.NearCachedRedisSet;
 import com.divinitor.discord.wahrbot.core.util.redis.RedisList;
 import com.divinitor.discord.wahrbot.core.util.redis.RedisMap;
+import com.divinitor.discord.wahrbot.core.util.redis.RedisPipelineDispatcher;
 import com.divinitor.discord.wahrbot.core.util.redis.RedisSet;
+import com.divinitor.discord.wahrbot.core.util.redis.ValueCodec;
 import com.google.inject.Inject;
 import net.dv8tion.jda.api.entities.Member;
 import redis.clients.jedis.Jedis;
@@ -13,6 +18,7 @@ import redis.clients.jedis.ScanParams;
 import redis.clients.jedis.ScanResult;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 
@@ -21,11 +27,17 @@ public class MemberStoreImpl implements MemberStore {
     private static final String BASE_KEY = "core.store.server";
     @Inject
     private JedisProvider provider;
+    @Inject
+    private RedisPipelineDispatcher dispatcher;
+    @Inject
+    private NearCacheManager nearCache;
     private final Member member;
+    private final ServerStorageImpl storage;
     private RedisMap<String> looseParams;
 
-    public MemberStoreImpl(Member member) {
+    public MemberStoreImpl(Member member, ServerStorageImpl storage) {
         this.member = member;
+        this.storage = storage;
     }
 
 
@@ -71,6 +83,17 @@ public class MemberStoreImpl implements MemberStore {
 
             j.del(keys.toArray(new String[keys.size()]));
         }
+
+        this.storage.getNearCachedKeys().forEach(this::invalidateNearCache);
+    }
+
+    /**
+     * Drops a near cached key everywhere after it has been replaced wholesale.
+     */
+    private void invalidateNearCache(String key) {
+        if (this.storage.isNearCacheEnabled(key)) {
+            this.nearCache.invalidateAndPublish(this.key(key));
+        }
     }
 
     @SuppressWarnings("unchecked")
@@ -80,13 +103,16 @@ public class MemberStoreImpl implements MemberStore {
             this.put(key, (String) value);
         } else if (value instanceof Map) {
             //  This will also store it in Redis so we're good
-            new RedisMap(this.provider, this.key(key), StandardGson.instance(), value.getClass(), (Map) value);
+            new RedisMap(this.provider, this.key(key), Object.class,
+                ValueCodec.compact(StandardGson.instance(), Object.class), (Map) value);
+            this.invalidateNearCache(key);
         } else if (value instanceof List) {
             //  This will also store it in Redis so we're good
             new RedisList(this.provider, this.key(key), StandardGson.instance(), value.getClass(), (List) value);
         } else if (value instanceof Set) {
             //  This will also store it in Redis so we're good
             new RedisSet(this.provider, this.key(key), StandardGson.instance(), value.getClass(), (Set) value);
+            this.invalidateNearCache(key);
         } else {
             this.put(this.key(key), this.serializer().apply(value));
         }
@@ -104,16 +130,68 @@ public class MemberStoreImpl implements MemberStore {
         if (clazz == String.class) {
             return (T) this.getString(key);
         } else if (clazz.isAssignableFrom(Map.class)) {
-            return (T) new RedisMap<>(this.provider, this.key(key), StandardGson.instance(), vClass);
+            RedisMap<V> map = new RedisMap<>(this.provider, this.key(key), vClass,
+                ValueCodec.compact(StandardGson.instance(), vClass));
+            if (this.storage.isNearCacheEnabled(key)) {
+                return (T) new NearCachedRedisMap<>(map, this.nearCache);
+            }
+
+            return (T) map;
         } else if (clazz.isAssignableFrom(List.class)) {
             return (T) new RedisList<>(this.provider, this.key(key), StandardGson.instance(), vClass);
         } else if (clazz.isAssignableFrom(Set.class)) {
-            return (T) new RedisSet<>(this.provider, this.key(key), StandardGson.instance(), vClass);
+            RedisSet<V> set = new RedisSet<>(this.provider, this.key(key), StandardGson.instance(), vClass);
+            if (this.storage.isNearCacheEnabled(key)) {
+                return (T) new NearCachedRedisSet<>(set, this.nearCache);
+            }
+
+            return (T) set;
         } else {
             return this.deserializer(clazz).apply(this.getString(key), clazz);
         }
     }
 
+    @Override
+    public CompletableFuture<String> getStringAsync(String key) {
+        return this.dispatcher.submit(p -> p.hget(this.key(), key));
+    }
+
+    @Override
+    public CompletableFuture<Void> putAsync(String key, String value) {
+        return this.dispatcher.submit(p -> p.hset(this.key(), key, value))
+            .thenApply(r -> null);
+    }
+
+    @Override
+    public CompletableFuture<Void> putAsync(String key, Object value) {
+        if (value instanceof String) {
+            return this.putAsync(key, (String) value);
+        }
+
+        //  Collections are written in bulk through their Redis views
+        this.put(key, value);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public <T> CompletableFuture<T> getObjectAsync(String key, Class<T> clazz) {
+        return this.getObjectAsync(key, clazz, String.class);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T, V> CompletableFuture<T> getObjectAsync(String key, Class<T> clazz, Class<V> vClass) {
+        if (clazz == String.class) {
+            return (CompletableFuture<T>) this.getStringAsync(key);
+        } else if (clazz.isAssignableFrom(Map.class) || clazz.isAssignableFrom(List.class)
+            || clazz.isAssignableFrom(Set.class)) {
+            //  Collections are views that don't touch Redis until they're used
+            return CompletableFuture.completedFuture(this.getObject(key, clazz, vClass));
+        }
+
+        return this.getStringAsync(key).thenApply(val -> this.deserializer(clazz).apply(val, clazz));
+    }
+
     @Override
     public String getString(String key) {
         if (this.looseParams == null) {
@@ -123,6 +201,20 @@ public class MemberStoreImpl implements MemberStore {
         return this.looseParams.get(key);
     }
 
+    @Override
+    public Map<String, String> getStrings(String... keys) {
+        if (this.looseParams == null) {
+            this.looseParams = new RedisMap<>(provider, this.key(), StandardGson.instance(), String.class);
+        }
+
+        return this.looseParams.getAll(keys);
+    }
+
+    @Override
+    public MemberStore prefetch(String... keys) {
+        return new PrefetchedStore.PrefetchedMemberStore(this, keys);
+    }
+
     @Override
     public <T> BiFunction<String, Class<T>, T> deserializer(Class<T> clazz) {
         return StandardGson.instance()::fromJson;
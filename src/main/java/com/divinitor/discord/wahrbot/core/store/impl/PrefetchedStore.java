@@ -0,0 +1,289 @@
+package com.divinitor.discord.wahrbot.core.store.impl;
+
+import com.divinitor.discord.wahrbot.core.config.dyn.BooleanDynConfigHandle;
+import com.divinitor.discord.wahrbot.core.config.dyn.DoubleDynConfigHandle;
+import com.divinitor.discord.wahrbot.core.config.dyn.DynConfigHandle;
+import com.divinitor.discord.wahrbot.core.config.dyn.DynConfigStore;
+import com.divinitor.discord.wahrbot.core.config.dyn.LongDynConfigHandle;
+import com.divinitor.discord.wahrbot.core.config.dyn.ObjectDynConfigHandle;
+import com.divinitor.discord.wahrbot.core.store.MemberStore;
+import com.divinitor.discord.wahrbot.core.store.ServerStore;
+import com.divinitor.discord.wahrbot.core.store.UserStore;
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.User;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * A snapshot of a store's loose parameters, filled by a single HMGET. Prefetched keys are served from the snapshot,
+ * everything else goes to the underlying store. Writes always go through, and update the snapshot if the key was
+ * prefetched.
+ * <p>
+ * Handles are taken from the underlying store, as they're usually held for longer than a snapshot should be.
+ * </p>
+ * @param <S> The underlying store type
+ */
+abstract class PrefetchedStore<S extends DynConfigStore> implements DynConfigStore {
+
+    protected final S delegate;
+
+    /**
+     * Prefetched values. Keys with no value map to an empty optional so we remember that they're absent.
+     */
+    private final Map<String, Optional<String>> snapshot;
+
+    PrefetchedStore(S delegate) {
+        this.delegate = delegate;
+        this.snapshot = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Fetches any of the given keys that aren't in the snapshot yet.
+     */
+    void fetch(String... keys) {
+        String[] missing = Arrays.stream(keys)
+            .filter(k -> !this.snapshot.containsKey(k))
+            .distinct()
+            .toArray(String[]::new);
+        if (missing.length == 0) {
+            return;
+        }
+
+        this.delegate.getStrings(missing).forEach((k, v) -> this.snapshot.put(k, Optional.ofNullable(v)));
+    }
+
+    /**
+     * Marks every prefetched key as absent after the underlying store has been purged.
+     */
+    void cleared() {
+        this.snapshot.replaceAll((k, v) -> Optional.empty());
+    }
+
+    private void written(String key, String value) {
+        this.snapshot.computeIfPresent(key, (k, v) -> Optional.ofNullable(value));
+    }
+
+    private static boolean isCollection(Class<?> clazz) {
+        return clazz.isAssignableFrom(Map.class) || clazz.isAssignableFrom(List.class)
+            || clazz.isAssignableFrom(Set.class);
+    }
+
+    @Override
+    public void put(String key, String value) {
+        this.delegate.put(key, value);
+        this.written(key, value);
+    }
+
+    @Override
+    public void put(String key, Object value) {
+        if (value instanceof String) {
+            this.put(key, (String) value);
+            return;
+        }
+
+        this.delegate.put(key, value);
+        this.snapshot.remove(key);
+    }
+
+    @Override
+    public String getString(String key) {
+        Optional<String> val = this.snapshot.get(key);
+        if (val == null) {
+            return this.delegate.getString(key);
+        }
+
+        return val.orElse(null);
+    }
+
+    @Override
+    public Map<String, String> getStrings(String... keys) {
+        this.fetch(keys);
+        Map<String, String> ret = new LinkedHashMap<>(keys.length * 4 / 3 + 1);
+        for (String key : keys) {
+            ret.put(key, this.getString(key));
+        }
+
+        return ret;
+    }
+
+    @Override
+    public CompletableFuture<String> getStringAsync(String key) {
+        Optional<String> val = this.snapshot.get(key);
+        if (val == null) {
+            return this.delegate.getStringAsync(key);
+        }
+
+        return CompletableFuture.completedFuture(val.orElse(null));
+    }
+
+    @Override
+    public CompletableFuture<Void> putAsync(String key, String value) {
+        return this.delegate.putAsync(key, value)
+            .thenRun(() -> this.written(key, value));
+    }
+
+    @Override
+    public CompletableFuture<Void> putAsync(String key, Object value) {
+        if (value instanceof String) {
+            return this.putAsync(key, (String) value);
+        }
+
+        this.snapshot.remove(key);
+        return this.delegate.putAsync(key, value);
+    }
+
+    @Override
+    public <T> T getObject(String key, Class<T> clazz) {
+        return this.getObject(key, clazz, String.class);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T, V> T getObject(String key, Class<T> clazz, Class<V> vClass) {
+        Optional<String> val = this.snapshot.get(key);
+        //  Collections live under their own keys, so they're never in the snapshot
+        if (val == null || isCollection(clazz)) {
+            return this.delegate.getObject(key, clazz, vClass);
+        }
+
+        if (clazz == String.class) {
+            return (T) val.orElse(null);
+        }
+
+        return val.map(v -> this.deserializer(clazz).apply(v, clazz)).orElse(null);
+    }
+
+    @Override
+    public <T> CompletableFuture<T> getObjectAsync(String key, Class<T> clazz) {
+        return this.getObjectAsync(key, clazz, String.class);
+    }
+
+    @Override
+    public <T, V> CompletableFuture<T> getObjectAsync(String key, Class<T> clazz, Class<V> vClass) {
+        if (!this.snapshot.containsKey(key) || isCollection(clazz)) {
+            return this.delegate.getObjectAsync(key, clazz, vClass);
+        }
+
+        return CompletableFuture.completedFuture(this.getObject(key, clazz, vClass));
+    }
+
+    @Override
+    public DynConfigHandle getStringHandle(String key) {
+        return this.delegate.getStringHandle(key);
+    }
+
+    @Override
+    public LongDynConfigHandle getLongHandle(String key) {
+        return this.delegate.getLongHandle(key);
+    }
+
+    @Override
+    public DoubleDynConfigHandle getDoubleHandle(String key) {
+        return this.delegate.getDoubleHandle(key);
+    }
+
+    @Override
+    public BooleanDynConfigHandle getBooleanHandle(String key) {
+        return this.delegate.getBooleanHandle(key);
+    }
+
+    @Override
+    public <T> ObjectDynConfigHandle<T> getObjectHandle(String key, Class<T> clazz) {
+        return this.delegate.getObjectHandle(key, clazz);
+    }
+
+    @Override
+    public <T> BiFunction<String, Class<T>, T> deserializer(Class<T> clazz) {
+        return this.delegate.deserializer(clazz);
+    }
+
+    @Override
+    public <T> Function<T, String> serializer() {
+        return this.delegate.serializer();
+    }
+
+    static final class PrefetchedUserStore extends PrefetchedStore<UserStore> implements UserStore {
+
+        PrefetchedUserStore(UserStore delegate, String... keys) {
+            super(delegate);
+            this.fetch(keys);
+        }
+
+        @Override
+        public User getUser() {
+            return this.delegate.getUser();
+        }
+
+        @Override
+        public void purge() {
+            this.delegate.purge();
+            this.cleared();
+        }
+
+        @Override
+        public UserStore prefetch(String... keys) {
+            this.fetch(keys);
+            return this;
+        }
+    }
+
+    static final class PrefetchedServerStore extends PrefetchedStore<ServerStore> implements ServerStore {
+
+        PrefetchedServerStore(ServerStore delegate, String... keys) {
+            super(delegate);
+            this.fetch(keys);
+        }
+
+        @Override
+        public Guild getServer() {
+            return this.delegate.getServer();
+        }
+
+        @Override
+        public MemberStore forMember(Member member) {
+            return this.delegate.forMember(member);
+        }
+
+        @Override
+        public void purge() {
+            this.delegate.purge();
+            this.cleared();
+        }
+
+        @Override
+        public ServerStore prefetch(String... keys) {
+            this.fetch(keys);
+            return this;
+        }
+    }
+
+    static final class PrefetchedMemberStore extends PrefetchedStore<MemberStore> implements MemberStore {
+
+        PrefetchedMemberStore(MemberStore delegate, String... keys) {
+            super(delegate);
+            this.fetch(keys);
+        }
+
+        @Override
+        public Member getMember() {
+            return this.delegate.getMember();
+        }
+
+        @Override
+        public void purge() {
+            this.delegate.purge();
+            this.cleared();
+        }
+
+        @Override
+        public MemberStore prefetch(String... keys) {
+            this.fetch(keys);
+            return this;
+        }
+    }
+}
@@ -2,27 +2,28 @@ package com.divinitor.discord.wahrbot.core.store.impl;
 
 import com.divinitor.discord.wahrbot.core.store.MemberStore;
 import com.divinitor.discord.wahrbot.core.store.ServerStore;
-import com.divinitor.discord.wahrbot.core.util.concurrent.Lockable;
+import com.divinitor.discord.wahrbot.core.util.cache.LongWeakValueCache;
 import com.divinitor.discord.wahrbot.core.util.discord.SnowflakeUtils;
 import com.divinitor.discord.wahrbot.core.util.gson.StandardGson;
 import com.divinitor.discord.wahrbot.core.util.inject.JedisProvider;
+import com.divinitor.discord.wahrbot.core.util.redis.NearCacheManager;
+import com.divinitor.discord.wahrbot.core.util.redis.NearCachedRedisMap;
+import com.divinitor.discord.wahrbot.core.util.redis.NearCachedRedisSet;
 import com.divinitor.discord.wahrbot.core.util.redis.RedisList;
 import com.divinitor.discord.wahrbot.core.util.redis.RedisMap;
+import com.divinitor.discord.wahrbot.core.util.redis.RedisPipelineDispatcher;
 import com.divinitor.discord.wahrbot.core.util.redis.RedisSet;
+import com.divinitor.discord.wahrbot.core.util.redis.ValueCodec;
 import com.google.inject.Inject;
 import com.google.inject.Injector;
-import gnu.trove.map.TLongObjectMap;
-import gnu.trove.map.hash.TLongObjectHashMap;
 import net.dv8tion.jda.api.entities.Guild;
 import net.dv8tion.jda.api.entities.Member;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.ScanParams;
 import redis.clients.jedis.ScanResult;
 
-import java.lang.ref.WeakReference;
 import java.util.*;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 
@@ -30,18 +31,22 @@ public class ServerStoreImpl implements ServerStore {
 
     private static final String BASE_KEY = "core.store.server";
     private final Guild guild;
+    private final ServerStorageImpl storage;
     private final Injector injector;
-    private final ReadWriteLock lock;
-    private final TLongObjectMap<WeakReference<MemberStoreImpl>> cache;
+    private final LongWeakValueCache<MemberStoreImpl> cache;
     @Inject
     private JedisProvider provider;
+    @Inject
+    private RedisPipelineDispatcher dispatcher;
+    @Inject
+    private NearCacheManager nearCache;
     private RedisMap<String> looseParams;
 
-    public ServerStoreImpl(Guild guild, Injector injector) {
+    public ServerStoreImpl(Guild guild, Injector injector, ServerStorageImpl storage) {
         this.guild = guild;
+        this.storage = storage;
         this.injector = injector;
-        this.lock = new ReentrantReadWriteLock();
-        this.cache = new TLongObjectHashMap<>();
+        this.cache = new LongWeakValueCache<>();
     }
 
     private String key(String... args) {
@@ -62,30 +67,11 @@ public class ServerStoreImpl implements ServerStore {
 
     @Override
     public MemberStore forMember(Member member) {
-        WeakReference<MemberStoreImpl> ret;
-        MemberStoreImpl rett;
-        try (Lockable rl = Lockable.acquire(this.lock.readLock())) {
-            ret = this.cache.get(member.getUser().getIdLong());
-        }
-
-        if (ret == null || ret.get() == null) {
-            try (Lockable wl = Lockable.acquire(this.lock.writeLock())) {
-                //  Re-check
-                ret = this.cache.get(member.getUser().getIdLong());
-                if (ret == null || ret.get() == null) {
-                    rett = new MemberStoreImpl(member);
-                    this.injector.injectMembers(rett);
-                    ret = new WeakReference<>(rett);
-                    this.cache.put(member.getUser().getIdLong(), ret);
-                } else {
-                    rett = ret.get();
-                }
-            }
-        } else {
-            rett = ret.get();
-        }
-
-        return rett;
+        return this.cache.get(member.getUser().getIdLong(), id -> {
+            MemberStoreImpl ret = new MemberStoreImpl(member, this.storage);
+            this.injector.injectMembers(ret);
+            return ret;
+        });
     }
 
     @Override
@@ -103,6 +89,18 @@ public class ServerStoreImpl implements ServerStore {
 
             j.del(keys.toArray(new String[keys.size()]));
         }
+
+        this.storage.getNearCachedKeys().forEach(this::invalidateNearCache);
+        this.storage.fireWrite(this.guild.getIdLong(), null);
+    }
+
+    /**
+     * Drops a near cached key everywhere after it has been replaced wholesale.
+     */
+    private void invalidateNearCache(String key) {
+        if (this.storage.isNearCacheEnabled(key)) {
+            this.nearCache.invalidateAndPublish(this.key(key));
+        }
     }
 
     @Override
@@ -112,6 +110,7 @@ public class ServerStoreImpl implements ServerStore {
         }
 
         this.looseParams.put(key, value);
+        this.storage.fireWrite(this.guild.getIdLong(), key);
     }
 
     @SuppressWarnings("unchecked")
@@ -121,13 +120,19 @@ public class ServerStoreImpl implements ServerStore {
             this.put(key, (String) value);
         } else if (value instanceof Map) {
             //  This will also store it in Redis so we're good
-            new RedisMap(this.provider, key(key), StandardGson.instance(), value.getClass(), (Map) value);
+            new RedisMap(this.provider, key(key), Object.class,
+                ValueCodec.compact(StandardGson.instance(), Object.class), (Map) value);
+            this.invalidateNearCache(key);
+            this.storage.fireWrite(this.guild.getIdLong(), key);
         } else if (value instanceof List) {
             //  This will also store it in Redis so we're good
             new RedisList(this.provider, key(key), StandardGson.instance(), value.getClass(), (List) value);
+            this.storage.fireWrite(this.guild.getIdLong(), key);
         } else if (value instanceof Set) {
             //  This will also store it in Redis so we're good
             new RedisSet(this.provider, key(key), StandardGson.instance(), value.getClass(), (Set) value);
+            this.invalidateNearCache(key);
+            this.storage.fireWrite(this.guild.getIdLong(), key);
         } else {
             this.put(this.key(key), this.serializer().apply(value));
         }
@@ -144,16 +149,68 @@ public class ServerStoreImpl implements ServerStore {
         if (clazz == String.class) {
             return (T) this.getString(key);
         } else if (clazz.isAssignableFrom(Map.class)) {
-            return (T) new RedisMap<>(this.provider, this.key(key), StandardGson.instance(), vClass);
+            RedisMap<V> map = new RedisMap<>(this.provider, this.key(key), vClass,
+                ValueCodec.compact(StandardGson.instance(), vClass));
+            if (this.storage.isNearCacheEnabled(key)) {
+                return (T) new NearCachedRedisMap<>(map, this.nearCache);
+            }
+
+            return (T) map;
         } else if (clazz.isAssignableFrom(List.class)) {
             return (T) new RedisList<>(this.provider, this.key(key), StandardGson.instance(), vClass);
         } else if (clazz.isAssignableFrom(Set.class)) {
-            return (T) new RedisSet<>(this.provider, this.key(key), StandardGson.instance(), vClass);
+            RedisSet<V> set = new RedisSet<>(this.provider, this.key(key), StandardGson.instance(), vClass);
+            if (this.storage.isNearCacheEnabled(key)) {
+                return (T) new NearCachedRedisSet<>(set, this.nearCache);
+            }
+
+            return (T) set;
         } else {
             return this.deserializer(clazz).apply(this.getString(key), clazz);
         }
     }
 
+    @Override
+    public CompletableFuture<String> getStringAsync(String key) {
+        return this.dispatcher.submit(p -> p.hget(this.key(), key));
+    }
+
+    @Override
+    public CompletableFuture<Void> putAsync(String key, String value) {
+        return this.dispatcher.submit(p -> p.hset(this.key(), key, value))
+            .thenRun(() -> this.storage.fireWrite(this.guild.getIdLong(), key));
+    }
+
+    @Override
+    public CompletableFuture<Void> putAsync(String key, Object value) {
+        if (value instanceof String) {
+            return this.putAsync(key, (String) value);
+        }
+
+        //  Collections are written in bulk through their Redis views
+        this.put(key, value);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public <T> CompletableFuture<T> getObjectAsync(String key, Class<T> clazz) {
+        return this.getObjectAsync(key, clazz, String.class);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T, V> CompletableFuture<T> getObjectAsync(String key, Class<T> clazz, Class<V> vClass) {
+        if (clazz == String.class) {
+            return (CompletableFuture<T>) this.getStringAsync(key);
+        } else if (clazz.isAssignableFrom(Map.class) || clazz.isAssignableFrom(List.class)
+            || clazz.isAssignableFrom(Set.class)) {
+            //  Collections are views that don't touch Redis until they're used
+            return CompletableFuture.completedFuture(this.getObject(key, clazz, vClass));
+        }
+
+        return this.getStringAsync(key).thenApply(val -> this.deserializer(clazz).apply(val, clazz));
+    }
+
     @Override
     public String getString(String key) {
         if (this.looseParams == null) {
@@ -163,6 +220,20 @@ public class ServerStoreImpl implements ServerStore {
         return this.looseParams.get(key);
     }
 
+    @Override
+    public Map<String, String> getStrings(String... keys) {
+        if (this.looseParams == null) {
+            this.looseParams = new RedisMap<>(provider, this.key(), StandardGson.instance(), String.class);
+        }
+
+        return this.looseParams.getAll(keys);
+    }
+
+    @Override
+    public ServerStore prefetch(String... keys) {
+        return new PrefetchedStore.PrefetchedServerStore(this, keys);
+    }
+
     @Override
     public <T> BiFunction<String, Class<T>, T> deserializer(Class<T> clazz) {
         return StandardGson.instance()::fromJson;
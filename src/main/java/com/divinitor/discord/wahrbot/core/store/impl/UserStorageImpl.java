@@ -1,56 +1,76 @@
 package com.divinitor.discord.wahrbot.core.store.impl;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.divinitor.discord.wahrbot.core.WahrBot;
 import com.divinitor.discord.wahrbot.core.store.UserStorage;
 import com.divinitor.discord.wahrbot.core.store.UserStore;
-import com.divinitor.discord.wahrbot.core.util.concurrent.Lockable;
+import com.divinitor.discord.wahrbot.core.store.StoreWriteListener;
+import com.divinitor.discord.wahrbot.core.util.cache.LongWeakValueCache;
 import com.google.inject.Inject;
 import com.google.inject.Injector;
-import gnu.trove.map.TLongObjectMap;
-import gnu.trove.map.hash.TLongObjectHashMap;
 import net.dv8tion.jda.api.entities.User;
 
-import java.lang.ref.WeakReference;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class UserStorageImpl implements UserStorage {
 
-    private final ReadWriteLock lock;
-    private final TLongObjectMap<WeakReference<UserStoreImpl>> cache;
+    private final LongWeakValueCache<UserStoreImpl> cache;
     private final Injector injector;
+    private final List<StoreWriteListener> writeListeners;
+    private final Set<String> nearCachedKeys;
 
     @Inject
-    public UserStorageImpl(Injector injector) {
+    public UserStorageImpl(Injector injector, MetricRegistry metrics) {
         this.injector = injector;
-        this.lock = new ReentrantReadWriteLock();
-        this.cache = new TLongObjectHashMap<>();
+        this.cache = new LongWeakValueCache<>();
+        metrics.register(MetricRegistry.name(WahrBot.class, "store", "user", "cached"),
+            (Gauge<Integer>) this.cache::size);
+        metrics.register(MetricRegistry.name(WahrBot.class, "store", "user", "evictions"),
+            (Gauge<Long>) this.cache::evictionCount);
+        this.writeListeners = new CopyOnWriteArrayList<>();
+        this.nearCachedKeys = ConcurrentHashMap.newKeySet();
     }
 
     @Override
     public UserStore forUser(User user) {
-        WeakReference<UserStoreImpl> ret;
-        UserStoreImpl rett;
-        try (Lockable rl = Lockable.acquire(this.lock.readLock())) {
-            ret = this.cache.get(user.getIdLong());
-        }
+        return this.cache.get(user.getIdLong(), id -> {
+            UserStoreImpl ret = new UserStoreImpl(user, this);
+            this.injector.injectMembers(ret);
+            return ret;
+        });
+    }
 
-        if (ret == null || ret.get() == null) {
-            try (Lockable wl = Lockable.acquire(this.lock.writeLock())) {
-                //  Re-check
-                ret = this.cache.get(user.getIdLong());
-                if (ret == null || ret.get() == null) {
-                    rett = new UserStoreImpl(user);
-                    this.injector.injectMembers(rett);
-                    ret = new WeakReference<>(rett);
-                    this.cache.put(user.getIdLong(), ret);
-                } else {
-                    rett = ret.get();
-                }
-            }
-        } else {
-            rett = ret.get();
-        }
+    @Override
+    public void addWriteListener(StoreWriteListener listener) {
+        this.writeListeners.add(listener);
+    }
 
-        return rett;
+    @Override
+    public void removeWriteListener(StoreWriteListener listener) {
+        this.writeListeners.remove(listener);
+    }
+
+    @Override
+    public void enableNearCache(String key) {
+        this.nearCachedKeys.add(key);
+    }
+
+    @Override
+    public boolean isNearCacheEnabled(String key) {
+        return this.nearCachedKeys.contains(key);
+    }
+
+    Set<String> getNearCachedKeys() {
+        return this.nearCachedKeys;
+    }
+
+    void fireWrite(long id, String key) {
+        for (StoreWriteListener listener : this.writeListeners) {
+            listener.onWrite(id, key);
+        }
     }
 }
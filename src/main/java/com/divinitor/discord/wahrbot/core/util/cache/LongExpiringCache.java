@@ -0,0 +1,142 @@
+package com.divinitor.discord.wahrbot.core.util.cache;
+
+import com.divinitor.discord.wahrbot.core.util.concurrent.Lockable;
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongFunction;
+
+/**
+ * An expiring cache keyed by primitive longs, such as snowflake IDs. Keys are spread across lock stripes, each backed
+ * by a Trove map, so lookups neither box keys nor contend on a single lock. Null values are cached like any other
+ * value.
+ * @param <V> The value type
+ */
+public class LongExpiringCache<V> {
+
+    private static final int STRIPE_BITS = 4;
+
+    private final long ttlNanos;
+    private final int maximumStripeSize;
+    private final Stripe<V>[] stripes;
+
+    /**
+     * Creates a new cache.
+     * @param ttl How long values stay cached after being loaded
+     * @param unit The unit of ttl
+     * @param maximumSize The approximate maximum number of entries. Expired entries are dropped once a stripe fills up,
+     *                    and the stripe is cleared if that isn't enough.
+     */
+    @SuppressWarnings("unchecked")
+    public LongExpiringCache(long ttl, TimeUnit unit, int maximumSize) {
+        this.ttlNanos = unit.toNanos(ttl);
+        this.stripes = new Stripe[1 << STRIPE_BITS];
+        this.maximumStripeSize = Math.max(1, maximumSize >> STRIPE_BITS);
+        for (int i = 0; i < this.stripes.length; i++) {
+            this.stripes[i] = new Stripe<>();
+        }
+    }
+
+    /**
+     * Gets the cached value for a key, loading and caching it if it is absent or expired.
+     * @param key The key
+     * @param loader Loads the value for a key. Called without any locks held.
+     * @return The value, which may be null
+     */
+    public V get(long key, LongFunction<? extends V> loader) {
+        Stripe<V> stripe = this.stripe(key);
+        long now = System.nanoTime();
+        long generation;
+        try (Lockable rl = Lockable.acquire(stripe.lock.readLock())) {
+            Entry<V> entry = stripe.map.get(key);
+            if (entry != null && now - entry.expiresAt < 0) {
+                return entry.value;
+            }
+
+            generation = stripe.generation;
+        }
+
+        V value = loader.apply(key);
+        try (Lockable wl = Lockable.acquire(stripe.lock.writeLock())) {
+            //  Don't cache the value if an invalidation raced with the load
+            if (stripe.generation == generation) {
+                if (stripe.map.size() >= this.maximumStripeSize) {
+                    stripe.map.retainEntries((k, e) -> now - e.expiresAt < 0);
+                    if (stripe.map.size() >= this.maximumStripeSize) {
+                        stripe.map.clear();
+                    }
+                }
+
+                stripe.map.put(key, new Entry<>(value, now + this.ttlNanos));
+            }
+        }
+
+        return value;
+    }
+
+    /**
+     * Removes a key from the cache.
+     * @param key The key
+     */
+    public void invalidate(long key) {
+        Stripe<V> stripe = this.stripe(key);
+        try (Lockable wl = Lockable.acquire(stripe.lock.writeLock())) {
+            stripe.map.remove(key);
+            ++stripe.generation;
+        }
+    }
+
+    /**
+     * Removes every key from the cache.
+     */
+    public void invalidateAll() {
+        for (Stripe<V> stripe : this.stripes) {
+            try (Lockable wl = Lockable.acquire(stripe.lock.writeLock())) {
+                stripe.map.clear();
+                ++stripe.generation;
+            }
+        }
+    }
+
+    /**
+     * Gets the number of cached entries, including any that have expired but not yet been dropped.
+     * @return The number of entries
+     */
+    public int size() {
+        int ret = 0;
+        for (Stripe<V> stripe : this.stripes) {
+            try (Lockable rl = Lockable.acquire(stripe.lock.readLock())) {
+                ret += stripe.map.size();
+            }
+        }
+
+        return ret;
+    }
+
+    private Stripe<V> stripe(long key) {
+        int hash = (int) (key ^ (key >>> 32)) * 0x9E3779B9;
+        return this.stripes[hash >>> (32 - STRIPE_BITS)];
+    }
+
+    private static class Stripe<V> {
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private final TLongObjectMap<Entry<V>> map = new TLongObjectHashMap<>();
+        /**
+         * Incremented on every invalidation
+         */
+        private long generation;
+    }
+
+    private static class Entry<V> {
+        private final V value;
+        private final long expiresAt;
+
+        Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.divinitor.discord.wahrbot.core.util.cache;
+
+import com.divinitor.discord.wahrbot.core.util.concurrent.Lockable;
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongFunction;
+
+/**
+ * A cache of weakly referenced values keyed by primitive longs, such as snowflake IDs. Values stay cached for as long
+ * as something else holds on to them, and at most one value is loaded per key while it's reachable.
+ * <p>
+ * Keys are spread across lock stripes, each backed by a Trove map, so lookups neither box keys nor contend on a single
+ * lock. Entries whose values have been collected are dropped as their references are enqueued, on the next load or
+ * call to {@link #cleanUp()}, rather than piling up in the map.
+ * </p>
+ * @param <V> The value type
+ */
+public class LongWeakValueCache<V> {
+
+    private static final int STRIPE_BITS = 4;
+
+    private final Stripe<V>[] stripes;
+    private final ReferenceQueue<V> queue;
+    private final LongAdder evictions;
+
+    @SuppressWarnings("unchecked")
+    public LongWeakValueCache() {
+        this.stripes = new Stripe[1 << STRIPE_BITS];
+        for (int i = 0; i < this.stripes.length; i++) {
+            this.stripes[i] = new Stripe<>();
+        }
+
+        this.queue = new ReferenceQueue<>();
+        this.evictions = new LongAdder();
+    }
+
+    /**
+     * Gets the cached value for a key, loading and caching it if it is absent or has been collected.
+     * @param key The key
+     * @param loader Loads the value for a key. Called with the key's stripe locked, so it's called at most once per
+     *               key at a time and must not use this cache.
+     * @return The value
+     */
+    public V get(long key, LongFunction<? extends V> loader) {
+        Stripe<V> stripe = this.stripe(key);
+        try (Lockable rl = Lockable.acquire(stripe.lock.readLock())) {
+            KeyedReference<V> ref = stripe.map.get(key);
+            V value = ref == null ? null : ref.get();
+            if (value != null) {
+                return value;
+            }
+        }
+
+        this.cleanUp();
+        try (Lockable wl = Lockable.acquire(stripe.lock.writeLock())) {
+            //  Re-check
+            KeyedReference<V> ref = stripe.map.get(key);
+            V value = ref == null ? null : ref.get();
+            if (value == null) {
+                value = loader.apply(key);
+                stripe.map.put(key, new KeyedReference<>(key, value, this.queue));
+            }
+
+            return value;
+        }
+    }
+
+    /**
+     * Gets the cached value for a key without loading it.
+     * @param key The key
+     * @return The value, or null if it isn't cached
+     */
+    public V getIfPresent(long key) {
+        Stripe<V> stripe = this.stripe(key);
+        try (Lockable rl = Lockable.acquire(stripe.lock.readLock())) {
+            KeyedReference<V> ref = stripe.map.get(key);
+            return ref == null ? null : ref.get();
+        }
+    }
+
+    /**
+     * Drops entries whose values have been collected.
+     */
+    public void cleanUp() {
+        Reference<? extends V> polled;
+        while ((polled = this.queue.poll()) != null) {
+            KeyedReference<?> ref = (KeyedReference<?>) polled;
+            Stripe<V> stripe = this.stripe(ref.key);
+            try (Lockable wl = Lockable.acquire(stripe.lock.writeLock())) {
+                //  The key may have been reloaded since, in which case the new entry stays
+                if (stripe.map.get(ref.key) == ref) {
+                    stripe.map.remove(ref.key);
+                    this.evictions.increment();
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the number of entries, including any whose values have been collected but not yet dropped.
+     * @return The number of entries
+     */
+    public int size() {
+        int ret = 0;
+        for (Stripe<V> stripe : this.stripes) {
+            try (Lockable rl = Lockable.acquire(stripe.lock.readLock())) {
+                ret += stripe.map.size();
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Gets the number of entries dropped so far because their values were collected.
+     * @return The number of evictions
+     */
+    public long evictionCount() {
+        return this.evictions.sum();
+    }
+
+    private Stripe<V> stripe(long key) {
+        int hash = (int) (key ^ (key >>> 32)) * 0x9E3779B9;
+        return this.stripes[hash >>> (32 - STRIPE_BITS)];
+    }
+
+    private static class Stripe<V> {
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private final TLongObjectMap<KeyedReference<V>> map = new TLongObjectHashMap<>();
+    }
+
+    private static class KeyedReference<V> extends WeakReference<V> {
+        private final long key;
+
+        KeyedReference(long key, V value, ReferenceQueue<? super V> queue) {
+            super(value, queue);
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.divinitor.discord.wahrbot.core.util.concurrent;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Access to virtual threads (JDK 21+) from code that is still built for Java 8.
+ * <p>
+ * The executor factory is looked up at runtime, so the same jar runs on older JVMs, where {@link #isAvailable()} is
+ * simply false.
+ * </p>
+ */
+public final class VirtualThreads {
+
+    /**
+     * Handle to {@code Executors.newVirtualThreadPerTaskExecutor()}, or null if this JVM doesn't have virtual threads
+     */
+    private static final MethodHandle NEW_PER_TASK_EXECUTOR = findPerTaskExecutor();
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return Whether this JVM supports virtual threads
+     */
+    public static boolean isAvailable() {
+        return NEW_PER_TASK_EXECUTOR != null;
+    }
+
+    /**
+     * Creates an executor that starts a new virtual thread for each task.
+     * @return The executor
+     * @throws UnsupportedOperationException If this JVM doesn't support virtual threads
+     */
+    public static ExecutorService newPerTaskExecutor() {
+        if (NEW_PER_TASK_EXECUTOR == null) {
+            throw new UnsupportedOperationException("Virtual threads require JDK 21 or newer, running on " +
+                System.getProperty("java.version"));
+        }
+
+        try {
+            return (ExecutorService) NEW_PER_TASK_EXECUTOR.invokeExact();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException("Unable to create virtual thread executor", t);
+        }
+    }
+
+    private static MethodHandle findPerTaskExecutor() {
+        try {
+            return MethodHandles.publicLookup().findStatic(Executors.class, "newVirtualThreadPerTaskExecutor",
+                MethodType.methodType(ExecutorService.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+    }
+}
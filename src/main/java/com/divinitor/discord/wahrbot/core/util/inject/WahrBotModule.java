@@ -1,5 +1,6 @@
 package com.divinitor.discord.wahrbot.core.util.inject;
 
+import com.codahale.metrics.MetricRegistry;
 import com.divinitor.discord.wahrbot.core.WahrBot;
 import com.divinitor.discord.wahrbot.core.command.CommandDispatcher;
 import com.divinitor.discord.wahrbot.core.config.BotConfig;
@@ -8,6 +9,8 @@ import com.divinitor.discord.wahrbot.core.i18n.Localizer;
 import com.divinitor.discord.wahrbot.core.module.ModuleManager;
 import com.divinitor.discord.wahrbot.core.service.ServiceBus;
 import com.divinitor.discord.wahrbot.core.util.SQLConnectionProvider;
+import com.divinitor.discord.wahrbot.core.util.redis.RedisInvalidationBus;
+import com.divinitor.discord.wahrbot.core.util.redis.RedisPipelineDispatcher;
 import com.google.inject.AbstractModule;
 import net.dv8tion.jda.api.JDA;
 import redis.clients.jedis.Jedis;
@@ -38,6 +41,12 @@ public class WahrBotModule extends AbstractModule {
         bind(Jedis.class).toProvider(this.bot.getJedisPool()::getResource);
         //  Jedis provider (deferred loading)
         bind(JedisProvider.class).toInstance(new JedisProvider(this.bot.getJedisPool()::getResource));
+        //  Redis invalidation bus -> bot.getInvalidationBus()
+        bind(RedisInvalidationBus.class).toProvider(this.bot::getInvalidationBus);
+        //  Redis pipeline dispatcher -> bot.getPipelineDispatcher()
+        bind(RedisPipelineDispatcher.class).toProvider(this.bot::getPipelineDispatcher);
+        //  Metric registry -> bot.getMetrics()
+        bind(MetricRegistry.class).toProvider(this.bot::getMetrics);
         //  A bit of a misrepresentation, since the provider is a singleton, but the Connections are not.
         if (this.bot.getDataSource() != null) {
             bind(SQLConnectionProvider.class).toInstance(this.bot.getDataSource()::getConnection);
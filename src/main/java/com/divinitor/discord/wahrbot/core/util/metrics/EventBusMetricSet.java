@@ -1,26 +1,43 @@
 package com.divinitor.discord.wahrbot.core.util.metrics;
 
+import com.codahale.metrics.Gauge;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.Metric;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.MetricSet;
 import com.divinitor.discord.wahrbot.core.WahrBot;
-import com.google.common.eventbus.EventBus;
-import com.google.common.eventbus.Subscribe;
+import com.divinitor.discord.wahrbot.core.event.ShardedEventBus;
 
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
 
 /**
  * A set of metrics for the event bus, tracking event rate, error rates, etc.
+ * <p>
+ * Events are marked by whoever posts them rather than by subscribing to the bus, so metering doesn't cost a dispatch
+ * per event. Meters count with striped adders, so marking from many threads doesn't contend.
+ * </p>
  */
 public class EventBusMetricSet implements MetricSet {
 
     /**
      * The event bus to monitor
      */
-    private final EventBus eventBus;
+    private final ShardedEventBus eventBus;
+
+    /**
+     * The shared executor to monitor
+     */
+    private final ExecutorService executor;
+
+    /**
+     * The registry to register event type meters in
+     */
+    private final MetricRegistry registry;
 
     /**
      * The event meter
@@ -32,20 +49,58 @@ public class EventBusMetricSet implements MetricSet {
      */
     private final Meter errorMeter;
 
-    public EventBusMetricSet(EventBus eventBus) {
+    /**
+     * The meter for events dropped because nothing subscribes to them
+     */
+    private final Meter droppedMeter;
+
+    /**
+     * Meters for each event class, created when an event of that class is first posted
+     */
+    private final Map<Class<?>, Meter> eventTypeMeters;
+
+    /**
+     * Meters for each dropped event class, created when an event of that class is first dropped
+     */
+    private final Map<Class<?>, Meter> droppedTypeMeters;
+
+    public EventBusMetricSet(ShardedEventBus eventBus, ExecutorService executor, MetricRegistry registry) {
         this.eventBus = eventBus;
-        this.eventBus.register(this);
+        this.executor = executor;
+        this.registry = registry;
         this.eventMeter = new Meter();
         this.errorMeter = new Meter();
+        this.droppedMeter = new Meter();
+        this.eventTypeMeters = new ConcurrentHashMap<>();
+        this.droppedTypeMeters = new ConcurrentHashMap<>();
     }
 
     /**
-     * Listens for all events from the event bus
+     * Record an event being posted
      * @param event The event
      */
-    @Subscribe
-    public void handle(Object event) {
+    public void mark(Object event) {
         this.eventMeter.mark();
+        this.typeMeter(this.eventTypeMeters, "events", event.getClass()).mark();
+    }
+
+    /**
+     * Record an event being dropped without being posted, because nothing subscribes to it
+     * @param event The event
+     */
+    public void markDropped(Object event) {
+        this.droppedMeter.mark();
+        this.typeMeter(this.droppedTypeMeters, "dropped", event.getClass()).mark();
+    }
+
+    private Meter typeMeter(Map<Class<?>, Meter> meters, String name, Class<?> cls) {
+        Meter meter = meters.get(cls);
+        if (meter == null) {
+            meter = meters.computeIfAbsent(cls, c ->
+                this.registry.meter(MetricRegistry.name(WahrBot.class, "eventbus", name, c.getName())));
+        }
+
+        return meter;
     }
 
     /**
@@ -60,6 +115,20 @@ public class EventBusMetricSet implements MetricSet {
         Map<String, Metric> ret = new HashMap<>();
         ret.put(MetricRegistry.name(WahrBot.class, "eventbus", "events"), this.eventMeter);
         ret.put(MetricRegistry.name(WahrBot.class, "eventbus", "errors"), this.errorMeter);
+        ret.put(MetricRegistry.name(WahrBot.class, "eventbus", "dropped"), this.droppedMeter);
+        ret.put(MetricRegistry.name(WahrBot.class, "eventbus", "lanes", "queued"),
+            (Gauge<Integer>) this.eventBus::getQueuedCount);
+        ret.put(MetricRegistry.name(WahrBot.class, "eventbus", "lanes", "maxqueued"),
+            (Gauge<Integer>) this.eventBus::getMaxQueuedCount);
+        ret.put(MetricRegistry.name(WahrBot.class, "eventbus", "lanes", "active"),
+            (Gauge<Integer>) this.eventBus::getActiveCount);
+        if (this.executor instanceof ThreadPoolExecutor) {
+            ThreadPoolExecutor pool = (ThreadPoolExecutor) this.executor;
+            ret.put(MetricRegistry.name(WahrBot.class, "executor", "queued"),
+                (Gauge<Integer>) () -> pool.getQueue().size());
+            ret.put(MetricRegistry.name(WahrBot.class, "executor", "active"),
+                (Gauge<Integer>) pool::getActiveCount);
+        }
 
         return Collections.unmodifiableMap(ret);
     }
@@ -0,0 +1,143 @@
+package com.divinitor.discord.wahrbot.core.util.redis;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Stores primitive wrappers as a tag byte followed by their big endian binary form, so a snowflake takes 9 bytes
+ * instead of up to 20 characters of JSON, and skips Gson entirely for them. Anything else is stored as JSON, except
+ * that a codec for {@code String} stores strings as plain UTF-8, the same as {@link StringValueCodec}.
+ * <p>
+ * Tags are all control characters that can't begin a JSON document, so values without a matching tag are read as
+ * JSON. This keeps values written by {@link JsonValueCodec} readable. Tagged values are converted to the requested
+ * type the same way their JSON would have been, so reading an {@code Integer} as a {@code Long} or as a
+ * {@code String} gives the same result as before. A plain string that starts with a tag byte, or with the escape
+ * byte itself, is written with an escape byte in front so it can't be mistaken for a tagged value.
+ * @param <V> The value type
+ */
+final class CompactValueCodec<V> implements ValueCodec<V> {
+
+    private static final byte TAG_LONG = 0x01;
+    private static final byte TAG_INT = 0x02;
+    private static final byte TAG_SHORT = 0x03;
+    private static final byte TAG_BYTE = 0x04;
+    private static final byte TAG_DOUBLE = 0x05;
+    private static final byte TAG_FLOAT = 0x06;
+    private static final byte TAG_CHAR = 0x07;
+    private static final byte TAG_FALSE = 0x08;
+    private static final byte TAG_TRUE = 0x09;
+    /**
+     * Marks a plain string whose first byte would otherwise read as a tag
+     */
+    private static final byte ESCAPE = 0x10;
+
+    private final Gson gson;
+    private final Class<V> vClass;
+
+    CompactValueCodec(Gson gson, Class<V> vClass) {
+        this.gson = gson;
+        this.vClass = vClass;
+    }
+
+    @Override
+    public byte[] encode(V value) {
+        Object o = value;
+        if (o instanceof String && this.vClass == String.class) {
+            byte[] bytes = ((String) o).getBytes(StandardCharsets.UTF_8);
+            if (bytes.length == 0 || bytes[0] < TAG_LONG || bytes[0] > ESCAPE) {
+                return bytes;
+            }
+
+            byte[] escaped = new byte[bytes.length + 1];
+            escaped[0] = ESCAPE;
+            System.arraycopy(bytes, 0, escaped, 1, bytes.length);
+            return escaped;
+        } else if (o instanceof Long) {
+            return ByteBuffer.allocate(9).put(TAG_LONG).putLong((Long) o).array();
+        } else if (o instanceof Integer) {
+            return ByteBuffer.allocate(5).put(TAG_INT).putInt((Integer) o).array();
+        } else if (o instanceof Short) {
+            return ByteBuffer.allocate(3).put(TAG_SHORT).putShort((Short) o).array();
+        } else if (o instanceof Byte) {
+            return new byte[]{TAG_BYTE, (Byte) o};
+        } else if (o instanceof Double) {
+            return ByteBuffer.allocate(9).put(TAG_DOUBLE).putDouble((Double) o).array();
+        } else if (o instanceof Float) {
+            return ByteBuffer.allocate(5).put(TAG_FLOAT).putFloat((Float) o).array();
+        } else if (o instanceof Character) {
+            return ByteBuffer.allocate(3).put(TAG_CHAR).putChar((Character) o).array();
+        } else if (o instanceof Boolean) {
+            return new byte[]{(Boolean) o ? TAG_TRUE : TAG_FALSE};
+        }
+
+        return this.gson.toJson(value).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public V decode(byte[] data) {
+        if (data.length != 0 && data[0] == ESCAPE && this.vClass.isAssignableFrom(String.class)) {
+            return this.vClass.cast(new String(data, 1, data.length - 1, StandardCharsets.UTF_8));
+        }
+
+        Object tagged = data.length == 0 ? null : decodeTagged(data);
+        if (tagged != null) {
+            if (this.vClass.isInstance(tagged)) {
+                return this.vClass.cast(tagged);
+            }
+
+            if (this.vClass == String.class) {
+                //  Same as the JSON text the value used to be stored as
+                return this.vClass.cast(String.valueOf(tagged));
+            }
+
+            //  Convert through the JSON form, so an Integer can be read as a Long and so on
+            return this.gson.fromJson(this.gson.toJsonTree(tagged), this.vClass);
+        }
+
+        String text = new String(data, StandardCharsets.UTF_8);
+        if (this.vClass == String.class) {
+            return this.vClass.cast(text);
+        }
+
+        //  Not something we wrote in binary, so it must be JSON
+        try {
+            return this.gson.fromJson(text, this.vClass);
+        } catch (JsonParseException e) {
+            //  A plain string written by a String codec
+            if (this.vClass.isAssignableFrom(String.class)) {
+                return this.vClass.cast(text);
+            }
+
+            throw e;
+        }
+    }
+
+    private static Object decodeTagged(byte[] data) {
+        ByteBuffer buf = ByteBuffer.wrap(data, 1, data.length - 1);
+        switch (data[0]) {
+            case TAG_LONG:
+                return data.length == 9 ? buf.getLong() : null;
+            case TAG_INT:
+                return data.length == 5 ? buf.getInt() : null;
+            case TAG_SHORT:
+                return data.length == 3 ? buf.getShort() : null;
+            case TAG_BYTE:
+                return data.length == 2 ? data[1] : null;
+            case TAG_DOUBLE:
+                return data.length == 9 ? buf.getDouble() : null;
+            case TAG_FLOAT:
+                return data.length == 5 ? buf.getFloat() : null;
+            case TAG_CHAR:
+                return data.length == 3 ? buf.getChar() : null;
+            case TAG_FALSE:
+                return data.length == 1 ? Boolean.FALSE : null;
+            case TAG_TRUE:
+                return data.length == 1 ? Boolean.TRUE : null;
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.divinitor.discord.wahrbot.core.util.redis;
+
+/**
+ * Receives cache invalidations from a {@link RedisInvalidationBus} channel.
+ */
+public interface InvalidationListener {
+
+    /**
+     * Called when a single key has changed.
+     * @param key The key that changed
+     */
+    void invalidate(String key);
+
+    /**
+     * Called when any key may have changed, such as after the bus reconnects and may have missed messages.
+     */
+    void invalidateAll();
+}
@@ -0,0 +1,30 @@
+package com.divinitor.discord.wahrbot.core.util.redis;
+
+import com.google.gson.Gson;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Stores values as UTF-8 JSON.
+ * @param <V> The value type
+ */
+final class JsonValueCodec<V> implements ValueCodec<V> {
+
+    private final Gson gson;
+    private final Class<V> vClass;
+
+    JsonValueCodec(Gson gson, Class<V> vClass) {
+        this.gson = gson;
+        this.vClass = vClass;
+    }
+
+    @Override
+    public byte[] encode(V value) {
+        return this.gson.toJson(value).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public V decode(byte[] data) {
+        return this.gson.fromJson(new String(data, StandardCharsets.UTF_8), this.vClass);
+    }
+}
@@ -0,0 +1,257 @@
+package com.divinitor.discord.wahrbot.core.util.redis;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.divinitor.discord.wahrbot.core.WahrBot;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Shared heap cache behind {@link NearCachedRedisMap} and {@link NearCachedRedisSet}. Reads are cached per Redis key
+ * and field in a single bounded, expiring cache, so every wrapper over the same Redis key shares its entries. Writes
+ * made through a wrapper drop the key locally and broadcast the invalidation to other instances over the
+ * {@link RedisInvalidationBus}.
+ * <p>
+ * Each Redis key has an entry that tracks its cached fields, so invalidating a key only touches that key's fields.
+ * Invalidation replaces the entry, which also serves as the key's generation: a load started against a replaced
+ * entry isn't cached, while loads of other keys are unaffected.
+ * </p>
+ */
+@Singleton
+public class NearCacheManager implements InvalidationListener {
+
+    public static final String INVALIDATION_CHANNEL = "nearcache";
+
+    public static final long DEFAULT_MAXIMUM_SIZE = 10_000;
+
+    public static final long DEFAULT_TTL_MINUTES = 5;
+
+    private final RedisInvalidationBus bus;
+
+    /**
+     * Cached field values, bounded and expired across all keys
+     */
+    private final Cache<FieldKey, Object> cache;
+
+    /**
+     * The current entry for each Redis key with cached fields
+     */
+    private final ConcurrentMap<String, KeyEntry> keys;
+
+    private final Meter hits;
+    private final Meter misses;
+    private final Meter evictions;
+
+    @Inject
+    public NearCacheManager(RedisInvalidationBus bus, MetricRegistry metrics) {
+        this(bus, metrics, DEFAULT_MAXIMUM_SIZE, DEFAULT_TTL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Creates a new near cache and subscribes it to invalidations.
+     * @param bus The bus to send and receive invalidations on
+     * @param metrics The registry to register hit, miss and eviction meters in
+     * @param maximumSize The maximum number of cached fields, across all keys
+     * @param ttl How long fields stay cached after being loaded
+     * @param unit The unit of ttl
+     */
+    public NearCacheManager(RedisInvalidationBus bus, MetricRegistry metrics, long maximumSize, long ttl,
+                            TimeUnit unit) {
+        this.bus = bus;
+        this.keys = new ConcurrentHashMap<>();
+        this.hits = metrics.meter(MetricRegistry.name(WahrBot.class, "nearcache", "hits"));
+        this.misses = metrics.meter(MetricRegistry.name(WahrBot.class, "nearcache", "misses"));
+        this.evictions = metrics.meter(MetricRegistry.name(WahrBot.class, "nearcache", "evictions"));
+        this.cache = CacheBuilder.newBuilder()
+            .maximumSize(maximumSize)
+            .expireAfterWrite(ttl, unit)
+            .<FieldKey, Object>removalListener(n -> {
+                if (n.wasEvicted()) {
+                    this.evictions.mark();
+                }
+
+                //  The field is still cached, just with a new value
+                if (n.getCause() == RemovalCause.REPLACED) {
+                    return;
+                }
+
+                this.removed(n.getKey());
+            })
+            .build();
+        this.bus.subscribe(INVALIDATION_CHANNEL, this);
+    }
+
+    /**
+     * Gets a cached field, loading it if it isn't cached.
+     * @param key The Redis key
+     * @param field The field within the key
+     * @param loader Loads the field from Redis. Must not return null.
+     * @param <T> The field value type
+     * @return The field value
+     */
+    @SuppressWarnings("unchecked")
+    <T> T get(String key, String field, Supplier<T> loader) {
+        KeyEntry entry = this.keys.computeIfAbsent(key, KeyEntry::new);
+        Object ret = this.cache.getIfPresent(new FieldKey(entry, field));
+        if (ret != null) {
+            this.hits.mark();
+            return (T) ret;
+        }
+
+        this.misses.mark();
+        T value = loader.get();
+        this.put(entry, field, value);
+        return value;
+    }
+
+    /**
+     * Gets several cached fields of a key, loading the ones that aren't cached together.
+     * @param key The Redis key
+     * @param fields The fields within the key
+     * @param loader Loads the given fields from Redis. Must return a non-null value for each of them.
+     * @param <T> The field value type
+     * @return The field values
+     */
+    @SuppressWarnings("unchecked")
+    <T> Map<String, T> getAll(String key, Collection<String> fields, Function<Set<String>, Map<String, T>> loader) {
+        KeyEntry entry = this.keys.computeIfAbsent(key, KeyEntry::new);
+        Map<String, T> ret = new HashMap<>();
+        Set<String> missing = new LinkedHashSet<>();
+        for (String field : fields) {
+            Object value = this.cache.getIfPresent(new FieldKey(entry, field));
+            if (value != null) {
+                this.hits.mark();
+                ret.put(field, (T) value);
+            } else if (missing.add(field)) {
+                this.misses.mark();
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            Map<String, T> loaded = loader.apply(missing);
+            loaded.forEach((field, value) -> this.put(entry, field, value));
+            ret.putAll(loaded);
+        }
+
+        return ret;
+    }
+
+    private void put(KeyEntry entry, String field, Object value) {
+        //  Don't cache the value if the key was invalidated while it was loading
+        if (this.keys.get(entry.key) != entry) {
+            return;
+        }
+
+        FieldKey fieldKey = new FieldKey(entry, field);
+        entry.fields.add(field);
+        this.cache.put(fieldKey, value);
+        //  An invalidation may have replaced the entry after the check, but before its fields were cleared
+        if (this.keys.get(entry.key) != entry) {
+            this.cache.invalidate(fieldKey);
+        }
+    }
+
+    private void removed(FieldKey fieldKey) {
+        KeyEntry entry = fieldKey.entry;
+        entry.fields.remove(fieldKey.field);
+        if (entry.fields.isEmpty()) {
+            this.keys.remove(entry.key, entry);
+        }
+    }
+
+    /**
+     * Drops a key from this instance's cache and tells every other instance to do the same. Call this after writing
+     * to a near cached key.
+     * @param key The Redis key that was written to
+     */
+    public void invalidateAndPublish(String key) {
+        this.invalidate(key);
+        this.bus.publish(INVALIDATION_CHANNEL, key);
+    }
+
+    @Override
+    public void invalidate(String key) {
+        KeyEntry entry = this.keys.remove(key);
+        if (entry != null) {
+            for (String field : entry.fields) {
+                this.cache.invalidate(new FieldKey(entry, field));
+            }
+        }
+    }
+
+    @Override
+    public void invalidateAll() {
+        this.keys.clear();
+        this.cache.invalidateAll();
+    }
+
+    /**
+     * Gets the number of cached fields.
+     * @return The approximate number of cached fields
+     */
+    public long size() {
+        return this.cache.size();
+    }
+
+    /**
+     * A Redis key's cached fields. Replaced when the key is invalidated, so fields cached under an old entry can never
+     * be read again.
+     */
+    private static final class KeyEntry {
+
+        private final String key;
+        private final Set<String> fields;
+
+        KeyEntry(String key) {
+            this.key = key;
+            this.fields = ConcurrentHashMap.newKeySet();
+        }
+    }
+
+    /**
+     * A field of a particular key entry. Entries compare by identity.
+     */
+    private static final class FieldKey {
+
+        private final KeyEntry entry;
+        private final String field;
+
+        FieldKey(KeyEntry entry, String field) {
+            this.entry = entry;
+            this.field = field;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+
+            if (!(o instanceof FieldKey)) {
+                return false;
+            }
+
+            FieldKey that = (FieldKey) o;
+            return this.entry == that.entry && this.field.equals(that.field);
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(this.entry) * 31 + this.field.hashCode();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.divinitor.discord.wahrbot.core.util.redis;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * A {@link RedisMap} decorator that serves {@link #get(Object)} and {@link #containsKey(Object)} from a
+ * {@link NearCacheManager}. Writes through this map go straight to Redis and invalidate the key on every instance.
+ * Views are read only, since writes through them couldn't be tracked, and aren't cached.
+ * @param <V> The value type
+ */
+public class NearCachedRedisMap<V> implements Map<String, V> {
+
+    private final RedisMap<V> delegate;
+    private final NearCacheManager nearCache;
+    private final String base;
+
+    public NearCachedRedisMap(RedisMap<V> delegate, NearCacheManager nearCache) {
+        this.delegate = delegate;
+        this.nearCache = nearCache;
+        this.base = delegate.getBase();
+    }
+
+    /**
+     * Gets the encoded value of a field, from the near cache if possible.
+     */
+    private Optional<byte[]> getRaw(String key) {
+        return this.nearCache.get(this.base, key, () -> Optional.ofNullable(this.delegate.getRaw(key)));
+    }
+
+    @Override
+    public int size() {
+        return this.delegate.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.delegate.isEmpty();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof String && this.getRaw((String) key).isPresent();
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        return this.delegate.containsValue(value);
+    }
+
+    @Override
+    public V get(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+
+        return this.getRaw((String) key)
+            .map(this.delegate::decode)
+            .orElse(null);
+    }
+
+    @Override
+    public V put(String key, V value) {
+        try {
+            return this.delegate.put(key, value);
+        } finally {
+            this.nearCache.invalidateAndPublish(this.base);
+        }
+    }
+
+    @Override
+    public V remove(Object key) {
+        try {
+            return this.delegate.remove(key);
+        } finally {
+            this.nearCache.invalidateAndPublish(this.base);
+        }
+    }
+
+    @Override
+    public void putAll(@NotNull Map<? extends String, ? extends V> m) {
+        try {
+            this.delegate.putAll(m);
+        } finally {
+            this.nearCache.invalidateAndPublish(this.base);
+        }
+    }
+
+    @Override
+    public void clear() {
+        try {
+            this.delegate.clear();
+        } finally {
+            this.nearCache.invalidateAndPublish(this.base);
+        }
+    }
+
+    @NotNull
+    @Override
+    public Set<String> keySet() {
+        return Collections.unmodifiableSet(this.delegate.keySet());
+    }
+
+    @NotNull
+    @Override
+    public Collection<V> values() {
+        return Collections.unmodifiableCollection(this.delegate.values());
+    }
+
+    @NotNull
+    @Override
+    public Set<Entry<String, V>> entrySet() {
+        return Collections.unmodifiableSet(this.delegate.entrySet());
+    }
+}
@@ -0,0 +1,155 @@
+package com.divinitor.discord.wahrbot.core.util.redis;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A {@link RedisSet} decorator that serves membership checks from a {@link NearCacheManager}. Writes through this set
+ * go straight to Redis and invalidate the key on every instance. Iteration isn't cached.
+ * @param <V> The value type
+ */
+public class NearCachedRedisSet<V> implements Set<V> {
+
+    private final RedisSet<V> delegate;
+    private final NearCacheManager nearCache;
+    private final String base;
+
+    public NearCachedRedisSet(RedisSet<V> delegate, NearCacheManager nearCache) {
+        this.delegate = delegate;
+        this.nearCache = nearCache;
+        this.base = delegate.getBase();
+    }
+
+    @Override
+    public int size() {
+        return this.delegate.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.delegate.isEmpty();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!this.delegate.getValueClass().isInstance(o)) {
+            return false;
+        }
+
+        return this.nearCache.get(this.base, this.field(o), () -> this.delegate.contains(o));
+    }
+
+    private String field(Object o) {
+        //  Latin-1 maps every byte to a distinct char, so encoded values make unambiguous field names
+        return new String(this.delegate.encode(o), StandardCharsets.ISO_8859_1);
+    }
+
+    @NotNull
+    @Override
+    public Iterator<V> iterator() {
+        return this.delegate.iterator();
+    }
+
+    @NotNull
+    @Override
+    public Object[] toArray() {
+        return this.delegate.toArray();
+    }
+
+    @NotNull
+    @Override
+    public <T> T[] toArray(@NotNull T[] a) {
+        return this.delegate.toArray(a);
+    }
+
+    @Override
+    public boolean add(V v) {
+        try {
+            return this.delegate.add(v);
+        } finally {
+            this.nearCache.invalidateAndPublish(this.base);
+        }
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        try {
+            return this.delegate.remove(o);
+        } finally {
+            this.nearCache.invalidateAndPublish(this.base);
+        }
+    }
+
+    @Override
+    public boolean containsAll(@NotNull Collection<?> c) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (Object o : c) {
+            if (!this.delegate.getValueClass().isInstance(o)) {
+                return false;
+            }
+
+            values.put(this.field(o), o);
+        }
+
+        if (values.isEmpty()) {
+            return true;
+        }
+
+        //  Misses are checked together in a single round trip
+        Map<String, Boolean> members = this.nearCache.getAll(this.base, values.keySet(), missing -> {
+            List<Object> toCheck = new ArrayList<>(missing.size());
+            missing.forEach(field -> toCheck.add(values.get(field)));
+            boolean[] found = this.delegate.containsEach(toCheck);
+            Map<String, Boolean> ret = new HashMap<>();
+            int i = 0;
+            for (String field : missing) {
+                ret.put(field, found[i++]);
+            }
+
+            return ret;
+        });
+
+        return !members.containsValue(Boolean.FALSE);
+    }
+
+    @Override
+    public boolean addAll(@NotNull Collection<? extends V> c) {
+        try {
+            return this.delegate.addAll(c);
+        } finally {
+            this.nearCache.invalidateAndPublish(this.base);
+        }
+    }
+
+    @Override
+    public boolean retainAll(@NotNull Collection<?> c) {
+        return this.delegate.retainAll(c);
+    }
+
+    @Override
+    public boolean removeAll(@NotNull Collection<?> c) {
+        try {
+            return this.delegate.removeAll(c);
+        } finally {
+            this.nearCache.invalidateAndPublish(this.base);
+        }
+    }
+
+    @Override
+    public void clear() {
+        try {
+            this.delegate.clear();
+        } finally {
+            this.nearCache.invalidateAndPublish(this.base);
+        }
+    }
+}
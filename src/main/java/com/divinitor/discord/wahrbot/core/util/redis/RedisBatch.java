@@ -0,0 +1,62 @@
+package com.divinitor.discord.wahrbot.core.util.redis;
+
+import com.google.common.collect.Lists;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiFunction;
+
+/**
+ * Helpers for issuing bulk commands against the Redis backed collections in as few round trips as possible.
+ */
+final class RedisBatch {
+
+    /**
+     * Maximum number of arguments to send in a single variadic command. Larger batches are split into several commands
+     * that are pipelined inside a single MULTI, so Redis isn't blocked on one huge command and the write stays atomic.
+     */
+    static final int BATCH_SIZE = 1000;
+
+    private RedisBatch() {
+    }
+
+    /**
+     * Issues a variadic command over the given arguments.
+     * @param j The connection to use
+     * @param args The command arguments
+     * @param direct Issues the command directly, used if the arguments fit in one batch
+     * @param pipelined Queues the command on a pipeline, used if the arguments have to be split
+     * @return The sum of the integer replies
+     */
+    static long variadic(Jedis j, List<byte[]> args,
+                         BiFunction<Jedis, byte[][], Long> direct,
+                         BiFunction<Pipeline, byte[][], Response<Long>> pipelined) {
+        if (args.isEmpty()) {
+            return 0;
+        }
+
+        if (args.size() <= BATCH_SIZE) {
+            return direct.apply(j, args.toArray(new byte[args.size()][]));
+        }
+
+        Pipeline p = j.pipelined();
+        p.multi();
+        List<Response<Long>> responses = new ArrayList<>();
+        for (List<byte[]> chunk : Lists.partition(args, BATCH_SIZE)) {
+            responses.add(pipelined.apply(p, chunk.toArray(new byte[chunk.size()][])));
+        }
+
+        p.exec();
+        p.sync();
+
+        long ret = 0;
+        for (Response<Long> response : responses) {
+            ret += response.get();
+        }
+
+        return ret;
+    }
+}
@@ -0,0 +1,190 @@
+package com.divinitor.discord.wahrbot.core.util.redis;
+
+import com.divinitor.discord.wahrbot.core.util.inject.JedisProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.Pipeline;
+
+import java.lang.invoke.MethodHandles;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Broadcasts cache invalidations between bot instances over Redis pub/sub. Every channel is multiplexed over a single
+ * pattern subscription held by a background thread, which reconnects if the connection drops. Since messages published
+ * while disconnected are lost, every listener is told to invalidate everything after a reconnect.
+ */
+public class RedisInvalidationBus {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private static final String CHANNEL_PREFIX = "wahrbot.invalidate.";
+
+    /**
+     * Message payload that invalidates every key on a channel. Keys can't contain NUL so this can't collide.
+     */
+    private static final String ALL_KEYS = "\u0000";
+
+    private static final long MAX_RECONNECT_DELAY_MS = 30_000;
+
+    private final JedisProvider provider;
+    private final Map<String, List<InvalidationListener>> listeners;
+    private final PubSub pubSub;
+    private volatile boolean running;
+    private Thread thread;
+
+    public RedisInvalidationBus(JedisProvider provider) {
+        this.provider = provider;
+        this.listeners = new ConcurrentHashMap<>();
+        this.pubSub = new PubSub();
+    }
+
+    /**
+     * Starts the subscriber thread.
+     */
+    public synchronized void start() {
+        if (this.running) {
+            return;
+        }
+
+        this.running = true;
+        this.thread = new Thread(this::run, "redis-invalidation");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Stops the subscriber thread.
+     */
+    public synchronized void shutdown() {
+        this.running = false;
+        if (this.pubSub.isSubscribed()) {
+            this.pubSub.punsubscribe();
+        }
+
+        if (this.thread != null) {
+            this.thread.interrupt();
+            this.thread = null;
+        }
+    }
+
+    /**
+     * Subscribes a listener to a channel.
+     * @param channel The channel name
+     * @param listener The listener
+     */
+    public void subscribe(String channel, InvalidationListener listener) {
+        this.listeners.computeIfAbsent(channel, c -> new CopyOnWriteArrayList<>()).add(listener);
+    }
+
+    /**
+     * Unsubscribes a listener from a channel.
+     * @param channel The channel name
+     * @param listener The listener
+     */
+    public void unsubscribe(String channel, InvalidationListener listener) {
+        List<InvalidationListener> list = this.listeners.get(channel);
+        if (list != null) {
+            list.remove(listener);
+        }
+    }
+
+    /**
+     * Tells every subscriber of a channel, including those in this process, that a key has changed.
+     * @param channel The channel name
+     * @param key The key that changed
+     */
+    public void publish(String channel, String key) {
+        try (Jedis j = this.provider.get()) {
+            j.publish(CHANNEL_PREFIX + channel, key);
+        }
+    }
+
+    /**
+     * Queues a message telling every subscriber of a channel, including those in this process, that a key has
+     * changed, so it can be sent along with the write that changed it.
+     * @param pipeline The pipeline to queue the message on
+     * @param channel The channel name
+     * @param key The key that changed
+     */
+    public void publish(Pipeline pipeline, String channel, String key) {
+        pipeline.publish(CHANNEL_PREFIX + channel, key);
+    }
+
+    /**
+     * Tells every subscriber of a channel, including those in this process, that any key may have changed.
+     * @param channel The channel name
+     */
+    public void publishAll(String channel) {
+        this.publish(channel, ALL_KEYS);
+    }
+
+    private void run() {
+        boolean reconnect = false;
+        long delay = 1000;
+        while (this.running) {
+            try (Jedis j = this.provider.get()) {
+                if (reconnect) {
+                    LOGGER.info("Reconnected to Redis, invalidating all cached keys");
+                    this.listeners.values().forEach(l -> l.forEach(InvalidationListener::invalidateAll));
+                }
+
+                delay = 1000;
+                //  Blocks until unsubscribed or disconnected
+                j.psubscribe(this.pubSub, CHANNEL_PREFIX + "*");
+            } catch (Exception e) {
+                if (!this.running) {
+                    break;
+                }
+
+                LOGGER.warn("Lost Redis invalidation subscription, retrying in {} ms", delay, e);
+            }
+
+            reconnect = true;
+            try {
+                TimeUnit.MILLISECONDS.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+
+            delay = Math.min(delay * 2, MAX_RECONNECT_DELAY_MS);
+        }
+    }
+
+    private void dispatch(String channel, String message) {
+        if (!channel.startsWith(CHANNEL_PREFIX)) {
+            return;
+        }
+
+        List<InvalidationListener> list = this.listeners.get(channel.substring(CHANNEL_PREFIX.length()));
+        if (list == null) {
+            return;
+        }
+
+        for (InvalidationListener listener : list) {
+            try {
+                if (ALL_KEYS.equals(message)) {
+                    listener.invalidateAll();
+                } else {
+                    listener.invalidate(message);
+                }
+            } catch (Exception e) {
+                LOGGER.warn("Exception in invalidation listener for {}", channel, e);
+            }
+        }
+    }
+
+    private class PubSub extends JedisPubSub {
+
+        @Override
+        public void onPMessage(String pattern, String channel, String message) {
+            RedisInvalidationBus.this.dispatch(channel, message);
+        }
+    }
+}
@@ -4,6 +4,9 @@ import com.divinitor.discord.wahrbot.core.util.inject.JedisProvider;
 import com.google.gson.Gson;
 import org.jetbrains.annotations.NotNull;
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.util.SafeEncoder;
 
 import java.lang.reflect.Array;
 import java.util.*;
@@ -14,6 +17,11 @@ import java.util.*;
  */
 public class RedisList<E> implements List<E> {
 
+    /**
+     * Default number of elements fetched per LRANGE when scanning the list
+     */
+    public static final int DEFAULT_WINDOW_SIZE = 256;
+
     /**
      * The Redis connection pool
      */
@@ -25,21 +33,24 @@ public class RedisList<E> implements List<E> {
     private final String base;
 
     /**
-     * JSON serializer/deserializer
+     * The base key, encoded
      */
-    private final Gson gson;
+    private final byte[] baseKey;
 
     /**
-     * The class of the generic type (so we can properly serialize/deserialize), as generic type information is erased
-     * at runtime
+     * The class of the generic type, as generic type information is erased at runtime
      */
     private final Class<E> eClass;
 
     /**
-     * Whether or not the generic type is a string. If the generic type is a string, then we can skip serialization and
-     * deserialization.
+     * Encodes and decodes elements. Removal matches on the encoded form, so it must be deterministic.
+     */
+    private final ValueCodec<E> codec;
+
+    /**
+     * Number of elements fetched per LRANGE when iterating or searching the list
      */
-    private final boolean stringType;
+    private volatile int windowSize;
 
     /**
      * Create a RedisList with the given pool, key base, Gson instance, and type.
@@ -49,11 +60,23 @@ public class RedisList<E> implements List<E> {
      * @param eClass The generic type class
      */
     public RedisList(JedisProvider pool, String base, Gson gson, Class<E> eClass) {
+        this(pool, base, eClass, ValueCodec.forClass(gson, eClass));
+    }
+
+    /**
+     * Create a RedisList with the given pool, key base, type, and element codec.
+     * @param pool The Redis connection pool to use
+     * @param base The base key to use
+     * @param eClass The generic type class
+     * @param codec The codec to store elements with
+     */
+    public RedisList(JedisProvider pool, String base, Class<E> eClass, ValueCodec<E> codec) {
         this.pool = pool;
         this.base = base;
-        this.gson = gson;
+        this.baseKey = SafeEncoder.encode(base);
         this.eClass = eClass;
-        this.stringType = this.eClass == String.class;
+        this.codec = codec;
+        this.windowSize = DEFAULT_WINDOW_SIZE;
     }
 
     /**
@@ -72,6 +95,41 @@ public class RedisList<E> implements List<E> {
         this.addAll(col);
     }
 
+    /**
+     * Create a RedisList with the given pool, key base, type, and element codec, initialized with the given elements
+     * from the provided collection
+     * @param pool The Redis connection pool to use
+     * @param base The base key to use
+     * @param eClass The generic type class
+     * @param codec The codec to store elements with
+     * @param col A collection of elements to initialize this list with
+     */
+    public RedisList(JedisProvider pool, String base, Class<E> eClass, ValueCodec<E> codec, Collection<E> col) {
+        this(pool, base, eClass, codec);
+        this.addAll(col);
+    }
+
+    /**
+     * Gets the number of elements fetched per round trip when iterating or searching the list.
+     * @return The window size
+     */
+    public int getWindowSize() {
+        return this.windowSize;
+    }
+
+    /**
+     * Sets the number of elements fetched per round trip when iterating or searching the list. Larger windows mean
+     * fewer round trips at the cost of larger replies.
+     * @param windowSize The window size, must be positive
+     */
+    public void setWindowSize(int windowSize) {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("Window size must be positive: " + windowSize);
+        }
+
+        this.windowSize = windowSize;
+    }
+
     @Override
     public int size() {
         try (Jedis j = this.pool.getResource()) {
@@ -90,63 +148,59 @@ public class RedisList<E> implements List<E> {
 
     @Override
     public boolean contains(Object o) {
-        try (Jedis j = this.pool.getResource()) {
-            //  Pull down the entire list from Redis
-            List<String> vals = j.lrange(this.base, 0, -1);
-            if (this.stringType) {
-                return vals.contains(o);
-            } else {
-                return vals.stream()
-                    //  Deserialize
-                    .map(s -> this.gson.fromJson(s, this.eClass))
-                    //  Check if any are equal
-                    .anyMatch(o::equals);
-            }
-        }
+        return this.indexOf(o) != -1;
     }
 
+    /**
+     * Returns an iterator that fetches the list a window at a time. The iterator is weakly consistent: it reflects
+     * the list as it is when each window is fetched, so elements appended while iterating will be returned, and
+     * concurrent removals may cause elements to be skipped or returned twice.
+     * @return An iterator over the list
+     */
     @NotNull
     @Override
     public Iterator<E> iterator() {
-        //  Return a simple iterator
-        return new Iterator<E>() {
-            int index = 0;
-
-            @Override
-            public boolean hasNext() {
-                //  We have more elements if the pointer is less than the size of the list
-                return index < RedisList.this.size();
-            }
+        return new WindowedIterator(Long.MAX_VALUE);
+    }
 
-            @Override
-            public E next() {
-                //  No more elements
-                if (!hasNext()) {
-                    throw new NoSuchElementException();
-                }
+    /**
+     * Returns an iterator that fetches the list a window at a time, bounded to the length of the list when this method
+     * is called. Elements appended while iterating are not returned. Like {@link #iterator()}, the contents of each
+     * window reflect the list as it is when the window is fetched.
+     * @return An iterator over the list
+     */
+    @NotNull
+    public Iterator<E> snapshotIterator() {
+        long length;
+        try (Jedis j = this.pool.getResource()) {
+            length = j.llen(this.base);
+        }
 
-                //  Get the next element
-                E ret = RedisList.this.get(index);
-                //  Increment
-                ++index;
-                return ret;
-            }
-        };
+        return new WindowedIterator(length);
+    }
+
+    /**
+     * Fetches and deserializes the given range of the list.
+     * @param j The connection to use
+     * @param start The start index, inclusive
+     * @param end The end index, inclusive
+     * @return The deserialized elements
+     */
+    private List<E> range(Jedis j, long start, long end) {
+        List<byte[]> vals = j.lrange(this.baseKey, start, end);
+        List<E> ret = new ArrayList<>(vals.size());
+        for (byte[] val : vals) {
+            ret.add(this.codec.decode(val));
+        }
+
+        return ret;
     }
 
     @NotNull
     @Override
     public Object[] toArray() {
         try (Jedis j = this.pool.getResource()) {
-            List<String> vals = j.lrange(this.base, 0, -1);
-            if (this.stringType) {
-                return vals.toArray();
-            } else {
-                return vals.stream()
-                    //  Deserialize
-                    .map(s -> this.gson.fromJson(s, this.eClass))
-                    .toArray();
-            }
+            return this.range(j, 0, -1).toArray();
         }
     }
 
@@ -179,11 +233,7 @@ public class RedisList<E> implements List<E> {
         }
 
         try (Jedis j = this.pool.getResource()) {
-            if (this.stringType) {
-                j.rpush(this.base, (String) e);
-            } else {
-                j.rpush(this.base, this.gson.toJson(e));
-            }
+            j.rpush(this.baseKey, this.codec.encode(e));
         }
 
         return true;
@@ -196,35 +246,48 @@ public class RedisList<E> implements List<E> {
             throw new NullPointerException();
         }
 
+        if (!this.eClass.isInstance(o)) {
+            return false;
+        }
+
         try (Jedis j = this.pool.getResource()) {
-            if (this.stringType) {
-                return j.lrem(this.base, 1, (String) o) > 0;
-            } else {
-                return j.lrem(this.base, 1, this.gson.toJson(o)) > 0;
-            }
+            return j.lrem(this.baseKey, 1, this.codec.encode(this.eClass.cast(o))) > 0;
         }
     }
 
     @Override
     public boolean containsAll(@NotNull Collection<?> c) {
-        for (Object o : c) {
-            if (!this.contains(o)) {
-                return false;
-            }
+        if (c.isEmpty()) {
+            return true;
         }
 
-        return true;
+        //  Pull down the list once rather than once per element
+        return Arrays.asList(this.toArray()).containsAll(c);
     }
 
     @Override
     public boolean addAll(@NotNull Collection<? extends E> c) {
-        boolean changed = false;
+        if (c.isEmpty()) {
+            return false;
+        }
 
+        List<byte[]> vals = new ArrayList<>(c.size());
         for (E e : c) {
-            changed |= this.add(e);
+            //  Cannot accept null objects
+            if (e == null) {
+                throw new NullPointerException();
+            }
+
+            vals.add(this.codec.encode(e));
         }
 
-        return changed;
+        try (Jedis j = this.pool.getResource()) {
+            RedisBatch.variadic(j, vals,
+                (jedis, args) -> jedis.rpush(this.baseKey, args),
+                (p, args) -> p.rpush(this.baseKey, args));
+        }
+
+        return true;
     }
 
     @Override
@@ -235,13 +298,34 @@ public class RedisList<E> implements List<E> {
 
     @Override
     public boolean removeAll(@NotNull Collection<?> c) {
-        boolean changed = false;
-
-        for (Object o : c) {
-            changed |= this.remove(o);
+        if (c.isEmpty()) {
+            return false;
         }
 
-        return changed;
+        try (Jedis j = this.pool.getResource()) {
+            //  LREM isn't variadic, so pipeline one per element instead
+            Pipeline p = j.pipelined();
+            List<Response<Long>> responses = new ArrayList<>(c.size());
+            for (Object o : c) {
+                //  Cannot accept null objects
+                if (o == null) {
+                    throw new NullPointerException();
+                }
+
+                if (this.eClass.isInstance(o)) {
+                    responses.add(p.lrem(this.baseKey, 1, this.codec.encode(this.eClass.cast(o))));
+                }
+            }
+
+            p.sync();
+
+            boolean changed = false;
+            for (Response<Long> response : responses) {
+                changed |= response.get() > 0;
+            }
+
+            return changed;
+        }
     }
 
     @Override
@@ -264,25 +348,20 @@ public class RedisList<E> implements List<E> {
         }
     }
 
-    @SuppressWarnings("unchecked")
     private E getImpl(int index, Jedis j) {
-        String val = j.lindex(this.base, index);
-        if (this.stringType) {
-            return (E) val;
-        } else {
-            return this.gson.fromJson(val, this.eClass);
+        byte[] val = j.lindex(this.baseKey, index);
+        if (val == null) {
+            return null;
         }
+
+        return this.codec.decode(val);
     }
 
     @Override
     public E set(int index, E element) {
         try (Jedis j = this.pool.getResource()) {
             E ret = getImpl(index, j);
-            if (this.stringType) {
-                j.lset(this.base, index, (String) element);
-            } else {
-                j.lset(this.base, index, this.gson.toJson(element));
-            }
+            j.lset(this.baseKey, index, this.codec.encode(element));
 
             return ret;
         }
@@ -304,13 +383,20 @@ public class RedisList<E> implements List<E> {
             return -1;
         }
 
-        if (this.stringType) {
-            try (Jedis j = this.pool.getResource()) {
-                List<String> vals = j.lrange(this.base, 0, -1);
-                return vals.indexOf(o);
+        int window = this.windowSize;
+        try (Jedis j = this.pool.getResource()) {
+            //  Scan forwards a window at a time so we can stop as soon as we find it
+            for (long start = 0; ; start += window) {
+                List<E> vals = this.range(j, start, start + window - 1);
+                int index = vals.indexOf(o);
+                if (index != -1) {
+                    return Math.toIntExact(start + index);
+                }
+
+                if (vals.size() < window) {
+                    return -1;
+                }
             }
-        } else {
-            throw new UnsupportedOperationException();
         }
     }
 
@@ -320,13 +406,20 @@ public class RedisList<E> implements List<E> {
             return -1;
         }
 
-        if (this.stringType) {
-            try (Jedis j = this.pool.getResource()) {
-                List<String> vals = j.lrange(this.base, 0, -1);
-                return vals.lastIndexOf(o);
+        int window = this.windowSize;
+        try (Jedis j = this.pool.getResource()) {
+            //  Scan backwards a window at a time so we can stop as soon as we find it
+            long length = j.llen(this.base);
+            for (long end = length; end > 0; end -= window) {
+                long start = Math.max(0, end - window);
+                List<E> vals = this.range(j, start, end - 1);
+                int index = vals.lastIndexOf(o);
+                if (index != -1) {
+                    return Math.toIntExact(start + index);
+                }
             }
-        } else {
-            throw new UnsupportedOperationException();
+
+            return -1;
         }
     }
 
@@ -348,4 +441,74 @@ public class RedisList<E> implements List<E> {
     public List<E> subList(int fromIndex, int toIndex) {
         throw new UnsupportedOperationException();
     }
+
+    /**
+     * Iterator that fetches the list in windows of {@link #windowSize} elements.
+     */
+    private class WindowedIterator implements Iterator<E> {
+
+        /**
+         * Index to stop iterating at, exclusive
+         */
+        private final long limit;
+
+        /**
+         * Index of the next window to fetch
+         */
+        private long offset;
+
+        private List<E> buffer;
+        private int bufferIndex;
+        private boolean exhausted;
+
+        WindowedIterator(long limit) {
+            this.limit = limit;
+            this.buffer = Collections.emptyList();
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (this.bufferIndex < this.buffer.size()) {
+                return true;
+            }
+
+            if (this.exhausted) {
+                return false;
+            }
+
+            this.fetch();
+            return this.bufferIndex < this.buffer.size();
+        }
+
+        @Override
+        public E next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            return this.buffer.get(this.bufferIndex++);
+        }
+
+        private void fetch() {
+            int window = RedisList.this.windowSize;
+            long end = Math.min(this.offset + window, this.limit);
+            if (end <= this.offset) {
+                this.exhausted = true;
+                this.buffer = Collections.emptyList();
+                return;
+            }
+
+            long requested = end - this.offset;
+            try (Jedis j = RedisList.this.pool.getResource()) {
+                this.buffer = RedisList.this.range(j, this.offset, end - 1);
+            }
+
+            this.bufferIndex = 0;
+            this.offset += this.buffer.size();
+            //  A short window means we've hit the end of the list
+            if (this.buffer.size() < requested || this.offset >= this.limit) {
+                this.exhausted = true;
+            }
+        }
+    }
 }
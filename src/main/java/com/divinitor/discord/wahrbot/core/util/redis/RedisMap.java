@@ -1,14 +1,17 @@
 package com.divinitor.discord.wahrbot.core.util.redis;
 
 import com.divinitor.discord.wahrbot.core.util.inject.JedisProvider;
+import com.google.common.collect.Iterables;
 import com.google.gson.Gson;
 import org.jetbrains.annotations.NotNull;
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.util.SafeEncoder;
 
-import java.util.Collection;
-import java.util.Map;
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.*;
+import java.util.function.Function;
 
 /**
  * An implementation of {@link Map} that's backed by Redis. Keys must be strings.
@@ -16,6 +19,11 @@ import java.util.stream.Collectors;
  */
 public class RedisMap<V> implements Map<String, V> {
 
+    /**
+     * Default COUNT hint passed to HSCAN when iterating the map
+     */
+    public static final int DEFAULT_SCAN_COUNT = 100;
+
     /**
      * The Redis connection pool
      */
@@ -27,21 +35,24 @@ public class RedisMap<V> implements Map<String, V> {
     private final String base;
 
     /**
-     * JSON serializer/deserializer
+     * The base key, encoded
      */
-    private final Gson gson;
+    private final byte[] baseKey;
 
     /**
-     * The class of the generic type (so we can properly serialize/deserialize), as generic type information is erased
-     * at runtime
+     * The class of the generic type, as generic type information is erased at runtime
      */
     private final Class<V> vClass;
 
     /**
-     * Whether or not the generic type is a string. If the generic type is a string, then we can skip serialization and
-     * deserialization.
+     * Encodes and decodes values
+     */
+    private final ValueCodec<V> codec;
+
+    /**
+     * COUNT hint passed to HSCAN when iterating the map
      */
-    private final boolean stringType;
+    private volatile int scanCount;
 
     /**
      * Create a RedisMap with the given pool, key base, Gson instance, and type.
@@ -51,11 +62,23 @@ public class RedisMap<V> implements Map<String, V> {
      * @param vClass The generic type class
      */
     public RedisMap(JedisProvider pool, String base, Gson gson, Class<V> vClass) {
+        this(pool, base, vClass, ValueCodec.forClass(gson, vClass));
+    }
+
+    /**
+     * Create a RedisMap with the given pool, key base, type, and value codec.
+     * @param pool The Redis connection pool to use
+     * @param base The base key to use
+     * @param vClass The generic type class
+     * @param codec The codec to store values with
+     */
+    public RedisMap(JedisProvider pool, String base, Class<V> vClass, ValueCodec<V> codec) {
         this.pool = pool;
         this.base = base;
-        this.gson = gson;
+        this.baseKey = SafeEncoder.encode(base);
         this.vClass = vClass;
-        this.stringType = this.vClass == String.class;
+        this.codec = codec;
+        this.scanCount = DEFAULT_SCAN_COUNT;
     }
 
     /**
@@ -72,6 +95,41 @@ public class RedisMap<V> implements Map<String, V> {
         this.putAll(val);
     }
 
+    /**
+     * Create a RedisMap with the given pool, key base, type, and value codec, initialized with the given elements
+     * from the provided collection
+     * @param pool The Redis connection pool to use
+     * @param base The base key to use
+     * @param vClass The generic type class
+     * @param codec The codec to store values with
+     * @param val A map of elements to initialize this map with
+     */
+    public RedisMap(JedisProvider pool, String base, Class<V> vClass, ValueCodec<V> codec, Map<String, V> val) {
+        this(pool, base, vClass, codec);
+        this.putAll(val);
+    }
+
+    /**
+     * Gets the COUNT hint passed to HSCAN when iterating the map.
+     * @return The scan count
+     */
+    public int getScanCount() {
+        return this.scanCount;
+    }
+
+    /**
+     * Sets the COUNT hint passed to HSCAN when iterating the map. This is roughly the number of entries fetched per
+     * round trip; Redis may return more or fewer.
+     * @param scanCount The scan count, must be positive
+     */
+    public void setScanCount(int scanCount) {
+        if (scanCount < 1) {
+            throw new IllegalArgumentException("Scan count must be positive: " + scanCount);
+        }
+
+        this.scanCount = scanCount;
+    }
+
     @Override
     public int size() {
         try (Jedis j = this.pool.getResource()) {
@@ -97,9 +155,17 @@ public class RedisMap<V> implements Map<String, V> {
 
     @Override
     public boolean containsValue(Object value) {
-        try (Jedis j = this.pool.getResource()) {
-            return j.hgetAll(this.base).containsValue(value);
+        if (!this.vClass.isInstance(value)) {
+            return false;
+        }
+
+        for (V v : this.values()) {
+            if (value.equals(v)) {
+                return true;
+            }
         }
+
+        return false;
     }
 
     @Override
@@ -115,18 +181,61 @@ public class RedisMap<V> implements Map<String, V> {
         }
     }
 
-    @SuppressWarnings("unchecked")
     private V getImpl(String sKey, Jedis j) {
-        String ret = j.hget(this.base, sKey);
+        byte[] ret = j.hget(this.baseKey, SafeEncoder.encode(sKey));
         if (ret == null) {
             return null;
         }
 
-        if (stringType) {
-            return (V) ret;
-        } else {
-            return this.gson.fromJson(ret, vClass);
+        return this.codec.decode(ret);
+    }
+
+    /**
+     * Gets the encoded value of a field.
+     * @param key The field
+     * @return The encoded value, or null if there is no such field
+     */
+    byte[] getRaw(String key) {
+        try (Jedis j = this.pool.getResource()) {
+            return j.hget(this.baseKey, SafeEncoder.encode(key));
+        }
+    }
+
+    /**
+     * Gets the values of several keys in a single HMGET.
+     * @param keys The keys to get
+     * @return A map from each requested key to its value, or to null if there is no such key, in request order
+     */
+    public Map<String, V> getAll(String... keys) {
+        Map<String, V> ret = new LinkedHashMap<>(keys.length * 4 / 3 + 1);
+        if (keys.length == 0) {
+            return ret;
+        }
+
+        byte[][] fields = new byte[keys.length][];
+        for (int i = 0; i < keys.length; i++) {
+            fields[i] = SafeEncoder.encode(keys[i]);
+        }
+
+        List<byte[]> vals;
+        try (Jedis j = this.pool.getResource()) {
+            vals = j.hmget(this.baseKey, fields);
         }
+
+        for (int i = 0; i < keys.length; i++) {
+            byte[] val = vals.get(i);
+            ret.put(keys[i], val == null ? null : this.codec.decode(val));
+        }
+
+        return ret;
+    }
+
+    String getBase() {
+        return this.base;
+    }
+
+    V decode(byte[] data) {
+        return this.codec.decode(data);
     }
 
     @Override
@@ -140,11 +249,7 @@ public class RedisMap<V> implements Map<String, V> {
     }
 
     private void putImpl(String key, V value, Jedis j) {
-        if (stringType) {
-            j.hset(this.base, key, (String) value);
-        } else {
-            j.hset(this.base, key, this.gson.toJson(value));
-        }
+        j.hset(this.baseKey, SafeEncoder.encode(key), this.codec.encode(value));
     }
 
     @Override
@@ -163,10 +268,32 @@ public class RedisMap<V> implements Map<String, V> {
 
     @Override
     public void putAll(@NotNull Map<? extends String, ? extends V> m) {
+        if (m.isEmpty()) {
+            return;
+        }
+
+        //  Byte array keys hash by identity, but every field is encoded exactly once so that doesn't matter
+        Map<byte[], byte[]> vals = new HashMap<>(m.size() * 4 / 3 + 1);
+        m.forEach((k, v) -> vals.put(SafeEncoder.encode(k), this.codec.encode(v)));
+
         try (Jedis j = this.pool.getResource()) {
-            m.forEach((k, v) -> {
-                this.putImpl(k, v, j);
-            });
+            if (vals.size() <= RedisBatch.BATCH_SIZE) {
+                j.hmset(this.baseKey, vals);
+                return;
+            }
+
+            //  Split into several HMSETs in one MULTI so we don't block Redis on a single huge command
+            Pipeline p = j.pipelined();
+            p.multi();
+            for (List<Map.Entry<byte[], byte[]>> chunk :
+                Iterables.partition(vals.entrySet(), RedisBatch.BATCH_SIZE)) {
+                Map<byte[], byte[]> batch = new HashMap<>(chunk.size() * 4 / 3 + 1);
+                chunk.forEach(e -> batch.put(e.getKey(), e.getValue()));
+                p.hmset(this.baseKey, batch);
+            }
+
+            p.exec();
+            p.sync();
         }
     }
 
@@ -177,62 +304,186 @@ public class RedisMap<V> implements Map<String, V> {
         }
     }
 
+    /**
+     * Returns a live view of the keys in this map. Iteration uses HSCAN, so it fetches roughly
+     * {@link #getScanCount()} keys per round trip and has the same guarantees: keys present for the whole iteration
+     * are returned, but keys may be returned more than once if the hash is modified while iterating.
+     * @return A view of the keys
+     */
     @NotNull
     @Override
     public Set<String> keySet() {
-        try (Jedis j = this.pool.getResource()) {
-            return j.hgetAll(this.base).keySet();
-        }
+        return new AbstractSet<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                return new ScanIterator<>(e -> SafeEncoder.encode(e.getKey()));
+            }
+
+            @Override
+            public int size() {
+                return RedisMap.this.size();
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return RedisMap.this.containsKey(o);
+            }
+
+            @Override
+            public boolean remove(Object o) {
+                if (!(o instanceof String)) {
+                    return false;
+                }
+
+                try (Jedis j = RedisMap.this.pool.getResource()) {
+                    return j.hdel(RedisMap.this.base, (String) o) > 0;
+                }
+            }
+
+            @Override
+            public void clear() {
+                RedisMap.this.clear();
+            }
+        };
     }
 
-    @SuppressWarnings("unchecked")
+    /**
+     * Returns a live view of the values in this map. Iteration uses HSCAN and deserializes a page of values at a
+     * time, with the same guarantees as {@link #keySet()}.
+     * @return A view of the values
+     */
     @NotNull
     @Override
     public Collection<V> values() {
-        try (Jedis j = this.pool.getResource()) {
-            Collection<String> values = j.hgetAll(this.base).values();
-            if (stringType) {
-                return (Collection<V>) values;
-            } else {
-                return values.stream()
-                    .map(s -> gson.fromJson(s, this.vClass))
-                    .collect(Collectors.toList());
+        return new AbstractCollection<V>() {
+            @Override
+            public Iterator<V> iterator() {
+                return new ScanIterator<>(e -> RedisMap.this.codec.decode(e.getValue()));
             }
-        }
+
+            @Override
+            public int size() {
+                return RedisMap.this.size();
+            }
+
+            @Override
+            public void clear() {
+                RedisMap.this.clear();
+            }
+        };
     }
 
-    @SuppressWarnings("unchecked")
+    /**
+     * Returns a live view of the entries in this map. Iteration uses HSCAN, which returns each key along with its
+     * value, so reading an entry's value doesn't need another round trip. Setting an entry's value writes through to
+     * the map. The same guarantees as {@link #keySet()} apply.
+     * @return A view of the entries
+     */
     @NotNull
     @Override
     public Set<Entry<String, V>> entrySet() {
-        try (Jedis j = this.pool.getResource()) {
-            return j.hkeys(this.base).stream()
-                .map(RMEntry::new)
-                .collect(Collectors.toSet());
-        }
+        return new AbstractSet<Entry<String, V>>() {
+            @Override
+            public Iterator<Entry<String, V>> iterator() {
+                return new ScanIterator<>(e -> new RMEntry(SafeEncoder.encode(e.getKey()),
+                    RedisMap.this.codec.decode(e.getValue())));
+            }
+
+            @Override
+            public int size() {
+                return RedisMap.this.size();
+            }
+
+            @Override
+            public void clear() {
+                RedisMap.this.clear();
+            }
+        };
     }
 
-    private class RMEntry implements Map.Entry<String, V> {
+    /**
+     * Iterator over the hash using HSCAN, converting a page of entries at a time.
+     * @param <T> The element type
+     */
+    private class ScanIterator<T> implements Iterator<T> {
+
+        private final Function<Map.Entry<byte[], byte[]>, T> mapper;
+        private byte[] cursor;
+        private List<Map.Entry<byte[], byte[]>> page;
+        private List<T> mapped;
+        private int index;
+        private byte[] lastKey;
+
+        ScanIterator(Function<Map.Entry<byte[], byte[]>, T> mapper) {
+            this.mapper = mapper;
+            this.cursor = ScanParams.SCAN_POINTER_START_BINARY;
+            this.page = Collections.emptyList();
+            this.mapped = Collections.emptyList();
+        }
 
-        private final String key;
+        @Override
+        public boolean hasNext() {
+            //  A page may come back empty even though the scan isn't done yet
+            while (this.index >= this.page.size() && this.cursor != null) {
+                this.fetch();
+            }
 
-        RMEntry(String key) {
-            this.key = key;
+            return this.index < this.page.size();
         }
 
         @Override
-        public String getKey() {
-            return key;
+        public T next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            this.lastKey = this.page.get(this.index).getKey();
+            return this.mapped.get(this.index++);
         }
 
         @Override
-        public V getValue() {
-            return RedisMap.this.get(this.getKey());
+        public void remove() {
+            if (this.lastKey == null) {
+                throw new IllegalStateException();
+            }
+
+            try (Jedis j = RedisMap.this.pool.getResource()) {
+                j.hdel(RedisMap.this.baseKey, this.lastKey);
+            }
+
+            this.lastKey = null;
+        }
+
+        private void fetch() {
+            ScanParams params = new ScanParams().count(RedisMap.this.scanCount);
+            ScanResult<Map.Entry<byte[], byte[]>> result;
+            try (Jedis j = RedisMap.this.pool.getResource()) {
+                result = j.hscan(RedisMap.this.baseKey, this.cursor, params);
+            }
+
+            this.page = result.getResult();
+            List<T> mapped = new ArrayList<>(this.page.size());
+            for (Map.Entry<byte[], byte[]> entry : this.page) {
+                mapped.add(this.mapper.apply(entry));
+            }
+
+            this.mapped = mapped;
+            this.index = 0;
+            byte[] next = result.getCursorAsBytes();
+            this.cursor = Arrays.equals(ScanParams.SCAN_POINTER_START_BINARY, next) ? null : next;
+        }
+    }
+
+    private class RMEntry extends AbstractMap.SimpleEntry<String, V> {
+
+        RMEntry(String key, V value) {
+            super(key, value);
         }
 
         @Override
         public V setValue(V value) {
-            return RedisMap.this.put(this.getKey(), value);
+            RedisMap.this.put(this.getKey(), value);
+            return super.setValue(value);
         }
     }
 }
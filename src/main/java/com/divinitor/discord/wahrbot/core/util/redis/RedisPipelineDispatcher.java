@@ -0,0 +1,214 @@
+package com.divinitor.discord.wahrbot.core.util.redis;
+
+import com.divinitor.discord.wahrbot.core.util.inject.JedisProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Runs Redis commands asynchronously over a single pipelined connection. Commands submitted from any thread are queued
+ * and a background thread sends everything queued so far as one pipeline, so concurrent callers share round trips
+ * instead of each holding a pooled connection while they wait.
+ * <p>
+ * Futures are completed on the given executor rather than the I/O thread, so slow callbacks can't hold up other
+ * commands.
+ * </p>
+ */
+public class RedisPipelineDispatcher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    /**
+     * Maximum number of commands sent in one pipeline
+     */
+    private static final int MAX_BATCH = 512;
+
+    private static final long MAX_RECONNECT_DELAY_MS = 30_000;
+
+    private final JedisProvider provider;
+    private final Executor completionExecutor;
+    private final BlockingQueue<Command<?>> queue;
+    private volatile boolean running;
+    private Thread thread;
+
+    /**
+     * @param provider The connection source. One connection is held for as long as the dispatcher runs.
+     * @param completionExecutor The executor futures are completed on
+     */
+    public RedisPipelineDispatcher(JedisProvider provider, Executor completionExecutor) {
+        this.provider = provider;
+        this.completionExecutor = completionExecutor;
+        this.queue = new LinkedBlockingQueue<>();
+    }
+
+    /**
+     * Starts the dispatcher thread.
+     */
+    public synchronized void start() {
+        if (this.running) {
+            return;
+        }
+
+        this.running = true;
+        this.thread = new Thread(this::run, "redis-pipeline");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Stops the dispatcher thread. Commands that haven't been sent yet fail.
+     */
+    public synchronized void shutdown() {
+        this.running = false;
+        if (this.thread != null) {
+            this.thread.interrupt();
+            this.thread = null;
+        }
+
+        this.failQueued(new IllegalStateException("Dispatcher shut down"));
+    }
+
+    /**
+     * Queues a command.
+     * @param command Queues the command on the pipeline and returns its response. It may queue several commands, in
+     *                which case the future completes with the returned response once all of them have run.
+     * @param <T> The response type
+     * @return A future that completes with the response, or exceptionally if the command fails
+     */
+    public <T> CompletableFuture<T> submit(Function<Pipeline, Response<T>> command) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        if (!this.running) {
+            future.completeExceptionally(new IllegalStateException("Dispatcher is not running"));
+            return future;
+        }
+
+        Command<T> queued = new Command<>(command, future);
+        this.queue.add(queued);
+        //  The dispatcher may have stopped, and drained the queue for the last time, between the check and the add
+        if (!this.running && this.queue.remove(queued)) {
+            future.completeExceptionally(new IllegalStateException("Dispatcher is not running"));
+        }
+
+        return future;
+    }
+
+    private void run() {
+        long delay = 1000;
+        List<Command<?>> batch = new ArrayList<>();
+        while (this.running) {
+            try (Jedis j = this.provider.get()) {
+                delay = 1000;
+                while (this.running) {
+                    batch.add(this.queue.take());
+                    this.queue.drainTo(batch, MAX_BATCH - 1);
+                    this.send(j, batch);
+                    batch.clear();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                //  Whatever was in flight when the connection broke may or may not have run
+                for (Command<?> command : batch) {
+                    this.fail(command.future, e);
+                }
+
+                batch.clear();
+                if (!this.running) {
+                    break;
+                }
+
+                LOGGER.warn("Lost Redis pipeline connection, retrying in {} ms", delay, e);
+                try {
+                    TimeUnit.MILLISECONDS.sleep(delay);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+
+                delay = Math.min(delay * 2, MAX_RECONNECT_DELAY_MS);
+            }
+        }
+
+        this.failQueued(new IllegalStateException("Dispatcher shut down"));
+    }
+
+    private void send(Jedis j, List<Command<?>> batch) {
+        Pipeline p = j.pipelined();
+        List<Response<?>> responses = new ArrayList<>(batch.size());
+        for (Command<?> command : batch) {
+            Response<?> response;
+            try {
+                response = command.command.apply(p);
+            } catch (Exception e) {
+                //  The command couldn't be queued, which doesn't affect the rest
+                response = null;
+                this.fail(command.future, e);
+            }
+
+            responses.add(response);
+        }
+
+        p.sync();
+        for (int i = 0; i < batch.size(); i++) {
+            Response<?> response = responses.get(i);
+            if (response != null) {
+                batch.get(i).complete(response);
+            }
+        }
+    }
+
+    private void failQueued(Exception e) {
+        Command<?> command;
+        while ((command = this.queue.poll()) != null) {
+            this.fail(command.future, e);
+        }
+    }
+
+    private void fail(CompletableFuture<?> future, Exception e) {
+        try {
+            this.completionExecutor.execute(() -> future.completeExceptionally(e));
+        } catch (RejectedExecutionException ree) {
+            //  The executor may already be shut down, but callers still need to hear about it
+            future.completeExceptionally(e);
+        }
+    }
+
+    private final class Command<T> {
+
+        private final Function<Pipeline, Response<T>> command;
+        private final CompletableFuture<T> future;
+
+        Command(Function<Pipeline, Response<T>> command, CompletableFuture<T> future) {
+            this.command = command;
+            this.future = future;
+        }
+
+        @SuppressWarnings("unchecked")
+        void complete(Response<?> response) {
+            Object value;
+            try {
+                //  Throws if Redis replied with an error for this command
+                value = response.get();
+            } catch (Exception e) {
+                RedisPipelineDispatcher.this.fail(this.future, e);
+                return;
+            }
+
+            RedisPipelineDispatcher.this.completionExecutor.execute(() -> this.future.complete((T) value));
+        }
+    }
+}
@@ -4,7 +4,11 @@ import com.divinitor.discord.wahrbot.core.util.inject.JedisProvider;
 import com.google.gson.Gson;
 import org.jetbrains.annotations.NotNull;
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.ScanParams;
 import redis.clients.jedis.ScanResult;
+import redis.clients.util.SafeEncoder;
 
 import java.util.*;
 
@@ -25,21 +29,19 @@ public class RedisSet<V> implements Set<V> {
     private final String base;
 
     /**
-     * JSON serializer/deserializer
+     * The base key, encoded
      */
-    private final Gson gson;
+    private final byte[] baseKey;
 
     /**
-     * The class of the generic type (so we can properly serialize/deserialize), as generic type information is erased
-     * at runtime
+     * The class of the generic type, as generic type information is erased at runtime
      */
     private final Class<V> vClass;
 
     /**
-     * Whether or not the generic type is a string. If the generic type is a string, then we can skip serialization and
-     * deserialization.
+     * Encodes and decodes values. Membership is decided by the encoded form, so it must be deterministic.
      */
-    private final boolean stringType;
+    private final ValueCodec<V> codec;
 
     /**
      * Create a RedisSet with the given pool, key base, Gson instance, and type.
@@ -49,11 +51,22 @@ public class RedisSet<V> implements Set<V> {
      * @param vClass The generic type class
      */
     public RedisSet(JedisProvider pool, String base, Gson gson, Class<V> vClass) {
+        this(pool, base, vClass, ValueCodec.forClass(gson, vClass));
+    }
+
+    /**
+     * Create a RedisSet with the given pool, key base, type, and value codec.
+     * @param pool The Redis connection pool to use
+     * @param base The base key to use
+     * @param vClass The generic type class
+     * @param codec The codec to store values with
+     */
+    public RedisSet(JedisProvider pool, String base, Class<V> vClass, ValueCodec<V> codec) {
         this.pool = pool;
         this.base = base;
-        this.gson = gson;
+        this.baseKey = SafeEncoder.encode(base);
         this.vClass = vClass;
-        this.stringType = this.vClass == String.class;
+        this.codec = codec;
     }
 
     /**
@@ -70,6 +83,20 @@ public class RedisSet<V> implements Set<V> {
         this.addAll(c);
     }
 
+    /**
+     * Create a RedisSet with the given pool, key base, type, and value codec, initialized with the given elements
+     * from the provided collection
+     * @param pool The Redis connection pool to use
+     * @param base The base key to use
+     * @param vClass The generic type class
+     * @param codec The codec to store values with
+     * @param c A collection of elements to initialize this set with
+     */
+    public RedisSet(JedisProvider pool, String base, Class<V> vClass, ValueCodec<V> codec, Collection<V> c) {
+        this(pool, base, vClass, codec);
+        this.addAll(c);
+    }
+
     @Override
     public int size() {
         try (Jedis j = this.pool.getResource()) {
@@ -89,14 +116,7 @@ public class RedisSet<V> implements Set<V> {
         }
 
         try (Jedis j = this.pool.getResource()) {
-            String s;
-            if (this.stringType) {
-                s = (String) o;
-            } else {
-                s = this.gson.toJson(o);
-            }
-
-            return j.sismember(this.base, s);
+            return j.sismember(this.baseKey, this.encode(o));
         }
     }
 
@@ -105,24 +125,18 @@ public class RedisSet<V> implements Set<V> {
     public Iterator<V> iterator() {
         return new Iterator<V>() {
 
-            String cursor = "";
-            Deque<String> buffer = new LinkedList<>();
+            byte[] cursor = null;
+            Deque<byte[]> buffer = new ArrayDeque<>();
 
             @Override
             public boolean hasNext() {
                 return !this.buffer.isEmpty() || this.buffer() != 0;
             }
 
-            @SuppressWarnings("unchecked")
             @Override
             public V next() {
                 if (this.hasNext()) {
-                    String val = this.buffer.pop();
-                    if (RedisSet.this.stringType) {
-                        return (V) val;
-                    } else {
-                        return RedisSet.this.gson.fromJson(val, RedisSet.this.vClass);
-                    }
+                    return RedisSet.this.codec.decode(this.buffer.pop());
                 } else {
                     throw new NoSuchElementException();
                 }
@@ -130,14 +144,14 @@ public class RedisSet<V> implements Set<V> {
 
             private int buffer() {
                 try (Jedis j = RedisSet.this.pool.getResource()) {
-                    if (this.cursor.equalsIgnoreCase("0")) {
+                    if (this.cursor == null) {
+                        this.cursor = ScanParams.SCAN_POINTER_START_BINARY;
+                    } else if (Arrays.equals(this.cursor, ScanParams.SCAN_POINTER_START_BINARY)) {
                         return 0;
-                    } else if (this.cursor.isEmpty()) {
-                        this.cursor = "0";
                     }
 
-                    ScanResult<String> ret = j.sscan(RedisSet.this.base, cursor);
-                    this.cursor = ret.getStringCursor();
+                    ScanResult<byte[]> ret = j.sscan(RedisSet.this.baseKey, cursor);
+                    this.cursor = ret.getCursorAsBytes();
                     this.buffer.addAll(ret.getResult());
                     return ret.getResult().size();
                 }
@@ -164,14 +178,7 @@ public class RedisSet<V> implements Set<V> {
     @Override
     public boolean add(V v) {
         try (Jedis j = this.pool.getResource()) {
-            String val;
-            if (this.stringType) {
-                val = (String) v;
-            } else {
-                val = this.gson.toJson(v);
-            }
-
-            return j.sadd(this.base, val) > 0;
+            return j.sadd(this.baseKey, this.codec.encode(v)) > 0;
         }
     }
 
@@ -182,37 +189,68 @@ public class RedisSet<V> implements Set<V> {
         }
 
         try (Jedis j = this.pool.getResource()) {
-            String val;
-            if (this.stringType) {
-                val = (String) o;
-            } else {
-                val = this.gson.toJson(o);
-            }
-
-            return j.srem(this.base, val) > 0;
+            return j.srem(this.baseKey, this.encode(o)) > 0;
         }
     }
 
     @Override
     public boolean containsAll(@NotNull Collection<?> c) {
-        boolean has = true;
+        if (c.isEmpty()) {
+            return true;
+        }
 
         for (Object o : c) {
-            has &= this.contains(o);
+            if (!this.vClass.isInstance(o)) {
+                return false;
+            }
         }
 
-        return has;
+        for (boolean member : this.containsEach(c)) {
+            if (!member) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Checks the membership of several values in a single round trip.
+     * @param c The values to check, all of which must be instances of the value class
+     * @return Whether each value is a member, in iteration order
+     */
+    boolean[] containsEach(Collection<?> c) {
+        try (Jedis j = this.pool.getResource()) {
+            //  Pipeline the membership checks so they all go out in a single round trip
+            Pipeline p = j.pipelined();
+            List<Response<Boolean>> responses = new ArrayList<>(c.size());
+            for (Object o : c) {
+                responses.add(p.sismember(this.baseKey, this.encode(o)));
+            }
+
+            p.sync();
+
+            boolean[] ret = new boolean[responses.size()];
+            for (int i = 0; i < ret.length; i++) {
+                ret[i] = responses.get(i).get();
+            }
+
+            return ret;
+        }
     }
 
     @Override
     public boolean addAll(@NotNull Collection<? extends V> c) {
-        boolean added = false;
-
+        List<byte[]> vals = new ArrayList<>(c.size());
         for (V v : c) {
-            added |= this.add(v);
+            vals.add(this.codec.encode(v));
         }
 
-        return added;
+        try (Jedis j = this.pool.getResource()) {
+            return RedisBatch.variadic(j, vals,
+                (jedis, args) -> jedis.sadd(this.baseKey, args),
+                (p, args) -> p.sadd(this.baseKey, args)) > 0;
+        }
     }
 
     @Override
@@ -222,13 +260,34 @@ public class RedisSet<V> implements Set<V> {
 
     @Override
     public boolean removeAll(@NotNull Collection<?> c) {
-        boolean removed = false;
-
+        List<byte[]> vals = new ArrayList<>(c.size());
         for (Object o : c) {
-            removed |= this.remove(o);
+            //  Anything of the wrong type can't be in the set anyways
+            if (this.vClass.isInstance(o)) {
+                vals.add(this.encode(o));
+            }
         }
 
-        return removed;
+        try (Jedis j = this.pool.getResource()) {
+            return RedisBatch.variadic(j, vals,
+                (jedis, args) -> jedis.srem(this.baseKey, args),
+                (p, args) -> p.srem(this.baseKey, args)) > 0;
+        }
+    }
+
+    String getBase() {
+        return this.base;
+    }
+
+    Class<V> getValueClass() {
+        return this.vClass;
+    }
+
+    /**
+     * Encodes an object already known to be an instance of the value type.
+     */
+    byte[] encode(Object o) {
+        return this.codec.encode(this.vClass.cast(o));
     }
 
     @Override
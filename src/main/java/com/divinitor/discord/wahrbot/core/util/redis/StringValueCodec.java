@@ -0,0 +1,24 @@
+package com.divinitor.discord.wahrbot.core.util.redis;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Stores strings as plain UTF-8.
+ */
+final class StringValueCodec implements ValueCodec<String> {
+
+    static final StringValueCodec INSTANCE = new StringValueCodec();
+
+    private StringValueCodec() {
+    }
+
+    @Override
+    public byte[] encode(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String decode(byte[] data) {
+        return new String(data, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,73 @@
+package com.divinitor.discord.wahrbot.core.util.redis;
+
+import com.google.gson.Gson;
+
+/**
+ * Converts values to and from the bytes stored in Redis.
+ * @param <V> The value type
+ */
+public interface ValueCodec<V> {
+
+    /**
+     * Encodes a value.
+     * @param value The value to encode, not null
+     * @return The encoded value
+     */
+    byte[] encode(V value);
+
+    /**
+     * Decodes a value.
+     * @param data The encoded value, not null
+     * @return The decoded value
+     */
+    V decode(byte[] data);
+
+    /**
+     * Gets a codec that stores strings as plain UTF-8.
+     * @return The string codec
+     */
+    static ValueCodec<String> string() {
+        return StringValueCodec.INSTANCE;
+    }
+
+    /**
+     * Gets a codec that stores values as UTF-8 JSON.
+     * @param gson The serializer/deserializer to use
+     * @param vClass The value type
+     * @param <V> The value type
+     * @return The JSON codec
+     */
+    static <V> ValueCodec<V> json(Gson gson, Class<V> vClass) {
+        return new JsonValueCodec<>(gson, vClass);
+    }
+
+    /**
+     * Gets a codec that stores primitive wrappers in a compact binary form and everything else as JSON, or strings as
+     * plain UTF-8 if the value type is {@code String}. It can also read values written by {@link #json(Gson, Class)}
+     * and {@link #string()}, so existing data stays readable, and reads binary values as any type their JSON form
+     * could be read as.
+     * @param gson The serializer/deserializer to use for everything that isn't stored in binary form
+     * @param vClass The value type
+     * @param <V> The value type
+     * @return The compact codec
+     */
+    static <V> ValueCodec<V> compact(Gson gson, Class<V> vClass) {
+        return new CompactValueCodec<>(gson, vClass);
+    }
+
+    /**
+     * Gets the codec the Redis collections have always used: plain strings for strings and JSON for everything else.
+     * @param gson The serializer/deserializer to use
+     * @param vClass The value type
+     * @param <V> The value type
+     * @return The default codec for the type
+     */
+    @SuppressWarnings("unchecked")
+    static <V> ValueCodec<V> forClass(Gson gson, Class<V> vClass) {
+        if (vClass == String.class) {
+            return (ValueCodec<V>) string();
+        }
+
+        return json(gson, vClass);
+    }
+}
@@ -169,4 +169,27 @@ public class CommandLineTest {
         line.next();
         Assert.assertEquals("", line.peek());
     }
+
+    @Test
+    public void peekThenNext() {
+        CommandLine line = new CommandLine("first\\ second \"third fourth\"  ");
+        Assert.assertEquals("first second", line.peek());
+        Assert.assertEquals("first second", line.next());
+        Assert.assertEquals("\"third fourth\"", line.getLine());
+        Assert.assertEquals("third fourth", line.peek());
+        Assert.assertEquals("third fourth", line.next());
+        Assert.assertEquals("", line.getLine());
+        Assert.assertFalse(line.hasNext());
+        Assert.assertEquals("", line.peek());
+    }
+
+    @Test
+    public void setLineResetsPeek() {
+        CommandLine line = new CommandLine("first second");
+        Assert.assertEquals("first", line.peek());
+        line.setLine("other line");
+        Assert.assertEquals("other", line.next());
+        Assert.assertEquals("line", line.getLine());
+        Assert.assertEquals("first second", line.getOriginal());
+    }
 }
@@ -0,0 +1,156 @@
+package com.divinitor.discord.wahrbot.core.config.dyn.impl;
+
+import com.divinitor.discord.wahrbot.core.config.dyn.*;
+import com.divinitor.discord.wahrbot.core.util.gson.StandardGson;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+public class CachingDynConfigStoreTest {
+
+    @Test
+    public void testCachesUntilInvalidated() {
+        MapStore backing = new MapStore();
+        backing.put("a", "1");
+        CachingDynConfigStore store = new CachingDynConfigStore(backing, Runnable::run);
+
+        Assert.assertEquals("1", store.getString("a"));
+        Assert.assertNull(store.getString("b"));
+        backing.put("a", "2");
+        backing.put("b", "3");
+        Assert.assertEquals("1", store.getString("a"));
+        Assert.assertNull(store.getString("b"));
+
+        store.invalidate("a");
+        Assert.assertEquals("2", store.getString("a"));
+        Assert.assertNull(store.getString("b"));
+        store.invalidateAll();
+        Assert.assertEquals("3", store.getString("b"));
+    }
+
+    @Test
+    public void testAsync() throws Exception {
+        MapStore backing = new MapStore();
+        backing.put("a", "1");
+        CachingDynConfigStore store = new CachingDynConfigStore(backing, Runnable::run);
+        DynConfigHandle handle = store.getStringHandle("a");
+
+        Assert.assertEquals("1", store.getStringAsync("a").get());
+        backing.put("a", "2");
+        Assert.assertEquals("1", store.getStringAsync("a").get());
+        Assert.assertEquals("1", store.getString("a"));
+
+        store.putAsync("a", "3").get();
+        Assert.assertEquals("3", store.getStringAsync("a").get());
+        Assert.assertEquals("3", handle.get());
+        Assert.assertEquals(Long.valueOf(3), store.getObjectAsync("a", Long.class).get());
+    }
+
+    @Test
+    public void testAsyncLoadDoesNotOutliveInvalidation() throws Exception {
+        CompletableFuture<String> pending = new CompletableFuture<>();
+        MapStore backing = new MapStore() {
+            @Override
+            public CompletableFuture<String> getStringAsync(String key) {
+                return pending;
+            }
+        };
+        backing.put("a", "1");
+        CachingDynConfigStore store = new CachingDynConfigStore(backing, Runnable::run);
+
+        CompletableFuture<String> load = store.getStringAsync("a");
+        backing.put("a", "2");
+        store.invalidate("a");
+        pending.complete("1");
+
+        Assert.assertEquals("1", load.get());
+        Assert.assertEquals("2", store.getString("a"));
+    }
+
+    @Test
+    public void testSyncLoadDoesNotOutliveInvalidation() {
+        CachingDynConfigStore[] store = new CachingDynConfigStore[1];
+        MapStore backing = new MapStore() {
+            private boolean raced;
+
+            @Override
+            public String getString(String key) {
+                String val = super.getString(key);
+                if (!this.raced) {
+                    this.raced = true;
+                    this.put(key, "2");
+                    store[0].invalidate(key);
+                }
+
+                return val;
+            }
+        };
+        backing.put("a", "1");
+        store[0] = new CachingDynConfigStore(backing, Runnable::run);
+
+        Assert.assertEquals("1", store[0].getString("a"));
+        Assert.assertEquals("2", store[0].getString("a"));
+    }
+
+    @Test
+    public void testHandles() {
+        MapStore backing = new MapStore();
+        CachingDynConfigStore store = new CachingDynConfigStore(backing, Runnable::run);
+        DynConfigHandle string = store.getStringHandle("key");
+        LongDynConfigHandle lng = store.getLongHandle("key");
+        BooleanDynConfigHandle bool = store.getBooleanHandle("key");
+
+        Assert.assertNull(string.get());
+        try {
+            lng.getLong();
+            Assert.fail();
+        } catch (NoSuchElementException expected) {
+        }
+
+        store.put("key", 42L);
+        Assert.assertEquals("42", string.get());
+        Assert.assertEquals(42L, lng.getLong());
+        Assert.assertFalse(bool.getBoolean());
+
+        backing.put("key", "true");
+        Assert.assertEquals(42L, lng.getLong());
+        store.invalidate("key");
+        Assert.assertTrue(bool.getBoolean());
+        try {
+            lng.getLong();
+            Assert.fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    static class MapStore implements DynConfigStore {
+
+        private final Map<String, String> values = new HashMap<>();
+
+        @Override
+        public void put(String key, String value) {
+            this.values.put(key, value);
+        }
+
+        @Override
+        public String getString(String key) {
+            return this.values.get(key);
+        }
+
+        @Override
+        public <T> BiFunction<String, Class<T>, T> deserializer(Class<T> clazz) {
+            return StandardGson.instance()::fromJson;
+        }
+
+        @Override
+        public <T> Function<T, String> serializer() {
+            return StandardGson.instance()::toJson;
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.divinitor.discord.wahrbot.core.event;
+
+import com.codahale.metrics.MetricRegistry;
+import com.divinitor.discord.wahrbot.core.WahrBot;
+import com.google.common.eventbus.AllowConcurrentEvents;
+import com.google.common.eventbus.Subscribe;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ShardedEventBusTest {
+
+    @Test
+    public void testDeliversInOrderToSupertypeSubscribers() throws Exception {
+        ShardedEventBus bus = new ShardedEventBus(4, (t, e, s, m) -> Assert.fail());
+        Recorder recorder = new Recorder();
+        bus.register(recorder);
+
+        for (int i = 0; i < 100; i++) {
+            bus.post(i);
+        }
+
+        bus.post("done");
+        Assert.assertTrue(recorder.done.await(5, TimeUnit.SECONDS));
+        bus.shutdown();
+
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            expected.add(i);
+        }
+
+        Assert.assertEquals(expected, recorder.integers);
+        Assert.assertEquals(101, recorder.objects.get());
+    }
+
+    @Test
+    public void testExceptionsGoToHandler() throws Exception {
+        CountDownLatch handled = new CountDownLatch(1);
+        ShardedEventBus bus = new ShardedEventBus(1, (t, e, s, m) -> {
+            Assert.assertEquals("boom", t.getMessage());
+            Assert.assertEquals("throwing", m.getName());
+            handled.countDown();
+        });
+        Recorder recorder = new Recorder();
+        bus.register(new Object() {
+            @Subscribe
+            private void throwing(Integer event) {
+                throw new IllegalStateException("boom");
+            }
+        });
+        bus.register(recorder);
+
+        bus.post(1);
+        bus.post("done");
+        Assert.assertTrue(handled.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(recorder.done.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(1, recorder.integers.size());
+        bus.shutdown();
+    }
+
+    @Test
+    public void testUnregister() throws Exception {
+        ShardedEventBus bus = new ShardedEventBus(1, (t, e, s, m) -> Assert.fail());
+        Recorder first = new Recorder();
+        Recorder second = new Recorder();
+        bus.register(first);
+        bus.register(second);
+        Assert.assertTrue(bus.hasSubscribers(Integer.class));
+        bus.unregister(first);
+        try {
+            bus.unregister(first);
+            Assert.fail();
+        } catch (IllegalArgumentException expected) {
+        }
+
+        bus.post(1);
+        bus.post("done");
+        Assert.assertTrue(second.done.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(first.integers.isEmpty());
+        Assert.assertEquals(1, second.integers.size());
+        bus.shutdown();
+    }
+
+    @Test
+    public void testHasSubscribers() {
+        ShardedEventBus bus = new ShardedEventBus(1, (t, e, s, m) -> Assert.fail());
+        Object subscriber = new Object() {
+            @Subscribe
+            public void onNumber(Number event) {
+            }
+        };
+
+        Assert.assertFalse(bus.hasSubscribers(Integer.class));
+        bus.register(subscriber);
+        Assert.assertTrue(bus.hasSubscribers(Integer.class));
+        Assert.assertTrue(bus.hasSubscribers(Number.class));
+        Assert.assertFalse(bus.hasSubscribers(String.class));
+        bus.unregister(subscriber);
+        Assert.assertFalse(bus.hasSubscribers(Integer.class));
+        bus.shutdown();
+    }
+
+    @Test
+    public void testTimesSubscribersAndReportsSlowOnes() throws Exception {
+        MetricRegistry metrics = new MetricRegistry();
+        ShardedEventBus bus = new ShardedEventBus(1, (t, e, s, m) -> Assert.fail(), metrics);
+        bus.setSlowThreshold(50, TimeUnit.MILLISECONDS);
+        Recorder recorder = new Recorder();
+        bus.register(recorder, "test");
+        bus.register(new Object() {
+            @Subscribe
+            public void slow(Integer event) throws InterruptedException {
+                Thread.sleep(600);
+            }
+        }, "sleepy");
+
+        bus.post(1);
+        bus.post("done");
+        Assert.assertTrue(recorder.done.await(5, TimeUnit.SECONDS));
+        bus.shutdown();
+
+        String timer = MetricRegistry.name(WahrBot.class, "eventbus", "subscribers", "test",
+            Recorder.class.getName() + "#onInteger", Integer.class.getName());
+        Assert.assertEquals(1, metrics.getTimers().get(timer).getCount());
+        Assert.assertEquals(1, metrics.getMeters()
+            .get(MetricRegistry.name(WahrBot.class, "eventbus", "slow", "sleepy")).getCount());
+        Assert.assertNull(metrics.getMeters().get(MetricRegistry.name(WahrBot.class, "eventbus", "slow", "test")));
+    }
+
+    @Test
+    public void testShedsAndBlocksWhenBackedUp() throws Exception {
+        MetricRegistry metrics = new MetricRegistry();
+        ShardedEventBus bus = new ShardedEventBus(1, 4, (t, e, s, m) -> Assert.fail(), metrics);
+        bus.setPriority(String.class, EventPriority.SHEDDABLE);
+        Assert.assertEquals(EventPriority.ESSENTIAL, bus.getPriority(Integer.class));
+        Assert.assertEquals(EventPriority.SHEDDABLE, bus.getPriority(String.class));
+
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+        bus.register(new Object() {
+            @Subscribe
+            public void onInteger(Integer event) throws InterruptedException {
+                if (event == 0) {
+                    started.countDown();
+                    release.await();
+                }
+
+                received.add(event);
+            }
+        });
+
+        bus.post(0);
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i <= 3; i++) {
+            bus.post(i);
+        }
+
+        bus.post("shed");
+        Assert.assertEquals(1, metrics.meter(MetricRegistry.name(WahrBot.class, "eventbus", "shed")).getCount());
+
+        bus.post(4);
+        Thread poster = new Thread(() -> bus.post(5));
+        poster.start();
+        poster.join(200);
+        Assert.assertTrue(poster.isAlive());
+
+        release.countDown();
+        poster.join(5000);
+        Assert.assertFalse(poster.isAlive());
+        Assert.assertEquals(1, metrics.meter(MetricRegistry.name(WahrBot.class, "eventbus", "blocked")).getCount());
+
+        bus.shutdown();
+        for (int i = 0; i < 50 && received.size() < 6; i++) {
+            Thread.sleep(10);
+        }
+
+        Assert.assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5), received);
+    }
+
+    @Test
+    public void testPostFromOwnFullLaneDispatchesInline() throws Exception {
+        MetricRegistry metrics = new MetricRegistry();
+        ShardedEventBus bus = new ShardedEventBus(1, 1, (t, e, s, m) -> Assert.fail(), metrics);
+        List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(3);
+        bus.register(new Object() {
+            @Subscribe
+            public void onInteger(Integer event) {
+                received.add(event);
+                if (event == 0) {
+                    //  The first fills the lane, so the second can only be handled right here
+                    bus.post(1);
+                    bus.post(2);
+                }
+
+                done.countDown();
+            }
+        });
+
+        bus.post(0);
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(Arrays.asList(0, 2, 1), received);
+        Assert.assertEquals(1, metrics.meter(MetricRegistry.name(WahrBot.class, "eventbus", "inline")).getCount());
+        bus.shutdown();
+    }
+
+    public static class Recorder {
+
+        private final List<Integer> integers = new ArrayList<>();
+        private final AtomicInteger objects = new AtomicInteger();
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        @Subscribe
+        public void onInteger(Integer event) {
+            this.integers.add(event);
+        }
+
+        @Subscribe
+        @AllowConcurrentEvents
+        public void onObject(Object event) {
+            this.objects.incrementAndGet();
+            if ("done".equals(event)) {
+                this.done.countDown();
+            }
+        }
+    }
+}
@@ -3,8 +3,13 @@ package com.divinitor.discord.wahrbot.core.i18n;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.FormatStyle;
 import java.util.*;
 import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 import static org.junit.Assert.*;
 
@@ -42,6 +47,182 @@ public class LocalizerImplTest {
         Assert.assertEquals("Foo BFoo", localizer.localize("test.bfoo.foo"));
     }
 
+    @Test
+    public void testArgsAreNotRescanned() throws Exception {
+        Localizer localizer = new LocalizerImpl();
+        localizer.registerBundle("test", new Bundle());
+
+        Assert.assertEquals("Foo {1}", localizer.localize("test.args", "{1}", "Bar"));
+        Assert.assertEquals("Foo [test.foo]", localizer.localize("test.args", "[test.foo]"));
+        Assert.assertEquals("Foo \\[", localizer.localize("test.args", "\\["));
+    }
+
+    @Test
+    public void testDateTimeFormat() throws Exception {
+        Localizer localizer = new LocalizerImpl(Locale.US);
+        localizer.registerBundle("test", new Bundle());
+        ZonedDateTime time = ZonedDateTime.of(2018, 3, 14, 15, 9, 26, 0, ZoneOffset.UTC);
+
+        Assert.assertEquals("2018-03-14", localizer.localize("test.date", time));
+        Assert.assertEquals("2018-03-14", localizer.localize("test.date", time.toInstant().toEpochMilli()));
+        Assert.assertEquals("2018-03-14", localizer.localize("test.date", Date.from(time.toInstant())));
+        Assert.assertEquals("15:09", localizer.localize("test.time", time.toInstant()));
+        //  Short formats differ between JDK locale data versions
+        Assert.assertEquals(DateTimeFormatter.ofLocalizedDateTime(FormatStyle.SHORT).withLocale(Locale.US).format(time),
+            localizer.localize("test.datetime", time.toLocalDateTime()));
+        Assert.assertEquals(Localizer.BAD_FORMAT_STRING + "#time|HH:mm",
+            localizer.localize("test.time", time.toLocalDate()));
+        Assert.assertEquals(Localizer.BAD_ARG + "#date|yyyy-MM-dd", localizer.localize("test.date", "today"));
+        Assert.assertEquals(Localizer.BAD_ARG + "#week", localizer.localize("test.date.bad", time));
+    }
+
+    @Test
+    public void testDynamicSubkey() throws Exception {
+        Localizer localizer = new LocalizerImpl();
+        localizer.registerBundle("test", new Bundle());
+
+        Assert.assertEquals("Type a", localizer.localize("test.dyn", "a"));
+        Assert.assertEquals("Type b", localizer.localize("test.dyn", "b"));
+        Assert.assertEquals("Type " + Localizer.NO_SUCH_KEY + "test.dyn.type.c", localizer.localize("test.dyn", "c"));
+    }
+
+    @Test
+    public void testBadTemplates() throws Exception {
+        Localizer localizer = new LocalizerImpl();
+        localizer.registerBundle("test", new Bundle());
+
+        Assert.assertTrue(localizer.localize("test.unclosed").startsWith(Localizer.BAD_FORMAT_STRING));
+        Assert.assertTrue(localizer.localize("test.loop").endsWith(Localizer.BAD_REFERENCE + "test.loop"));
+        Assert.assertEquals(Localizer.BAD_ARG_INDEX + "2", localizer.localize("test.args.bad", "a"));
+        Assert.assertEquals(Localizer.NO_SUCH_KEY + "test.missing", localizer.localize("test.missing"));
+    }
+
+    @Test
+    public void testCacheInvalidatedOnBundleChange() throws Exception {
+        Localizer localizer = new LocalizerImpl();
+        localizer.registerBundle("test", new Bundle());
+        Assert.assertEquals(Localizer.NO_SUCH_KEY + "other.key", localizer.localize("other.key"));
+
+        localizer.registerBundle("other", new LocalizerBundle() {
+            @Override
+            public String get(String key, Locale locale) {
+                return "other.key".equals(key) ? "Other" : null;
+            }
+
+            @Override
+            public boolean contains(String key, Locale locale) {
+                return "other.key".equals(key);
+            }
+        });
+        Assert.assertEquals("Other", localizer.localize("other.key"));
+
+        localizer.unregisterBundle("other");
+        Assert.assertEquals(Localizer.NO_SUCH_KEY + "other.key", localizer.localize("other.key"));
+    }
+
+    @Test
+    public void testEnumerableBundleIndex() throws Exception {
+        Localizer localizer = new LocalizerImpl();
+        localizer.registerBundle("enum", new EnumerableBundle("test.foo", "Indexed"));
+        localizer.registerBundle("test", new Bundle());
+        localizer.registerBundle("enum2", new EnumerableBundle("test.foo", "Shadowed"));
+
+        Assert.assertEquals("Indexed", localizer.localize("test.foo"));
+        Assert.assertEquals("BFoo", localizer.localize("test.bfoo"));
+        Assert.assertTrue(localizer.contains("test.foo"));
+        Assert.assertTrue(localizer.contains("test.bfoo"));
+        Assert.assertFalse(localizer.contains("test.missing"));
+
+        //  Earlier registrations win, whether or not they're indexed
+        localizer.unregisterBundle("enum");
+        Assert.assertEquals("Foo [baz]", localizer.localize("test.foo"));
+
+        localizer.unregisterBundle("test");
+        Assert.assertEquals("Shadowed", localizer.localize("test.foo"));
+    }
+
+    @Test
+    public void testDefaultLocaleChangesRevision() throws Exception {
+        Localizer localizer = new LocalizerImpl(Locale.ENGLISH);
+        long revision = localizer.getBundleRevision();
+        localizer.setDefaultLocale(Locale.GERMAN);
+        Assert.assertNotEquals(revision, localizer.getBundleRevision());
+        Assert.assertEquals(Locale.GERMAN, localizer.getDefaultLocale());
+    }
+
+    @Test
+    public void testFallbackChain() throws Exception {
+        Assert.assertArrayEquals(new Locale[]{Locale.US, Locale.ENGLISH, Locale.ROOT},
+            LocalizerImpl.buildFallbackChain(Locale.US, Locale.ENGLISH));
+        Assert.assertArrayEquals(new Locale[]{new Locale("de", "AT"), Locale.GERMAN, Locale.US, Locale.ENGLISH,
+                Locale.ROOT},
+            LocalizerImpl.buildFallbackChain(new Locale("de", "AT"), Locale.US));
+
+        Localizer localizer = new LocalizerImpl(Locale.ENGLISH);
+        localizer.registerBundle("test", new LocalizerBundle() {
+            @Override
+            public String get(String key, Locale locale) {
+                if (!"test.key".equals(key)) {
+                    return null;
+                }
+
+                if (locale.equals(Locale.GERMAN)) {
+                    return "de";
+                }
+
+                if (locale.equals(Locale.ENGLISH)) {
+                    return "en";
+                }
+
+                return null;
+            }
+
+            @Override
+            public boolean contains(String key, Locale locale) {
+                return this.get(key, locale) != null;
+            }
+        });
+
+        Assert.assertEquals("de", localizer.localizeToLocale("test.key", Locale.GERMANY));
+        Assert.assertEquals("en", localizer.localizeToLocale("test.key", Locale.UK));
+        Assert.assertEquals("en", localizer.localizeToLocale("test.key", Locale.FRANCE));
+
+        localizer.setDefaultLocale(Locale.GERMAN);
+        Assert.assertEquals("de", localizer.localizeToLocale("test.key", Locale.FRANCE));
+        Assert.assertTrue(localizer.contains("test.key"));
+    }
+
+    class EnumerableBundle implements LocalizerBundle {
+
+        private final String key;
+        private final String value;
+
+        EnumerableBundle(String key, String value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public String get(String key, Locale locale) {
+            return this.key.equals(key) ? this.value : null;
+        }
+
+        @Override
+        public boolean contains(String key, Locale locale) {
+            return this.key.equals(key);
+        }
+
+        @Override
+        public Stream<String> keys(Locale locale) {
+            return Stream.of(this.key);
+        }
+
+        @Override
+        public boolean isEnumerable() {
+            return true;
+        }
+    }
+
     class Bundle implements LocalizerBundle {
 
         private Map<String, String> values;
@@ -57,6 +238,17 @@ public class LocalizerImplTest {
             values.put("test.named.plural", "{%CARROT%|%,d} {%CARROT%|(EN_PLURAL;carrots),(ONE;carrot)}");
             values.put("test.bfoo", "BFoo");
             values.put("test.bfoo.foo", "Foo [..]");
+            values.put("test.args", "Foo {0}");
+            values.put("test.args.bad", "{2}");
+            values.put("test.dyn", "Type [.type.{0}]");
+            values.put("test.dyn.type.a", "a");
+            values.put("test.dyn.type.b", "b");
+            values.put("test.unclosed", "Foo {0");
+            values.put("test.loop", "[test.loop]");
+            values.put("test.date", "{0|#date|yyyy-MM-dd}");
+            values.put("test.time", "{0|#time|HH:mm}");
+            values.put("test.datetime", "{0|#datetime}");
+            values.put("test.date.bad", "{0|#week}");
         }
 
         @Override
@@ -0,0 +1,35 @@
+package com.divinitor.discord.wahrbot.core.i18n;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+public class ResourceBundleBundleTest {
+
+    private static final String BUNDLE = "com.divinitor.discord.wahrbot.core.i18n.resourcebundle";
+
+    @Test
+    public void testOnlyExactLocale() {
+        ResourceBundleBundle bundle = new ResourceBundleBundle(BUNDLE);
+        Assert.assertEquals("Hallo", bundle.get("test.greeting", Locale.GERMAN));
+        Assert.assertNull(bundle.get("test.farewell", Locale.GERMAN));
+        Assert.assertFalse(bundle.contains("test.farewell", Locale.GERMAN));
+        Assert.assertEquals(Collections.singleton("test.greeting"),
+            bundle.keys(Locale.GERMAN).collect(Collectors.toSet()));
+        Assert.assertNull(bundle.get("test.greeting", Locale.GERMANY));
+        Assert.assertEquals("Goodbye", bundle.get("test.farewell", Locale.ROOT));
+    }
+
+    @Test
+    public void testDefaultLocaleBeforeRoot() {
+        Localizer localizer = new LocalizerImpl();
+        localizer.setDefaultLocale(Locale.ENGLISH);
+        localizer.registerBundle("test", new ResourceBundleBundle(BUNDLE));
+        Assert.assertEquals("Hallo", localizer.localizeToLocale("test.greeting", Locale.GERMANY));
+        Assert.assertEquals("Bye", localizer.localizeToLocale("test.farewell", Locale.GERMANY));
+        Assert.assertEquals("Hello", localizer.localizeToLocale("test.greeting", Locale.ENGLISH));
+    }
+}
@@ -0,0 +1,73 @@
+package com.divinitor.discord.wahrbot.core.i18n.dvloc;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+public class DvLocLoaderTest {
+
+    private static final String HELP = "com.divinitor.discord.wahrbot.cmd.help";
+
+    @Test
+    public void testExample() throws Exception {
+        DvLocBundle bundle;
+        try (InputStream in = this.getClass().getResourceAsStream(
+            "/com/divinitor/discord/wahrbot/core/command/example.dvloc");
+             Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            bundle = new DvLocLoader().read(reader);
+        }
+
+        Locale en = Locale.ENGLISH;
+        Locale enUs = Locale.US;
+        Locale jp = new Locale("jp");
+        Assert.assertEquals(HELP, bundle.getPrefix());
+        Assert.assertEquals("help", bundle.get(HELP, en));
+        Assert.assertEquals("Misc Commands", bundle.get(HELP + ".category.misc", en));
+        Assert.assertEquals("- `{%NAMECHAIN%} {0}`: {1}", bundle.get(HELP + ".command", en));
+        Assert.assertEquals("help", bundle.get(HELP, enUs));
+        Assert.assertEquals("Misc Commands", bundle.get(HELP + ".category.misc", enUs));
+        Assert.assertEquals("雑コマンド", bundle.get(HELP + ".category.misc", jp));
+        Assert.assertNull(bundle.get(HELP + ".category", en));
+        Assert.assertNull(bundle.get("other.key", en));
+        Assert.assertEquals(6, bundle.keys(enUs).count());
+    }
+
+    @Test
+    public void testInheritanceAndEscapes() throws Exception {
+        DvLocBundle bundle = new DvLocLoader().read(
+            "LOCALE de_at = de { b: \"Servus\" }\n" +
+            "LOCALE de { a: \"Hallo\\n\\\"Welt\\\" \\[x]\" b: \"Guten Tag\" }");
+
+        Locale deAt = new Locale("de", "AT");
+        Assert.assertEquals("", bundle.getPrefix());
+        Assert.assertEquals("Hallo\n\"Welt\" \\[x]", bundle.get("a", deAt));
+        Assert.assertEquals("Servus", bundle.get("b", deAt));
+        Assert.assertEquals("Guten Tag", bundle.get("b", Locale.GERMAN));
+    }
+
+    @Test
+    public void testErrorPosition() throws Exception {
+        assertError("BUNDLE x\nLOCALE en {\n  a \"b\"\n}", 3, 5);
+        assertError("LOCALE en {\n  a: \"b\n}", 2, 6);
+        assertError("LOCALE en {\n  a: \"b\"\n", 3, 1);
+        assertError("LOCALE en = fr {}", 1, 13);
+        assertError("LOCALE en = fr {}\nLOCALE fr = en {}", 1, 13);
+        assertError("LOCALE en { a: \"b\" a: \"c\" }", 1, 20);
+        assertError("LOCALE en {}\nBUNDLE x", 2, 1);
+    }
+
+    private static void assertError(String data, int line, int column) {
+        try {
+            new DvLocLoader().read(data);
+            Assert.fail("Expected parse error for " + data);
+        } catch (DvLocParseException e) {
+            Assert.assertEquals(e.getMessage(), line, e.getLine());
+            Assert.assertEquals(e.getMessage(), column, e.getColumn());
+        }
+    }
+}
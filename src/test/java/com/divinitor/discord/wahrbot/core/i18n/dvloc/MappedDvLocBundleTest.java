@@ -0,0 +1,75 @@
+package com.divinitor.discord.wahrbot.core.i18n.dvloc;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+public class MappedDvLocBundleTest {
+
+    private static DvLocBundle loadExample() throws IOException {
+        try (InputStream in = MappedDvLocBundleTest.class.getResourceAsStream(
+            "/com/divinitor/discord/wahrbot/core/command/example.dvloc");
+             Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            return new DvLocLoader().read(reader);
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        DvLocBundle source = loadExample();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DvLocCompiler.write(source, out);
+        MappedDvLocBundle compiled = new MappedDvLocBundle(ByteBuffer.wrap(out.toByteArray()));
+
+        assertSameContents(source, compiled);
+    }
+
+    @Test
+    public void testMappedFile() throws Exception {
+        DvLocBundle source = loadExample();
+        Path file = Files.createTempFile("example", ".dvlb");
+        try {
+            try (OutputStream out = Files.newOutputStream(file)) {
+                DvLocCompiler.write(source, out);
+            }
+
+            assertSameContents(source, MappedDvLocBundle.open(file));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testBadMagic() throws Exception {
+        new MappedDvLocBundle(ByteBuffer.wrap("DVLOC bundle".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static void assertSameContents(DvLocBundle source, MappedDvLocBundle compiled) {
+        Assert.assertEquals(source.getPrefix(), compiled.getPrefix());
+        Assert.assertEquals(source.getLocales(), compiled.getLocales());
+        for (Locale locale : source.getLocales()) {
+            Assert.assertEquals(source.keys(locale).collect(Collectors.toSet()),
+                compiled.keys(locale).collect(Collectors.toSet()));
+            source.getData().row(locale).forEach((k, v) -> {
+                Assert.assertEquals(v, compiled.get(k, locale));
+                Assert.assertTrue(compiled.contains(k, locale));
+            });
+            Assert.assertNull(compiled.get(source.getPrefix() + ".nonexistent", locale));
+            Assert.assertFalse(compiled.contains("other.key", locale));
+        }
+
+        Assert.assertNull(compiled.get(source.getPrefix(), Locale.CHINESE));
+    }
+}
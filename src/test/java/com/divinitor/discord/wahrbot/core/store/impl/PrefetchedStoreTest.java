@@ -0,0 +1,118 @@
+package com.divinitor.discord.wahrbot.core.store.impl;
+
+import com.divinitor.discord.wahrbot.core.store.UserStore;
+import com.divinitor.discord.wahrbot.core.util.gson.StandardGson;
+import net.dv8tion.jda.api.entities.User;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+public class PrefetchedStoreTest {
+
+    @Test
+    public void testServesPrefetchedKeys() {
+        MapUserStore backing = new MapUserStore();
+        backing.put("a", "1");
+        backing.put("c", "3");
+        UserStore store = backing.prefetch("a", "b");
+        Assert.assertEquals(1, backing.bulkReads);
+
+        backing.put("a", "2");
+        backing.put("b", "2");
+        Assert.assertEquals("1", store.getString("a"));
+        Assert.assertNull(store.getString("b"));
+        Assert.assertEquals("3", store.getString("c"));
+        Assert.assertEquals(1, backing.reads);
+    }
+
+    @Test
+    public void testWritesUpdateSnapshot() throws Exception {
+        MapUserStore backing = new MapUserStore();
+        UserStore store = backing.prefetch("a", "b");
+
+        store.put("a", "1");
+        store.putAsync("b", "true").get();
+        Assert.assertEquals("1", backing.values.get("a"));
+        Assert.assertEquals("1", store.getString("a"));
+        Assert.assertTrue(store.getBoolean("b"));
+        Assert.assertEquals(Long.valueOf(1), store.getObject("a", Long.class));
+
+        store.purge();
+        Assert.assertNull(store.getString("a"));
+        Assert.assertNull(store.getStringAsync("b").get());
+        Assert.assertEquals(0, backing.reads);
+    }
+
+    @Test
+    public void testPrefetchOnlyFetchesMissingKeys() {
+        MapUserStore backing = new MapUserStore();
+        backing.put("a", "1");
+        backing.put("b", "2");
+        UserStore store = backing.prefetch("a");
+        Assert.assertSame(store, store.prefetch("a", "b"));
+        Assert.assertEquals(2, backing.bulkReads);
+
+        store.prefetch("a", "b");
+        Assert.assertEquals(2, backing.bulkReads);
+        Assert.assertEquals("2", store.getString("b"));
+        Assert.assertEquals(0, backing.reads);
+    }
+
+    private static class MapUserStore implements UserStore {
+
+        private final Map<String, String> values = new HashMap<>();
+        private int reads;
+        private int bulkReads;
+
+        @Override
+        public void put(String key, String value) {
+            this.values.put(key, value);
+        }
+
+        @Override
+        public String getString(String key) {
+            ++this.reads;
+            return this.values.get(key);
+        }
+
+        @Override
+        public Map<String, String> getStrings(String... keys) {
+            ++this.bulkReads;
+            Map<String, String> ret = new HashMap<>();
+            for (String key : keys) {
+                ret.put(key, this.values.get(key));
+            }
+
+            return ret;
+        }
+
+        @Override
+        public User getUser() {
+            return null;
+        }
+
+        @Override
+        public void purge() {
+            this.values.clear();
+        }
+
+        @Override
+        public UserStore prefetch(String... keys) {
+            return new PrefetchedStore.PrefetchedUserStore(this, keys);
+        }
+
+        @Override
+        public <T> BiFunction<String, Class<T>, T> deserializer(Class<T> clazz) {
+            return StandardGson.instance()::fromJson;
+        }
+
+        @Override
+        public <T> Function<T, String> serializer() {
+            return StandardGson.instance()::toJson;
+        }
+    }
+}
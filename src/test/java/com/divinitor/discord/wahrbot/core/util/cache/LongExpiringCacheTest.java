@@ -0,0 +1,64 @@
+package com.divinitor.discord.wahrbot.core.util.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class LongExpiringCacheTest {
+
+    @Test
+    public void testCachesValuesAndNulls() {
+        LongExpiringCache<String> cache = new LongExpiringCache<>(1, TimeUnit.HOURS, 1000);
+        AtomicInteger loads = new AtomicInteger();
+        Assert.assertEquals("1", cache.get(1L, k -> {
+            loads.incrementAndGet();
+            return Long.toString(k);
+        }));
+        Assert.assertEquals("1", cache.get(1L, k -> {
+            loads.incrementAndGet();
+            return "other";
+        }));
+        Assert.assertNull(cache.get(2L, k -> {
+            loads.incrementAndGet();
+            return null;
+        }));
+        Assert.assertNull(cache.get(2L, k -> {
+            loads.incrementAndGet();
+            return "other";
+        }));
+        Assert.assertEquals(2, loads.get());
+        Assert.assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testInvalidate() {
+        LongExpiringCache<String> cache = new LongExpiringCache<>(1, TimeUnit.HOURS, 1000);
+        cache.get(1L, k -> "a");
+        cache.get(2L, k -> "b");
+        cache.invalidate(1L);
+        Assert.assertEquals("c", cache.get(1L, k -> "c"));
+        Assert.assertEquals("b", cache.get(2L, k -> "d"));
+        cache.invalidateAll();
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals("e", cache.get(2L, k -> "e"));
+    }
+
+    @Test
+    public void testExpiry() {
+        LongExpiringCache<String> cache = new LongExpiringCache<>(0, TimeUnit.NANOSECONDS, 1000);
+        cache.get(1L, k -> "a");
+        Assert.assertEquals("b", cache.get(1L, k -> "b"));
+    }
+
+    @Test
+    public void testBounded() {
+        LongExpiringCache<Long> cache = new LongExpiringCache<>(1, TimeUnit.HOURS, 64);
+        for (long i = 0; i < 10_000; i++) {
+            cache.get(i, k -> k);
+        }
+
+        Assert.assertTrue(cache.size() <= 64);
+    }
+}
@@ -0,0 +1,47 @@
+package com.divinitor.discord.wahrbot.core.util.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class LongWeakValueCacheTest {
+
+    @Test
+    public void testLoadsOncePerKey() {
+        LongWeakValueCache<Object> cache = new LongWeakValueCache<>();
+        AtomicInteger loads = new AtomicInteger();
+        Object first = cache.get(1L, k -> {
+            loads.incrementAndGet();
+            return new Object();
+        });
+
+        Assert.assertSame(first, cache.get(1L, k -> {
+            loads.incrementAndGet();
+            return new Object();
+        }));
+        Assert.assertSame(first, cache.getIfPresent(1L));
+        Assert.assertNull(cache.getIfPresent(2L));
+        Assert.assertEquals(1, loads.get());
+        Assert.assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testDropsCollectedValues() throws Exception {
+        LongWeakValueCache<Object> cache = new LongWeakValueCache<>();
+        for (long i = 0; i < 100; i++) {
+            cache.get(i, k -> new Object());
+        }
+
+        Object kept = cache.get(1000L, k -> new Object());
+        for (int i = 0; i < 50 && cache.size() > 1; i++) {
+            System.gc();
+            Thread.sleep(10);
+            cache.cleanUp();
+        }
+
+        Assert.assertEquals(1, cache.size());
+        Assert.assertEquals(100, cache.evictionCount());
+        Assert.assertSame(kept, cache.getIfPresent(1000L));
+    }
+}
@@ -0,0 +1,121 @@
+package com.divinitor.discord.wahrbot.core.util.redis;
+
+import com.codahale.metrics.MetricRegistry;
+import com.divinitor.discord.wahrbot.core.WahrBot;
+import com.divinitor.discord.wahrbot.core.util.inject.JedisProvider;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+public class NearCacheManagerTest {
+
+    private MetricRegistry metrics;
+    private NearCacheManager nearCache;
+
+    @Before
+    public void setUp() {
+        this.metrics = new MetricRegistry();
+        RedisInvalidationBus bus = new RedisInvalidationBus(new JedisProvider(() -> {
+            throw new UnsupportedOperationException();
+        }));
+        this.nearCache = new NearCacheManager(bus, this.metrics, 100, 1, TimeUnit.HOURS);
+    }
+
+    @Test
+    public void testCachesPerKeyAndField() {
+        Assert.assertEquals(Optional.of("a"), this.nearCache.get("map", "x", () -> Optional.of("a")));
+        Assert.assertEquals(Optional.of("a"), this.nearCache.get("map", "x", () -> Optional.of("b")));
+        Assert.assertEquals(Optional.empty(), this.nearCache.get("map", "y", Optional::empty));
+        Assert.assertEquals(Boolean.TRUE, this.nearCache.get("set", "x", () -> true));
+
+        Assert.assertEquals(1, this.meter("hits"));
+        Assert.assertEquals(3, this.meter("misses"));
+    }
+
+    @Test
+    public void testInvalidateOnlyDropsKey() {
+        this.nearCache.get("map", "x", () -> "a");
+        this.nearCache.get("map", "y", () -> "b");
+        this.nearCache.get("map2", "x", () -> "c");
+
+        this.nearCache.invalidate("map");
+        Assert.assertEquals(1, this.nearCache.size());
+        Assert.assertEquals("d", this.nearCache.get("map", "x", () -> "d"));
+        Assert.assertEquals("c", this.nearCache.get("map2", "x", () -> "e"));
+
+        this.nearCache.invalidateAll();
+        Assert.assertEquals(0, this.nearCache.size());
+    }
+
+    @Test
+    public void testLoadRacingInvalidationIsNotCached() {
+        String ret = this.nearCache.get("map", "x", () -> {
+            this.nearCache.invalidate("map");
+            return "stale";
+        });
+        Assert.assertEquals("stale", ret);
+        Assert.assertEquals("fresh", this.nearCache.get("map", "x", () -> "fresh"));
+    }
+
+    @Test
+    public void testInvalidatingOtherKeyKeepsLoad() {
+        String ret = this.nearCache.get("map", "x", () -> {
+            this.nearCache.invalidate("other");
+            return "loaded";
+        });
+        Assert.assertEquals("loaded", ret);
+        Assert.assertEquals("loaded", this.nearCache.get("map", "x", () -> "reloaded"));
+    }
+
+    @Test
+    public void testReplacedFieldStaysTracked() {
+        //  Two loads of the same field racing, so the second replaces the first
+        this.nearCache.get("map", "x", () -> this.nearCache.get("map", "x", () -> "a"));
+        Assert.assertEquals(1, this.nearCache.size());
+
+        this.nearCache.invalidate("map");
+        Assert.assertEquals(0, this.nearCache.size());
+    }
+
+    @Test
+    public void testGetAllLoadsMissesTogether() {
+        this.nearCache.get("set", "a", () -> true);
+        List<Set<String>> loads = new ArrayList<>();
+        Map<String, Boolean> ret = this.nearCache.getAll("set", Arrays.asList("a", "b", "c"), missing -> {
+            loads.add(new HashSet<>(missing));
+            Map<String, Boolean> loaded = new HashMap<>();
+            missing.forEach(f -> loaded.put(f, "b".equals(f)));
+            return loaded;
+        });
+
+        Assert.assertEquals(Collections.singletonList(new HashSet<>(Arrays.asList("b", "c"))), loads);
+        Assert.assertEquals(Boolean.TRUE, ret.get("a"));
+        Assert.assertEquals(Boolean.TRUE, ret.get("b"));
+        Assert.assertEquals(Boolean.FALSE, ret.get("c"));
+        Assert.assertEquals(Boolean.FALSE, this.nearCache.get("set", "c", () -> true));
+    }
+
+    @Test
+    public void testEvictionsAreMetered() {
+        for (int i = 0; i < 200; i++) {
+            this.nearCache.get("map", Integer.toString(i), () -> "v");
+        }
+
+        Assert.assertTrue(this.meter("evictions") > 0);
+    }
+
+    private long meter(String name) {
+        return this.metrics.meter(MetricRegistry.name(WahrBot.class, "nearcache", name)).getCount();
+    }
+}
@@ -0,0 +1,108 @@
+package com.divinitor.discord.wahrbot.core.util.redis;
+
+import com.divinitor.discord.wahrbot.core.util.gson.StandardGson;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+public class ValueCodecTest {
+
+    @Test
+    public void testCompactRoundTrip() {
+        assertRoundTrip(Long.class, 190664383853363200L, 9);
+        assertRoundTrip(Integer.class, -42, 5);
+        assertRoundTrip(Short.class, (short) 7, 3);
+        assertRoundTrip(Byte.class, (byte) -1, 2);
+        assertRoundTrip(Double.class, 1.5D, 9);
+        assertRoundTrip(Float.class, 2.5F, 5);
+        assertRoundTrip(Character.class, 'x', 3);
+        assertRoundTrip(Boolean.class, true, 1);
+        assertRoundTrip(Boolean.class, false, 1);
+    }
+
+    @Test
+    public void testCompactStringsArePlainUtf8() {
+        ValueCodec<String> codec = ValueCodec.compact(StandardGson.instance(), String.class);
+        byte[] data = codec.encode("héllo world");
+        Assert.assertArrayEquals("héllo world".getBytes(StandardCharsets.UTF_8), data);
+        Assert.assertEquals("héllo world", codec.decode(data));
+    }
+
+    @Test
+    public void testCompactStringsStartingWithTagBytes() {
+        ValueCodec<String> codec = ValueCodec.compact(StandardGson.instance(), String.class);
+        for (String s : new String[]{"\t", "\u0001abcdefgh", "\u0002abcd", "\u0010", "\u0010\t", "\u0000x"}) {
+            Assert.assertEquals(s, codec.decode(codec.encode(s)));
+        }
+
+        ValueCodec<Object> objects = ValueCodec.compact(StandardGson.instance(), Object.class);
+        Assert.assertEquals("\t", objects.decode(codec.encode("\t")));
+    }
+
+    @Test
+    public void testCompactReadsLegacyJson() {
+        ValueCodec<Long> longs = ValueCodec.compact(StandardGson.instance(), Long.class);
+        Assert.assertEquals(Long.valueOf(190664383853363200L),
+            longs.decode("190664383853363200".getBytes(StandardCharsets.UTF_8)));
+
+        ValueCodec<Boolean> booleans = ValueCodec.compact(StandardGson.instance(), Boolean.class);
+        Assert.assertEquals(Boolean.TRUE, booleans.decode("true".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testCompactMapValuesReadAsOtherTypes() {
+        //  Store maps are written with an Object codec and read back with whatever value class the caller asks for
+        Map<String, Integer> map = new HashMap<>();
+        map.put("a", 5);
+        map.put("b", -190);
+        ValueCodec<Object> writer = ValueCodec.compact(StandardGson.instance(), Object.class);
+        ValueCodec<String> strings = ValueCodec.compact(StandardGson.instance(), String.class);
+        ValueCodec<Long> longs = ValueCodec.compact(StandardGson.instance(), Long.class);
+        ValueCodec<Object> objects = ValueCodec.compact(StandardGson.instance(), Object.class);
+        for (Map.Entry<String, Integer> entry : map.entrySet()) {
+            byte[] data = writer.encode(entry.getValue());
+            Assert.assertEquals(String.valueOf(entry.getValue()), strings.decode(data));
+            Assert.assertEquals(Long.valueOf(entry.getValue()), longs.decode(data));
+            Assert.assertEquals(entry.getValue(), objects.decode(data));
+        }
+    }
+
+    @Test
+    public void testCompactStringsAreJsonForOtherTypes() {
+        ValueCodec<Object> objects = ValueCodec.compact(StandardGson.instance(), Object.class);
+        byte[] data = objects.encode("123");
+        Assert.assertEquals("\"123\"", new String(data, StandardCharsets.UTF_8));
+        Assert.assertEquals("123", objects.decode(data));
+
+        //  Plain strings written by a String codec are still readable as Object
+        Assert.assertEquals("hello world", objects.decode("hello world".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testCompactFallsBackToJson() {
+        ValueCodec<Map> codec = ValueCodec.compact(StandardGson.instance(), Map.class);
+        byte[] data = codec.encode(Collections.singletonMap("a", "b"));
+        Assert.assertEquals("{\"a\":\"b\"}", new String(data, StandardCharsets.UTF_8));
+        Assert.assertEquals(Collections.singletonMap("a", "b"), codec.decode(data));
+    }
+
+    @Test
+    public void testForClassMatchesLegacyEncoding() {
+        Assert.assertArrayEquals("abc".getBytes(StandardCharsets.UTF_8),
+            ValueCodec.forClass(StandardGson.instance(), String.class).encode("abc"));
+        Assert.assertArrayEquals("12".getBytes(StandardCharsets.UTF_8),
+            ValueCodec.forClass(StandardGson.instance(), Long.class).encode(12L));
+    }
+
+    private static <V> void assertRoundTrip(Class<V> vClass, V value, int length) {
+        ValueCodec<V> codec = ValueCodec.compact(StandardGson.instance(), vClass);
+        byte[] data = codec.encode(value);
+        Assert.assertEquals(length, data.length);
+        Assert.assertEquals(value, codec.decode(data));
+    }
+}